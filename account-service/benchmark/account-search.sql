@@ -0,0 +1,52 @@
+-- IBAN/BIC search benchmark for AccountRepository.findWithFilters.
+--
+-- Loads :rows synthetic accounts into a scratch table shaped like accounts and times the search
+-- query shapes with and without the trigram indexes. Run once per scale against a throwaway database:
+--
+--   psql -d account_bench -v rows=1000000  -f account-search.sql
+--   psql -d account_bench -v rows=10000000 -f account-search.sql
+--   psql -d account_bench -v rows=50000000 -f account-search.sql
+--
+-- Compare the "Execution Time" lines of the seq-scan and indexed runs.
+
+\timing on
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP TABLE IF EXISTS accounts_bench;
+CREATE TABLE accounts_bench (
+    id               BIGSERIAL PRIMARY KEY,
+    iban             VARCHAR(34) NOT NULL,
+    bic_swift        VARCHAR(11) NOT NULL,
+    iban_search      VARCHAR(34),
+    bic_swift_search VARCHAR(11)
+);
+
+INSERT INTO accounts_bench (iban, bic_swift, iban_search, bic_swift_search)
+SELECT iban, bic, iban, bic
+FROM (SELECT 'DE' || LPAD((n % 97)::text, 2, '0') || LPAD(n::text, 18, '0') AS iban,
+             (ARRAY ['DEUTDEFF', 'COBADEFF', 'BYLADEMM', 'GENODEF1', 'SSKMDEMM'])[1 + n % 5] ||
+             LPAD((n % 1000)::text, 3, '0') AS bic
+      FROM generate_series(1, :rows) AS n) generated;
+ANALYZE accounts_bench;
+
+-- Without the trigram indexes: sequential scans
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM accounts_bench WHERE iban_search LIKE '%' || '0000004242' || '%' ORDER BY id LIMIT 10;
+EXPLAIN (ANALYZE, BUFFERS) SELECT count(*) FROM accounts_bench WHERE iban_search LIKE '%' || '0000004242' || '%';
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM accounts_bench WHERE iban_search LIKE 'DE42' || '%' ORDER BY id LIMIT 10;
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM accounts_bench WHERE bic_swift_search LIKE '%' || 'BYLADEMM042' || '%' ORDER BY id LIMIT 10;
+
+CREATE INDEX idx_accounts_bench_iban_search_trgm ON accounts_bench USING gin (iban_search gin_trgm_ops);
+CREATE INDEX idx_accounts_bench_bic_swift_search_trgm ON accounts_bench USING gin (bic_swift_search gin_trgm_ops);
+ANALYZE accounts_bench;
+
+-- With the trigram indexes
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM accounts_bench WHERE iban_search LIKE '%' || '0000004242' || '%' ORDER BY id LIMIT 10;
+EXPLAIN (ANALYZE, BUFFERS) SELECT count(*) FROM accounts_bench WHERE iban_search LIKE '%' || '0000004242' || '%';
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM accounts_bench WHERE iban_search LIKE 'DE42' || '%' ORDER BY id LIMIT 10;
+EXPLAIN (ANALYZE, BUFFERS) SELECT * FROM accounts_bench WHERE bic_swift_search LIKE '%' || 'BYLADEMM042' || '%' ORDER BY id LIMIT 10;
+
+SELECT pg_size_pretty(pg_relation_size('accounts_bench'))                            AS table_size,
+       pg_size_pretty(pg_relation_size('idx_accounts_bench_iban_search_trgm'))      AS iban_index_size,
+       pg_size_pretty(pg_relation_size('idx_accounts_bench_bic_swift_search_trgm')) AS bic_index_size;
+
+DROP TABLE accounts_bench;
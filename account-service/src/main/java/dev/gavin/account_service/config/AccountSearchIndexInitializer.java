@@ -0,0 +1,54 @@
+package dev.gavin.account_service.config;
+
+import dev.gavin.common.schema.SchemaTasks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Hibernate's schema update cannot create extensions or GIN indexes, so the trigram indexes behind the
+// IBAN/BIC search are created here once the tables exist. Rows written before the search columns were
+// added are backfilled first, once.
+@Component
+@Slf4j
+public class AccountSearchIndexInitializer implements ApplicationRunner {
+
+    private static final String BACKFILL_TASK = "accounts.search-columns-backfill";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final SchemaTasks schemaTasks;
+
+    @Value("${account.search.create-indexes:true}")
+    private boolean createIndexes = true;
+
+    public AccountSearchIndexInitializer(JdbcTemplate jdbcTemplate, SchemaTasks schemaTasks) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaTasks = schemaTasks;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!createIndexes || !schemaTasks.isPostgres())
+            return;
+
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        schemaTasks.runOnce(BACKFILL_TASK, this::backfill);
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_accounts_iban_search_trgm ON accounts USING gin (iban_search gin_trgm_ops)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_accounts_bic_swift_search_trgm ON accounts USING gin (bic_swift_search gin_trgm_ops)");
+    }
+
+    // New accounts get their search columns from the entity, so only rows from before they existed need this
+    private void backfill() {
+        int backfilled = jdbcTemplate.update("""
+                UPDATE accounts
+                    SET iban_search = NULLIF(UPPER(REGEXP_REPLACE(iban, '\\s', '', 'g')), ''),
+                        bic_swift_search = NULLIF(UPPER(REGEXP_REPLACE(bic_swift, '\\s', '', 'g')), '')
+                    WHERE iban_search IS NULL OR bic_swift_search IS NULL
+                """);
+        if (backfilled > 0)
+            log.info("Backfilled search columns for {} account(s)", backfilled);
+    }
+}
@@ -1,14 +1,92 @@
 package dev.gavin.account_service.config;
 
+import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.concurrency.ConcurrencyLimitFilter;
+import dev.gavin.common.concurrency.PinnedThreadMonitor;
+import dev.gavin.common.events.EventBroker;
+import dev.gavin.common.events.EventFeedSequencer;
+import dev.gavin.common.events.InProcessEventBroker;
+import dev.gavin.common.existence.IdFilter;
+import dev.gavin.common.http.ServiceClientConfiguration;
+import dev.gavin.common.idempotency.IdempotencyConfiguration;
+import dev.gavin.common.metrics.MetricsConfiguration;
+import dev.gavin.common.schema.EventSchemaInitializer;
+import dev.gavin.common.schema.SchemaTasks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
 
 @Configuration
+@Import({ServiceClientConfiguration.class, IdempotencyConfiguration.class, MetricsConfiguration.class})
 public class AppConfig {
 
+    // Sized against the connection pool so virtual threads queue here rather than on Hikari
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+            @Value("${virtual-threads.requests-per-connection:4}") int requestsPerConnection,
+            @Value("${virtual-threads.max-wait:PT2S}") Duration maxWait) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(poolSize * requestsPerConnection, maxWait));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public PinnedThreadMonitor pinnedThreadMonitor(@Value("${virtual-threads.pinned-threshold:PT0.02S}") Duration threshold) {
+        return new PinnedThreadMonitor(threshold);
+    }
+
+    // Event deliveries run here, off the request-sized applicationTaskExecutor
+    @Bean(destroyMethod = "close")
+    public BackgroundTasks backgroundTasks(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${background-tasks.pool-size:8}") int poolSize) {
+        return BackgroundTasks.pool(poolSize, virtualThreads);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public EventBroker eventBroker(BackgroundTasks backgroundTasks) {
+        return new InProcessEventBroker(backgroundTasks.executor());
+    }
+
+    @Bean(initMethod = "createTable")
+    public SchemaTasks schemaTasks(JdbcTemplate jdbcTemplate) {
+        return new SchemaTasks(jdbcTemplate);
+    }
+
+    @Bean
+    public EventSchemaInitializer accountEventSchemaInitializer(JdbcTemplate jdbcTemplate, SchemaTasks schemaTasks) {
+        return new EventSchemaInitializer(jdbcTemplate, schemaTasks, "account_events");
+    }
+
+    // Positions account events in commit order as consumers read them
+    @Bean(initMethod = "createTable")
+    public EventFeedSequencer accountEventSequencer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            @Value("${account.events.max-batch-size:5000}") int batchSize) {
+        return new EventFeedSequencer(jdbcTemplate, transactionTemplate, "account_events", "account_events", batchSize);
+    }
+
+    // Bloom filter answering fast negatives for POST /api/accounts/exists/batch
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public IdFilter accountIdFilter(AccountRepository accountRepository, TransactionTemplate transactionTemplate,
+            @Value("${id-filter.enabled:false}") boolean enabled,
+            @Value("${id-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${id-filter.trailing-ids:10000}") long trailingIds) {
+        return new IdFilter("account", transactionTemplate, accountRepository::findMaxId,
+                accountRepository::streamIdsUpTo, enabled, falsePositiveRate, trailingIds);
     }
 }
@@ -1,17 +1,38 @@
 package dev.gavin.account_service.controller;
 
 import dev.gavin.account_service.dto.AccountRequest;
+import dev.gavin.account_service.dto.BulkAccountResponse;
+import dev.gavin.account_service.dto.CreateAccountResponse;
+import dev.gavin.account_service.dto.ExportFormat;
+import dev.gavin.account_service.service.AccountExportService;
 import dev.gavin.account_service.service.AccountService;
+import dev.gavin.account_service.service.BulkAccountService;
 import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.dto.SliceDTO;
+import dev.gavin.common.existence.ExistenceFormat;
+import dev.gavin.common.http.AsyncRequestTimeout;
+import dev.gavin.common.idempotency.IdempotencyStore;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/accounts")
@@ -19,14 +40,47 @@ public class AccountController {
 
     private final AccountService accountService;
 
-    public AccountController(AccountService accountService) {
+    private final BulkAccountService bulkAccountService;
+
+    private final AccountExportService accountExportService;
+
+    private final IdempotencyStore idempotencyStore;
+
+    @Value("${account.export.request-timeout:PT1H}")
+    private Duration exportTimeout = Duration.ofHours(1);
+
+    public AccountController(AccountService accountService, BulkAccountService bulkAccountService,
+                             AccountExportService accountExportService, IdempotencyStore idempotencyStore) {
         this.accountService = accountService;
+        this.bulkAccountService = bulkAccountService;
+        this.accountExportService = accountExportService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @PostMapping
-    public ResponseEntity<AccountDTO> createAccount(@RequestBody AccountRequest accountRequest) {
-        AccountDTO createdAccount = accountService.createAccount(accountRequest);
-        return new ResponseEntity<>(createdAccount, HttpStatus.CREATED);
+    public ResponseEntity<AccountDTO> createAccount(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody AccountRequest accountRequest) {
+        return idempotencyStore.execute("accounts.create", idempotencyKey, accountRequest, AccountDTO.class, () -> {
+            AccountDTO createdAccount = accountService.createAccount(accountRequest);
+            return new ResponseEntity<>(createdAccount, HttpStatus.CREATED);
+        });
+    }
+
+    @PostMapping("/async")
+    public ResponseEntity<CreateAccountResponse> createAccountAsync(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody AccountRequest accountRequest) {
+        return idempotencyStore.execute("accounts.create-async", idempotencyKey, accountRequest, CreateAccountResponse.class, () -> {
+            CreateAccountResponse response = accountService.createAccountAsync(accountRequest);
+            return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+        });
+    }
+
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BulkAccountResponse> createAccounts(InputStream accountRequests) {
+        BulkAccountResponse response = bulkAccountService.createAccounts(accountRequests);
+        return ResponseEntity.ok(response);
     }
 
     @GetMapping("/{id}")
@@ -47,11 +101,21 @@ public class AccountController {
         return ResponseEntity.ok(accounts);
     }
 
+    @PostMapping(value = "/by-customers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAccountsByCustomerIds(@RequestBody List<Long> customerIds) {
+        List<Long> distinctIds = accountService.validateCustomerIds(customerIds);
+        StreamingResponseBody body = out -> accountService.writeAccountsByCustomerIds(distinctIds, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
     @GetMapping
     public ResponseEntity<Page<AccountDTO>> getAccountsWithFilters(
             @RequestParam(required = false) String iban,
             @RequestParam(required = false) String bicSwift,
             @RequestParam(required = false) String cardAlias,
+            @RequestParam(defaultValue = "true") boolean includeCards,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
@@ -69,9 +133,53 @@ public class AccountController {
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
 
         Page<AccountDTO> accounts = accountService.getAccountsWithFilters(filter, pageable);
+        if (includeCards)
+            accountService.attachCards(accounts.getContent());
         return ResponseEntity.ok(accounts);
     }
 
+    @GetMapping("/scroll")
+    public ResponseEntity<SliceDTO<AccountDTO>> scrollAccountsWithFilters(
+            @RequestParam(required = false) String iban,
+            @RequestParam(required = false) String bicSwift,
+            @RequestParam(defaultValue = "true") boolean includeCards,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDirection) {
+
+        AccountRequest filter = AccountRequest.builder()
+                .iban(iban)
+                .bicSwift(bicSwift)
+                .build();
+
+        Sort.Direction direction = sortDirection.equalsIgnoreCase("desc") ?
+                Sort.Direction.DESC : Sort.Direction.ASC;
+
+        SliceDTO<AccountDTO> accounts = accountService.scrollAccountsWithFilters(filter, sortBy, direction, size, cursor);
+        if (includeCards)
+            accountService.attachCards(accounts.getContent());
+        return ResponseEntity.ok(accounts);
+    }
+
+    // A full export can stream far longer than other async requests, so it alone gets the export timeout
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAccounts(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip, HttpServletRequest request) {
+        AsyncRequestTimeout.extend(request, exportTimeout);
+        ExportFormat exportFormat = ExportFormat.from(format);
+        StreamingResponseBody body = out -> accountExportService.exportAccounts(exportFormat, gzip, out);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("accounts." + exportFormat.getExtension()).build().toString());
+        if (gzip)
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(body);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<AccountDTO> updateAccount(
             @PathVariable Long id,
@@ -92,9 +200,38 @@ public class AccountController {
         return ResponseEntity.ok(exists);
     }
 
+    // format=bitset answers with one bit per requested id, format=missing with the sorted ids that do not exist
+    @PostMapping("/exists/batch")
+    public ResponseEntity<ExistenceDTO> checkAccountsExist(
+            @RequestParam(defaultValue = "bitset") String format,
+            @RequestBody ExistenceRequestDTO request) {
+        ExistenceDTO existence = accountService.checkExistence(request, ExistenceFormat.from(format));
+        return ResponseEntity.ok(existence);
+    }
+
     @GetMapping("/count/customer/{customerId}")
     public ResponseEntity<Long> countAccountsByCustomerId(@PathVariable Long customerId) {
         long count = accountService.countAccountsByCustomerId(customerId);
         return ResponseEntity.ok(count);
     }
-}
\ No newline at end of file
+
+    @PostMapping("/count/customers")
+    public ResponseEntity<Map<Long, Long>> countAccountsByCustomerIds(@RequestBody List<Long> customerIds) {
+        Map<Long, Long> counts = accountService.countAccountsByCustomerIds(customerIds);
+        return ResponseEntity.ok(counts);
+    }
+
+    @GetMapping("/events")
+    public ResponseEntity<List<ReferenceEventDTO>> getEvents(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "1000") int limit) {
+        List<ReferenceEventDTO> events = accountService.getEventsAfter(after, limit);
+        return ResponseEntity.ok(events);
+    }
+
+    @GetMapping("/events/head")
+    public ResponseEntity<Long> getHeadEventOffset() {
+        long offset = accountService.getHeadEventOffset();
+        return ResponseEntity.ok(offset);
+    }
+}
@@ -0,0 +1,23 @@
+package dev.gavin.account_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkAccountResponse {
+
+    private int received;
+
+    private int created;
+
+    private int rejected;
+
+    private List<BulkAccountResult> results;
+}
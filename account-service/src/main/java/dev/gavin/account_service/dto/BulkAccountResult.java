@@ -0,0 +1,32 @@
+package dev.gavin.account_service.dto;
+
+import dev.gavin.common.enums.AccountStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkAccountResult {
+
+    private int index;
+
+    private String iban;
+
+    private Long accountId;
+
+    private AccountStatus status;
+
+    private String description;
+
+    public static BulkAccountResult created(int index, String iban, Long accountId) {
+        return new BulkAccountResult(index, iban, accountId, AccountStatus.ACTIVE, null);
+    }
+
+    public static BulkAccountResult rejected(int index, String iban, String description) {
+        return new BulkAccountResult(index, iban, null, AccountStatus.REJECTED, description);
+    }
+}
@@ -0,0 +1,30 @@
+package dev.gavin.account_service.dto;
+
+import dev.gavin.common.exception.BadRequestException;
+import lombok.Getter;
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+@Getter
+public enum ExportFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON, "ndjson"),
+    CSV(new MediaType("text", "csv"), "csv");
+
+    private final MediaType mediaType;
+
+    private final String extension;
+
+    ExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public static ExportFormat from(String format) {
+        try {
+            return valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unsupported export format " + format + ", expected ndjson or csv");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dev.gavin.account_service.entity;
 
+import dev.gavin.account_service.utils.SearchTerms;
 import dev.gavin.common.enums.AccountStatus;
 import jakarta.persistence.*;
 import lombok.*;
@@ -9,8 +10,14 @@ import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
-@Table(name = "accounts")
+// The (sort column, id) indexes let cursor-paged listings seek straight to the next slice
+@Table(name = "accounts", indexes = {
+        @Index(name = "idx_accounts_bic_swift_id", columnList = "bic_swift, id"),
+        @Index(name = "idx_accounts_customer_id_id", columnList = "customer_id, id"),
+        @Index(name = "idx_accounts_created_at_id", columnList = "created_at, id")
+})
 @Entity
 @Getter
 @Setter
@@ -45,6 +52,13 @@ public class Account {
     @Column(nullable = false)
     private String bicSwift;
 
+    // Normalized copies of iban and bicSwift, backed by trigram indexes for substring search
+    @Column(name = "iban_search")
+    private String ibanSearch;
+
+    @Column(name = "bic_swift_search")
+    private String bicSwiftSearch;
+
     @Column(nullable = false, updatable = false)
     private Long customerId;
 
@@ -55,5 +69,13 @@ public class Account {
     @Column
     private String rejectionReason;
 
+    @Column(unique = true)
+    private UUID verificationRequestId;
 
+    @PrePersist
+    @PreUpdate
+    void normalizeSearchFields() {
+        this.ibanSearch = SearchTerms.normalize(iban);
+        this.bicSwiftSearch = SearchTerms.normalize(bicSwift);
+    }
 }
\ No newline at end of file
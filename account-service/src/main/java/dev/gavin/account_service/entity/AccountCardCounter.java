@@ -0,0 +1,29 @@
+package dev.gavin.account_service.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Number of cards card-service holds for an account, maintained from card-service's card events
+@Table(name = "account_card_counters")
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountCardCounter {
+    @Id
+    private Long accountId;
+
+    @Column(nullable = false)
+    private long cardCount;
+
+    @Column
+    private LocalDateTime updatedAt;
+}
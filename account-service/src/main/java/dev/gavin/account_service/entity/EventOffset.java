@@ -0,0 +1,27 @@
+package dev.gavin.account_service.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Last event offset a consumer has applied, updated in the same transaction as the effects of the events
+@Table(name = "event_offsets")
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventOffset {
+    @Id
+    private String consumer;
+
+    @Column(nullable = false)
+    private long lastOffset;
+
+    @Column
+    private LocalDateTime updatedAt;
+}
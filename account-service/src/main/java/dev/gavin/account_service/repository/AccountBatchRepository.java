@@ -0,0 +1,99 @@
+package dev.gavin.account_service.repository;
+
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.utils.SearchTerms;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class AccountBatchRepository {
+
+    private static final String INSERT_ACCOUNT = """
+            INSERT INTO accounts (iban, bic_swift, customer_id, status, created_at, iban_search, bic_swift_search, deleted, version)
+            VALUES (?, ?, ?, ?, ?, ?, ?, false, 0)
+            """;
+
+    private static final String INSERT_ACCOUNT_CREATED_EVENT = """
+            INSERT INTO account_events (customer_id, account_id, type, created_at)
+            VALUES (?, ?, 'CREATED', ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AccountBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public void insertAll(List<Account> accounts) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_ACCOUNT, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        bind(ps, accounts.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return accounts.size();
+                    }
+                },
+                keyHolder);
+
+        // Keys are matched to rows by position, so a driver that returns fewer of them fails the whole batch
+        // rather than leaving rows without an id or their event
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != accounts.size())
+            throw new IllegalStateException("Batch insert of " + accounts.size() + " accounts returned " + keys.size() + " keys");
+        for (int i = 0; i < accounts.size(); i++) {
+            accounts.get(i).setId(((Number) keys.get(i).get("id")).longValue());
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ACCOUNT_CREATED_EVENT, accounts, accounts.size(),
+                AccountBatchRepository::bindCreatedEvent);
+    }
+
+    @Transactional
+    public void insert(Account account) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_ACCOUNT, new String[]{"id"});
+            bind(ps, account);
+            return ps;
+        }, keyHolder);
+
+        Number id = keyHolder.getKey();
+        if (id != null)
+            account.setId(id.longValue());
+
+        jdbcTemplate.update(INSERT_ACCOUNT_CREATED_EVENT, ps -> bindCreatedEvent(ps, account));
+    }
+
+    private static void bind(PreparedStatement ps, Account account) throws SQLException {
+        ps.setString(1, account.getIban());
+        ps.setString(2, account.getBicSwift());
+        ps.setLong(3, account.getCustomerId());
+        ps.setString(4, account.getStatus().name());
+        ps.setTimestamp(5, Timestamp.valueOf(account.getCreatedAt()));
+        ps.setString(6, SearchTerms.normalize(account.getIban()));
+        ps.setString(7, SearchTerms.normalize(account.getBicSwift()));
+    }
+
+    private static void bindCreatedEvent(PreparedStatement ps, Account account) throws SQLException {
+        ps.setLong(1, account.getCustomerId());
+        ps.setLong(2, account.getId());
+        ps.setTimestamp(3, Timestamp.valueOf(account.getCreatedAt()));
+    }
+}
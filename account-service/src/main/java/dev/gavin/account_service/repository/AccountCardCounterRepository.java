@@ -0,0 +1,9 @@
+package dev.gavin.account_service.repository;
+
+import dev.gavin.account_service.entity.AccountCardCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AccountCardCounterRepository extends JpaRepository<AccountCardCounter, Long> {
+}
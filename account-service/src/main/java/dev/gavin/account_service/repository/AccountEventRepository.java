@@ -0,0 +1,18 @@
+package dev.gavin.account_service.repository;
+
+import dev.gavin.account_service.entity.AccountEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AccountEventRepository extends JpaRepository<AccountEvent, Long> {
+
+    List<AccountEvent> findByPositionGreaterThanOrderByPositionAsc(Long position, Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(e.position), 0) FROM AccountEvent e")
+    long findHeadOffset();
+}
@@ -1,18 +1,31 @@
 package dev.gavin.account_service.repository;
 
 import dev.gavin.account_service.entity.Account;
+import jakarta.persistence.QueryHint;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface AccountRepository extends JpaRepository<Account, Long> {
+public interface AccountRepository extends JpaRepository<Account, Long>, JpaSpecificationExecutor<Account> {
     Page<Account> findByCustomerId(Long customerId, Pageable pageable);
 
     Page<Account> findByIbanContaining(String iban, Pageable pageable);
@@ -25,13 +38,65 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
 
     List<Account> findByCustomerId(Long customerId);
 
+    @Query("SELECT a.id FROM Account a WHERE a.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT a.id FROM Account a WHERE a.id BETWEEN :from AND :to")
+    List<Long> findExistingIdsBetween(@Param("from") Long from, @Param("to") Long to);
+
+    @Query("SELECT MAX(a.id) FROM Account a")
+    Long findMaxId();
+
+    @Query("SELECT a.id FROM Account a WHERE a.id <= :watermark")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "10000"))
+    Stream<Long> streamIdsUpTo(@Param("watermark") Long watermark);
+
+    @Query("SELECT a FROM Account a WHERE a.customerId IN :customerIds ORDER BY a.customerId, a.id")
+    List<Account> findByCustomerIds(@Param("customerIds") Collection<Long> customerIds);
+
+    // Expects terms normalized with SearchTerms and escaped by SearchTerms.likePattern; on PostgreSQL the
+    // LIKEs are served by the trigram indexes created by AccountSearchIndexInitializer.
     @Query("""
             SELECT a FROM Account a
-                WHERE (:iban IS NULL OR a.iban LIKE %:iban%) AND
-                (:bicSwift IS NULL OR a.bicSwift LIKE %:bicSwift%)
+                WHERE (:iban IS NULL OR a.ibanSearch LIKE CONCAT('%', :iban, '%') ESCAPE '\\') AND
+                (:bicSwift IS NULL OR a.bicSwiftSearch LIKE CONCAT('%', :bicSwift, '%') ESCAPE '\\')
             """)
     Page<Account> findWithFilters(
             @Param("iban") String iban, @Param("bicSwift") String bicSwift, Pageable pageable);
 
+    // Cursor-paged variant of findWithFilters: same filters, a keyset restriction instead of an offset
+    // and no count query.
+    default List<Account> scrollWithFilters(String iban, String bicSwift, Specification<Account> after, Sort sort, int limit) {
+        Specification<Account> filters = (root, query, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (iban != null)
+                predicates.add(criteriaBuilder.like(root.get("ibanSearch"), "%" + iban + "%", '\\'));
+            if (bicSwift != null)
+                predicates.add(criteriaBuilder.like(root.get("bicSwiftSearch"), "%" + bicSwift + "%", '\\'));
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
+
+        return findBy(filters.and(after), query -> query.sortBy(sort).limit(limit).all());
+    }
+
     int countByCustomerId(Long customerId);
+
+    @Query("SELECT a.id FROM Account a WHERE a.id > :after ORDER BY a.id")
+    List<Long> findIdsAfter(@Param("after") Long after, Pageable pageable);
+
+    @Query("SELECT a.customerId, COUNT(a) FROM Account a WHERE a.customerId IN :customerIds GROUP BY a.customerId")
+    List<Object[]> countByCustomerIds(@Param("customerIds") Collection<Long> customerIds);
+
+    @Query("SELECT a.iban FROM Account a WHERE a.iban IN :ibans")
+    List<String> findExistingIbans(@Param("ibans") Collection<String> ibans);
+
+    Optional<Account> findByVerificationRequestId(UUID verificationRequestId);
+
+    @Query("""
+            SELECT a FROM Account a
+                WHERE a.status = dev.gavin.common.enums.AccountStatus.PENDING AND
+                COALESCE(a.updatedAt, a.createdAt) < :cutoff
+                ORDER BY a.id
+            """)
+    List<Account> findStalePending(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
 }
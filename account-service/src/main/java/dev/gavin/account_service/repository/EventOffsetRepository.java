@@ -0,0 +1,20 @@
+package dev.gavin.account_service.repository;
+
+import dev.gavin.account_service.entity.EventOffset;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface EventOffsetRepository extends JpaRepository<EventOffset, String> {
+
+    // Serializes consumers across instances so a batch of events is only applied once
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM EventOffset o WHERE o.consumer = :consumer")
+    Optional<EventOffset> lockByConsumer(@Param("consumer") String consumer);
+}
@@ -0,0 +1,111 @@
+package dev.gavin.account_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import dev.gavin.account_service.dto.ExportFormat;
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.common.dto.AccountDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+// Streams every account to the response through a forward-only cursor. Rows are fetched fetch-size at a
+// time, loaded read-only (no dirty-checking snapshot) and detached once written, so heap use does not
+// grow with the number of accounts exported.
+@Service
+@Slf4j
+public class AccountExportService {
+
+    private static final String CSV_HEADER = "id,iban,bicSwift,customerId,status,description,createdAt,updatedAt";
+
+    private final EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${account.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    public AccountExportService(EntityManager entityManager, ObjectMapper objectMapper) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    // The transaction keeps the connection out of auto-commit, which PostgreSQL needs to honour the fetch size
+    @Transactional
+    public void exportAccounts(ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024);
+        ObjectWriter jsonWriter = objectMapper.writerFor(AccountDTO.class);
+
+        long rows = 0;
+        try (Stream<Account> accounts = entityManager.createQuery("SELECT a FROM Account a ORDER BY a.id", Account.class)
+                .setHint(HINT_FETCH_SIZE, fetchSize)
+                .setHint(HINT_READ_ONLY, true)
+                .getResultStream()) {
+            if (format == ExportFormat.CSV)
+                writer.write(CSV_HEADER + "\n");
+
+            Iterator<Account> iterator = accounts.iterator();
+            while (iterator.hasNext()) {
+                Account account = iterator.next();
+                AccountDTO dto = AccountService.mapToDTO(account);
+                entityManager.detach(account);
+
+                if (format == ExportFormat.CSV)
+                    writeCsvRow(writer, dto);
+                else
+                    writer.write(jsonWriter.writeValueAsString(dto));
+                writer.write('\n');
+
+                if (++rows % fetchSize == 0)
+                    writer.flush();
+            }
+        }
+
+        writer.flush();
+        if (target instanceof GZIPOutputStream gzipStream)
+            gzipStream.finish();
+        log.info("Exported {} account(s) as {}", rows, format);
+    }
+
+    private void writeCsvRow(Writer writer, AccountDTO account) throws IOException {
+        writer.write(String.valueOf(account.getId()));
+        writer.write(',');
+        writer.write(csv(account.getIban()));
+        writer.write(',');
+        writer.write(csv(account.getBicSwift()));
+        writer.write(',');
+        writer.write(String.valueOf(account.getCustomerId()));
+        writer.write(',');
+        writer.write(csv(account.getStatus() != null ? account.getStatus().name() : null));
+        writer.write(',');
+        writer.write(csv(account.getDescription()));
+        writer.write(',');
+        writer.write(csv(account.getCreatedAt() != null ? account.getCreatedAt().toString() : null));
+        writer.write(',');
+        writer.write(csv(account.getUpdatedAt() != null ? account.getUpdatedAt().toString() : null));
+    }
+
+    private String csv(String value) {
+        if (value == null)
+            return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
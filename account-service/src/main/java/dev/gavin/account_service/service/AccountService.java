@@ -1,44 +1,126 @@
 package dev.gavin.account_service.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.gavin.account_service.dto.AccountRequest;
+import dev.gavin.account_service.dto.CreateAccountResponse;
 import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.entity.AccountEvent;
+import dev.gavin.account_service.repository.AccountEventRepository;
 import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.account_service.utils.SearchTerms;
 import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.dto.SliceDTO;
 import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.events.CustomerVerificationRequest;
+import dev.gavin.common.events.EventBroker;
+import dev.gavin.common.events.EventFeedSequencer;
 import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.common.existence.BatchExistence;
+import dev.gavin.common.existence.IdFilter;
+import dev.gavin.common.existence.ExistenceFormat;
 import dev.gavin.common.exception.InternalErrorException;
 import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.common.pagination.Keyset;
+import dev.gavin.common.pagination.KeysetField;
+import io.micrometer.core.annotation.Timed;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 @Slf4j
+@Timed(value = "service.method", histogram = true)
 public class AccountService {
 
+    private static final Map<String, KeysetField<Account>> KEYSET_FIELDS = Map.of(
+            "id", KeysetField.of(Account::getId, Long::valueOf),
+            "iban", KeysetField.of(Account::getIban, value -> value),
+            "bicSwift", KeysetField.of(Account::getBicSwift, value -> value),
+            "customerId", KeysetField.of(Account::getCustomerId, Long::valueOf),
+            "createdAt", KeysetField.of(Account::getCreatedAt, LocalDateTime::parse));
+
     private final AccountRepository accountRepository;
 
     private final RestTemplate restTemplate;
 
+    private final EventBroker eventBroker;
+
+    private final CustomerIdReplica customerIdReplica;
+
+    private final ObjectMapper objectMapper;
+
+    private final AccountEventRepository accountEventRepository;
+
+    private final CardCounterService cardCounterService;
+
+    private final IdFilter accountIdFilter;
+
+    private final EventFeedSequencer accountEventSequencer;
+
     @Value("${customer-service.url}")
     private String customerServiceUrl;
 
     @Value("${card-service.url}")
     private String cardServiceUrl;
 
-    public AccountService(AccountRepository accountRepository, RestTemplate restTemplate) {
+    @Value("${account.by-customers.max-ids:5000}")
+    private int maxCustomerIds = 5000;
+
+    @Value("${account.by-customers.chunk-size:1000}")
+    private int customerChunkSize = 1000;
+
+    @Value("${account.events.max-batch-size:5000}")
+    private int maxEventBatchSize = 5000;
+
+    @Value("${account.cards.batch-size:1000}")
+    private int cardBatchSize = 1000;
+
+    public AccountService(AccountRepository accountRepository, RestTemplate restTemplate, EventBroker eventBroker,
+                          CustomerIdReplica customerIdReplica, ObjectMapper objectMapper,
+                          AccountEventRepository accountEventRepository, CardCounterService cardCounterService,
+                          IdFilter accountIdFilter, EventFeedSequencer accountEventSequencer) {
         this.accountRepository = accountRepository;
         this.restTemplate = restTemplate;
+        this.eventBroker = eventBroker;
+        this.customerIdReplica = customerIdReplica;
+        this.objectMapper = objectMapper;
+        this.accountEventRepository = accountEventRepository;
+        this.cardCounterService = cardCounterService;
+        this.accountIdFilter = accountIdFilter;
+        this.accountEventSequencer = accountEventSequencer;
     }
 
     public AccountDTO createAccount(AccountRequest accountRequest) {
@@ -48,15 +130,7 @@ public class AccountService {
             throw new BadRequestException("Account with IBAN " + accountRequest.getIban() + " already exists");
         }
 
-        boolean customerExists;
-        try {
-            String url = customerServiceUrl + "/api/customers/exists/" + accountRequest.getCustomerId();
-            customerExists = Boolean.TRUE.equals(restTemplate.getForObject(url, Boolean.class));
-        } catch (Exception e) {
-            throw new InternalErrorException("Failed to verify customer details: " + e.getMessage());
-        }
-
-        if (!customerExists) {
+        if (!customerExists(accountRequest.getCustomerId())) {
             throw new ResourceNotFoundException("Customer", "id", String.valueOf(accountRequest.getCustomerId()));
         }
 
@@ -69,20 +143,53 @@ public class AccountService {
                 .build();
 
         Account savedAccount = accountRepository.save(account);
+        recordEvent(savedAccount.getCustomerId(), savedAccount.getId(), ReferenceEventType.CREATED);
         log.info("Created new account with ID: {}", savedAccount.getId());
         return mapToDTO(savedAccount);
     }
 
+    public CreateAccountResponse createAccountAsync(AccountRequest accountRequest) {
+        Optional<Account> existingAccount = accountRepository.findByIban(accountRequest.getIban());
+        if (existingAccount.isPresent()) {
+            throw new BadRequestException("Account with IBAN " + accountRequest.getIban() + " already exists");
+        }
+        if (accountRequest.getCustomerId() == null) {
+            throw new BadRequestException("Customer ID is required");
+        }
+
+        Account account = Account.builder()
+                .iban(accountRequest.getIban())
+                .bicSwift(accountRequest.getBicSwift())
+                .customerId(accountRequest.getCustomerId())
+                .status(AccountStatus.PENDING)
+                .verificationRequestId(UUID.randomUUID())
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        Account savedAccount = accountRepository.save(account);
+        recordEvent(savedAccount.getCustomerId(), savedAccount.getId(), ReferenceEventType.CREATED);
+        log.info("Created pending account with ID: {}", savedAccount.getId());
+
+        // Customer verification is only requested once the pending account is committed, so the
+        // response handler can always find it.
+        CustomerVerificationRequest verificationRequest = new CustomerVerificationRequest(
+                savedAccount.getId(), savedAccount.getCustomerId(), savedAccount.getVerificationRequestId());
+        publishAfterCommit(CustomerVerificationRequest.TOPIC, verificationRequest);
+
+        return new CreateAccountResponse(savedAccount.getId(), savedAccount.getStatus(),
+                "Account is pending customer verification");
+    }
+
 
     public AccountDTO getAccountById(Long id) {
         return accountRepository.findById(id)
-                .map(this::mapToDTO)
+                .map(AccountService::mapToDTO)
                 .orElseThrow(() -> new ResourceNotFoundException("Account", "id", String.valueOf(id)));
     }
 
     public AccountDTO getAccountByIban(String iban) {
         return accountRepository.findByIban(iban)
-                .map(this::mapToDTO)
+                .map(AccountService::mapToDTO)
                 .orElseThrow(() -> new ResourceNotFoundException("Account", "IBAN", String.valueOf(iban)));
     }
 
@@ -90,13 +197,92 @@ public class AccountService {
     public List<AccountDTO> getAccountsByCustomerId(Long customerId) {
         return accountRepository.findByCustomerId(customerId)
                 .stream()
-                .map(this::mapToDTO)
+                .map(AccountService::mapToDTO)
                 .collect(Collectors.toList());
     }
 
+    public List<Long> validateCustomerIds(List<Long> customerIds) {
+        List<Long> distinctIds = customerIds == null ? List.of()
+                : customerIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctIds.isEmpty())
+            throw new BadRequestException("At least one customer ID is required");
+        if (distinctIds.size() > maxCustomerIds)
+            throw new BadRequestException("Cannot fetch accounts for more than " + maxCustomerIds + " customers at once");
+        return distinctIds;
+    }
+
+    // Writes {"<customerId>": [accounts...]} one chunk of customers at a time, so only one chunk of
+    // accounts is held in memory. Customers without accounts are written with an empty list.
+    public void writeAccountsByCustomerIds(List<Long> customerIds, OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.createGenerator(out)) {
+            json.writeStartObject();
+            for (int from = 0; from < customerIds.size(); from += customerChunkSize) {
+                List<Long> chunk = customerIds.subList(from, Math.min(from + customerChunkSize, customerIds.size()));
+
+                Map<Long, List<AccountDTO>> accountsByCustomer = new LinkedHashMap<>();
+                chunk.forEach(customerId -> accountsByCustomer.put(customerId, new ArrayList<>()));
+                for (Account account : accountRepository.findByCustomerIds(chunk))
+                    accountsByCustomer.get(account.getCustomerId()).add(mapToDTO(account));
+
+                for (Map.Entry<Long, List<AccountDTO>> entry : accountsByCustomer.entrySet()) {
+                    json.writeFieldName(String.valueOf(entry.getKey()));
+                    json.writeObject(entry.getValue());
+                }
+                json.flush();
+            }
+            json.writeEndObject();
+        }
+    }
+
     public Page<AccountDTO> getAccountsWithFilters(AccountRequest filter, Pageable pageable) {
-        return accountRepository.findWithFilters(filter.getIban(), filter.getBicSwift(), pageable)
-                .map(this::mapToDTO);
+        return accountRepository.findWithFilters(
+                        searchPattern(filter.getIban()), searchPattern(filter.getBicSwift()), pageable)
+                .map(AccountService::mapToDTO);
+    }
+
+    public SliceDTO<AccountDTO> scrollAccountsWithFilters(AccountRequest filter, String sortBy, Sort.Direction direction,
+                                                          int size, String cursor) {
+        Keyset.validateSize(size);
+        KeysetField<Account> field = Keyset.field(KEYSET_FIELDS, sortBy);
+        Specification<Account> after = Keyset.after(cursor, sortBy, direction, field);
+
+        List<Account> accounts = accountRepository.scrollWithFilters(
+                searchPattern(filter.getIban()), searchPattern(filter.getBicSwift()),
+                after, Keyset.sort(sortBy, direction), size + 1);
+        return Keyset.slice(accounts, size, sortBy, direction, field, Account::getId, AccountService::mapToDTO);
+    }
+
+    private static String searchPattern(String value) {
+        return SearchTerms.likePattern(SearchTerms.normalize(value));
+    }
+
+    // Fills in the cards of a page of accounts with one card-service call per cardBatchSize accounts. Runs
+    // outside a transaction so no connection is held across the call. When card-service cannot answer the
+    // cards are left null, which tells "unknown" apart from an account without cards. Cards are only filled in
+    // once every call has answered, so a page never mixes accounts with cards and accounts left unknown.
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void attachCards(List<AccountDTO> accounts) {
+        Map<Long, List<CardDTO>> cards = new HashMap<>();
+        for (int from = 0; from < accounts.size(); from += cardBatchSize) {
+            List<AccountDTO> chunk = accounts.subList(from, Math.min(from + cardBatchSize, accounts.size()));
+            Map<Long, List<CardDTO>> chunkCards;
+            try {
+                chunkCards = restTemplate.exchange(
+                        cardServiceUrl + "/api/cards/by-accounts", HttpMethod.POST,
+                        new HttpEntity<>(chunk.stream().map(AccountDTO::getId).toList()),
+                        new ParameterizedTypeReference<Map<Long, List<CardDTO>>>() {
+                        }).getBody();
+            } catch (Exception e) {
+                log.warn("Failed to fetch cards for {} account(s): {}", accounts.size(), e.getMessage());
+                return;
+            }
+            if (chunkCards == null)
+                return;
+
+            cards.putAll(chunkCards);
+        }
+
+        accounts.forEach(account -> account.setCards(cards.getOrDefault(account.getId(), List.of())));
     }
 
 
@@ -116,6 +302,7 @@ public class AccountService {
         account.setBicSwift(accountRequest.getBicSwift());
         account.setUpdatedAt(LocalDateTime.now());
         Account updatedAccount = accountRepository.save(account);
+        recordEvent(updatedAccount.getCustomerId(), updatedAccount.getId(), ReferenceEventType.UPDATED);
         log.info("Updated account with ID: {}", updatedAccount.getId());
 
         return mapToDTO(updatedAccount);
@@ -123,37 +310,115 @@ public class AccountService {
 
 
     public void deleteAccount(Long id) {
-        if (!accountRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Account", "id", String.valueOf(id));
-        }
-
-        int cardsCount;
-        try {
-            Integer response = restTemplate.getForObject(cardServiceUrl + "/api/cards/count/account/" + id, Integer.class);
-            cardsCount = response != null ? response : 0;
-        } catch (Exception e) {
-            throw new InternalErrorException("Failed to fetch card details: " + e.getMessage());
-        }
+        Account account = accountRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Account", "id", String.valueOf(id)));
 
+        // Answered from the locally maintained counter once it is seeded; card-service is only asked before that
+        long cardsCount = cardCounterService.isTracking() ? cardCounterService.countCards(id) : fetchCardCount(id);
         if (cardsCount > 0) {
             throw new BadRequestException("Account has " + cardsCount + " card(s) and cannot be deleted");
         }
 
         accountRepository.deleteById(id);
+        cardCounterService.removeCounter(id);
+        recordEvent(account.getCustomerId(), id, ReferenceEventType.DELETED);
         log.info("Deleted account with ID: {}", id);
     }
 
+    private long fetchCardCount(Long id) {
+        try {
+            Integer response = restTemplate.getForObject(cardServiceUrl + "/api/cards/count/account/" + id, Integer.class);
+            return response != null ? response : 0;
+        } catch (Exception e) {
+            throw new InternalErrorException("Failed to fetch card details: " + e.getMessage());
+        }
+    }
+
 
     public boolean isAccountExistsById(Long id) {
         return accountRepository.existsById(id);
     }
 
+    public ExistenceDTO checkExistence(ExistenceRequestDTO request, ExistenceFormat format) {
+        return BatchExistence.check(request, format, accountRepository::findExistingIds,
+                accountRepository::findExistingIdsBetween, accountIdFilter::isDefinitelyMissing);
+    }
+
 
     public long countAccountsByCustomerId(Long customerId) {
         return accountRepository.countByCustomerId(customerId);
     }
 
-    private AccountDTO mapToDTO(Account account) {
+    // Every requested customer is present in the result, with 0 when it has no accounts
+    public Map<Long, Long> countAccountsByCustomerIds(List<Long> customerIds) {
+        if (customerIds == null || customerIds.isEmpty())
+            return Map.of();
+        if (customerIds.size() > maxEventBatchSize)
+            throw new BadRequestException("Cannot count accounts for more than " + maxEventBatchSize + " customers at once");
+
+        Map<Long, Long> counts = new HashMap<>();
+        customerIds.forEach(customerId -> counts.put(customerId, 0L));
+        for (Object[] row : accountRepository.countByCustomerIds(new HashSet<>(customerIds)))
+            counts.put((Long) row[0], (Long) row[1]);
+        return counts;
+    }
+
+    // Events committed since the last read are positioned first, in their own transaction, so the read sees them
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public List<ReferenceEventDTO> getEventsAfter(long offset, int limit) {
+        if (limit < 1 || limit > maxEventBatchSize)
+            throw new BadRequestException("Limit must be between 1 and " + maxEventBatchSize);
+
+        accountEventSequencer.sequence();
+        return accountEventRepository.findByPositionGreaterThanOrderByPositionAsc(offset, PageRequest.of(0, limit))
+                .stream()
+                .map(event -> new ReferenceEventDTO(event.getPosition(), event.getType(), event.getCustomerId(),
+                        event.getAccountId(), event.getCreatedAt()))
+                .toList();
+    }
+
+    public long getHeadEventOffset() {
+        return accountEventRepository.findHeadOffset();
+    }
+
+    private void recordEvent(Long customerId, Long accountId, ReferenceEventType type) {
+        accountEventRepository.save(AccountEvent.builder()
+                .customerId(customerId)
+                .accountId(accountId)
+                .type(type)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    // Customers found in a fresh replica are trusted locally. A miss may just be a customer created
+    // since the last sync, so it is confirmed with customer-service like a stale replica would be.
+    private boolean customerExists(Long customerId) {
+        if (customerId != null && customerIdReplica.isFresh() && customerIdReplica.contains(customerId))
+            return true;
+
+        try {
+            String url = customerServiceUrl + "/api/customers/exists/" + customerId;
+            return Boolean.TRUE.equals(restTemplate.getForObject(url, Boolean.class));
+        } catch (Exception e) {
+            throw new InternalErrorException("Failed to verify customer details: " + e.getMessage());
+        }
+    }
+
+    private void publishAfterCommit(String topic, Object event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventBroker.publish(topic, event);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eventBroker.publish(topic, event);
+            }
+        });
+    }
+
+    static AccountDTO mapToDTO(Account account) {
         return AccountDTO.builder()
                 .id(account.getId())
                 .iban(account.getIban())
@@ -162,6 +427,7 @@ public class AccountService {
                 .createdAt(account.getCreatedAt())
                 .updatedAt(account.getUpdatedAt())
                 .status(account.getStatus())
+                .description(account.getRejectionReason())
                 .build();
     }
 
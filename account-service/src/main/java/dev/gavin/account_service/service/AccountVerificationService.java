@@ -0,0 +1,119 @@
+package dev.gavin.account_service.service;
+
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.entity.AccountEvent;
+import dev.gavin.account_service.repository.AccountEventRepository;
+import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.events.CustomerVerificationRequest;
+import dev.gavin.common.events.CustomerVerificationResponse;
+import dev.gavin.common.events.EventBroker;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@Slf4j
+public class AccountVerificationService {
+
+    private final AccountRepository accountRepository;
+
+    private final AccountEventRepository accountEventRepository;
+
+    private final EventBroker eventBroker;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${account.verification.retry-after:PT30S}")
+    private Duration retryAfter = Duration.ofSeconds(30);
+
+    @Value("${account.verification.retry-batch-size:500}")
+    private int retryBatchSize = 500;
+
+    public AccountVerificationService(AccountRepository accountRepository, AccountEventRepository accountEventRepository,
+                                      EventBroker eventBroker, TransactionTemplate transactionTemplate) {
+        this.accountRepository = accountRepository;
+        this.accountEventRepository = accountEventRepository;
+        this.eventBroker = eventBroker;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // The broker calls the handler on this instance rather than its proxy, so the transaction is opened here
+    @PostConstruct
+    void subscribe() {
+        eventBroker.subscribe(CustomerVerificationResponse.TOPIC, CustomerVerificationResponse.class, response ->
+                transactionTemplate.executeWithoutResult(status -> handleVerificationResponse(response)));
+    }
+
+    @Transactional
+    public void handleVerificationResponse(CustomerVerificationResponse response) {
+        Optional<Account> pendingAccount = accountRepository.findByVerificationRequestId(response.getRequestId());
+        if (pendingAccount.isEmpty()) {
+            log.warn("Ignoring verification response for unknown request: {}", response);
+            return;
+        }
+
+        Account account = pendingAccount.get();
+        if (account.getStatus() != AccountStatus.PENDING) {
+            log.debug("Account {} is already {}, ignoring duplicate verification response", account.getId(), account.getStatus());
+            return;
+        }
+
+        if (response.isCustomerExists()) {
+            account.setStatus(AccountStatus.ACTIVE);
+        } else {
+            account.setStatus(AccountStatus.REJECTED);
+            account.setRejectionReason(String.format("Customer with id, %s cannot be found", account.getCustomerId()));
+        }
+        account.setUpdatedAt(LocalDateTime.now());
+        accountRepository.save(account);
+        // The status change is published like any other account update so read models can follow it
+        accountEventRepository.save(AccountEvent.builder()
+                .customerId(account.getCustomerId())
+                .accountId(account.getId())
+                .type(ReferenceEventType.UPDATED)
+                .createdAt(account.getUpdatedAt())
+                .build());
+        log.info("Account {} verification completed with status {}", account.getId(), account.getStatus());
+    }
+
+    // Verification requests can be lost if the broker or customer lookup fails, so pending accounts
+    // that have not been answered in time are asked about again.
+    @Scheduled(fixedDelayString = "${account.verification.retry-interval:PT10S}")
+    @Transactional
+    public void republishStalePending() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Account> stale = accountRepository.findStalePending(now.minus(retryAfter), PageRequest.of(0, retryBatchSize));
+        if (stale.isEmpty())
+            return;
+
+        List<CustomerVerificationRequest> requests = new ArrayList<>();
+        for (Account account : stale) {
+            account.setUpdatedAt(now);
+            requests.add(new CustomerVerificationRequest(
+                    account.getId(), account.getCustomerId(), account.getVerificationRequestId()));
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                requests.forEach(request -> eventBroker.publish(CustomerVerificationRequest.TOPIC, request));
+                log.info("Republished verification requests for {} pending account(s)", requests.size());
+            }
+        });
+    }
+}
@@ -0,0 +1,196 @@
+package dev.gavin.account_service.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.account_service.dto.AccountRequest;
+import dev.gavin.account_service.dto.BulkAccountResponse;
+import dev.gavin.account_service.dto.BulkAccountResult;
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.repository.AccountBatchRepository;
+import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.exception.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+
+@Service
+@Slf4j
+public class BulkAccountService {
+
+    private final AccountRepository accountRepository;
+
+    private final AccountBatchRepository accountBatchRepository;
+
+    private final RestTemplate restTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${customer-service.url}")
+    private String customerServiceUrl;
+
+    @Value("${account.bulk.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    public BulkAccountService(AccountRepository accountRepository, AccountBatchRepository accountBatchRepository,
+                              RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.accountRepository = accountRepository;
+        this.accountBatchRepository = accountBatchRepository;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    // Accepts either a JSON array or newline-delimited JSON and processes it chunk by chunk,
+    // so only one chunk of requests is held in memory at a time.
+    public BulkAccountResponse createAccounts(InputStream body) {
+        List<BulkAccountResult> results = new ArrayList<>();
+        List<AccountRequest> chunk = new ArrayList<>(chunkSize);
+        int index = 0;
+
+        try (MappingIterator<AccountRequest> requests = objectMapper.readerFor(AccountRequest.class).readValues(body)) {
+            while (requests.hasNextValue()) {
+                chunk.add(requests.nextValue());
+                if (chunk.size() == chunkSize) {
+                    results.addAll(processChunk(index, chunk));
+                    index += chunk.size();
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Malformed bulk account payload at row " + (index + chunk.size()) + ": " + e.getMessage());
+        }
+
+        if (!chunk.isEmpty())
+            results.addAll(processChunk(index, chunk));
+
+        int created = (int) results.stream().filter(result -> result.getStatus() == AccountStatus.ACTIVE).count();
+        log.info("Bulk account creation finished: {} received, {} created", results.size(), created);
+        return new BulkAccountResponse(results.size(), created, results.size() - created, results);
+    }
+
+    List<BulkAccountResult> processChunk(int offset, List<AccountRequest> chunk) {
+        BulkAccountResult[] results = new BulkAccountResult[chunk.size()];
+        Map<Integer, AccountRequest> candidates = new LinkedHashMap<>();
+        Set<String> seenIbans = new HashSet<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            AccountRequest request = chunk.get(i);
+            String error = validate(request);
+            if (error == null && !seenIbans.add(request.getIban()))
+                error = "Duplicate IBAN " + request.getIban() + " in request";
+
+            if (error != null)
+                results[i] = BulkAccountResult.rejected(offset + i, request != null ? request.getIban() : null, error);
+            else
+                candidates.put(i, request);
+        }
+
+        if (!candidates.isEmpty()) {
+            Set<String> existingIbans = new HashSet<>(accountRepository.findExistingIbans(seenIbans));
+            Set<Long> customerIds = new HashSet<>();
+            candidates.values().forEach(request -> customerIds.add(request.getCustomerId()));
+
+            Set<Long> existingCustomers;
+            String customerError = null;
+            try {
+                existingCustomers = findExistingCustomers(customerIds);
+            } catch (Exception e) {
+                existingCustomers = Set.of();
+                customerError = "Failed to verify customer details: " + e.getMessage();
+            }
+
+            List<Integer> toInsert = new ArrayList<>();
+            List<Account> accounts = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (Map.Entry<Integer, AccountRequest> entry : candidates.entrySet()) {
+                int i = entry.getKey();
+                AccountRequest request = entry.getValue();
+                if (existingIbans.contains(request.getIban())) {
+                    results[i] = BulkAccountResult.rejected(offset + i, request.getIban(),
+                            "Account with IBAN " + request.getIban() + " already exists");
+                } else if (customerError != null) {
+                    results[i] = BulkAccountResult.rejected(offset + i, request.getIban(), customerError);
+                } else if (!existingCustomers.contains(request.getCustomerId())) {
+                    results[i] = BulkAccountResult.rejected(offset + i, request.getIban(),
+                            String.format("Customer with id, %s cannot be found", request.getCustomerId()));
+                } else {
+                    toInsert.add(i);
+                    accounts.add(Account.builder()
+                            .iban(request.getIban())
+                            .bicSwift(request.getBicSwift())
+                            .customerId(request.getCustomerId())
+                            .status(AccountStatus.ACTIVE)
+                            .createdAt(now)
+                            .build());
+                }
+            }
+
+            List<String> insertErrors = insert(accounts);
+            for (int j = 0; j < toInsert.size(); j++) {
+                int i = toInsert.get(j);
+                Account account = accounts.get(j);
+                results[i] = account.getId() != null
+                        ? BulkAccountResult.created(offset + i, account.getIban(), account.getId())
+                        : BulkAccountResult.rejected(offset + i, account.getIban(), insertErrors.get(j));
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    // Returns the reason each account that was not inserted was rejected, by position
+    private List<String> insert(List<Account> accounts) {
+        List<String> errors = new ArrayList<>(Collections.nCopies(accounts.size(), null));
+        if (accounts.isEmpty())
+            return errors;
+
+        try {
+            accountBatchRepository.insertAll(accounts);
+        } catch (DataIntegrityViolationException e) {
+            // Typically a concurrent writer claimed one of the IBANs after the uniqueness check; the batch was
+            // rolled back, so fall back to row-by-row inserts to find out which rows still go through. Only a
+            // unique-key violation is reported as an existing IBAN.
+            log.warn("Batch insert of {} accounts failed, retrying row by row: {}", accounts.size(), e.getMessage());
+            for (int i = 0; i < accounts.size(); i++) {
+                Account account = accounts.get(i);
+                account.setId(null);
+                try {
+                    accountBatchRepository.insert(account);
+                } catch (DuplicateKeyException rowError) {
+                    account.setId(null);
+                    errors.set(i, "Account with IBAN " + account.getIban() + " already exists");
+                } catch (DataIntegrityViolationException rowError) {
+                    account.setId(null);
+                    errors.set(i, "Failed to create account: " + rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        return errors;
+    }
+
+    private Set<Long> findExistingCustomers(Set<Long> customerIds) {
+        Long[] existing = restTemplate.postForObject(
+                customerServiceUrl + "/api/customers/exists", customerIds, Long[].class);
+        return existing != null ? new HashSet<>(Arrays.asList(existing)) : Set.of();
+    }
+
+    private String validate(AccountRequest request) {
+        if (request == null)
+            return "Account details are required";
+        if (request.getIban() == null || request.getIban().isBlank())
+            return "IBAN is required";
+        if (request.getBicSwift() == null || request.getBicSwift().isBlank())
+            return "BIC/SWIFT is required";
+        if (request.getCustomerId() == null)
+            return "Customer ID is required";
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+package dev.gavin.account_service.service;
+
+import dev.gavin.account_service.entity.AccountCardCounter;
+import dev.gavin.account_service.entity.EventOffset;
+import dev.gavin.account_service.repository.AccountCardCounterRepository;
+import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.account_service.repository.EventOffsetRepository;
+import dev.gavin.common.events.EventCounterConsumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Keeps a card count per account from card-service's card events, so the account delete guard is a
+// local primary-key read.
+@Service
+public class CardCounterService extends EventCounterConsumer {
+
+    static final String CONSUMER = "card-service.card-events";
+
+    private final AccountCardCounterRepository counterRepository;
+
+    private final EventOffsetRepository offsetRepository;
+
+    private final AccountRepository accountRepository;
+
+    @Value("${card-service.url}")
+    private String cardServiceUrl;
+
+    @Value("${account.card-counters.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${account.card-counters.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${account.card-counters.reconcile-chunk-size:1000}")
+    private int reconcileChunkSize = 1000;
+
+    public CardCounterService(AccountCardCounterRepository counterRepository, EventOffsetRepository offsetRepository,
+                              AccountRepository accountRepository, RestTemplate restTemplate,
+                              TransactionTemplate transactionTemplate) {
+        super(restTemplate, transactionTemplate, CONSUMER);
+        this.counterRepository = counterRepository;
+        this.offsetRepository = offsetRepository;
+        this.accountRepository = accountRepository;
+    }
+
+    public long countCards(Long accountId) {
+        return counterRepository.findById(accountId)
+                .map(AccountCardCounter::getCardCount)
+                .orElse(0L);
+    }
+
+    public void removeCounter(Long accountId) {
+        counterRepository.deleteById(accountId);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${account.card-counters.poll-interval:PT1S}")
+    public void pollEvents() {
+        super.pollEvents();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${account.card-counters.reconcile-interval:PT1H}",
+            initialDelayString = "${account.card-counters.reconcile-interval:PT1H}")
+    public void reconcile() {
+        super.reconcile();
+    }
+
+    @Override
+    protected boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    protected String eventsUrl() {
+        return cardServiceUrl + "/api/cards/events";
+    }
+
+    @Override
+    protected String countsUrl() {
+        return cardServiceUrl + "/api/cards/count/accounts";
+    }
+
+    @Override
+    protected int batchSize() {
+        return batchSize;
+    }
+
+    @Override
+    protected int reconcileChunkSize() {
+        return reconcileChunkSize;
+    }
+
+    @Override
+    protected Optional<Long> findOffset() {
+        return offsetRepository.findById(CONSUMER).map(EventOffset::getLastOffset);
+    }
+
+    @Override
+    protected Optional<Long> lockOffset() {
+        return offsetRepository.lockByConsumer(CONSUMER).map(EventOffset::getLastOffset);
+    }
+
+    @Override
+    protected void saveOffset(long offset) {
+        offsetRepository.save(new EventOffset(CONSUMER, offset, LocalDateTime.now()));
+    }
+
+    @Override
+    protected List<Long> findParentIdsAfter(long after, int limit) {
+        return accountRepository.findIdsAfter(after, PageRequest.of(0, limit));
+    }
+
+    @Override
+    protected Map<Long, Long> findCounts(Collection<Long> accountIds) {
+        return counterRepository.findAllById(accountIds).stream()
+                .collect(Collectors.toMap(AccountCardCounter::getAccountId, AccountCardCounter::getCardCount));
+    }
+
+    @Override
+    protected void saveCounts(Map<Long, Long> counts) {
+        LocalDateTime now = LocalDateTime.now();
+        counterRepository.saveAll(counts.entrySet().stream()
+                .map(count -> new AccountCardCounter(count.getKey(), count.getValue(), now))
+                .toList());
+    }
+}
@@ -0,0 +1,153 @@
+package dev.gavin.account_service.service;
+
+import dev.gavin.common.dto.CustomerIdChangesDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Local copy of the live customer ids, seeded from a customer-service snapshot and kept current with
+// the ids created and deleted since the last watermark. A compressed bitmap keeps 10M dense ids at a
+// couple of megabytes.
+@Service
+@Slf4j
+public class CustomerIdReplica {
+
+    private static final String WATERMARK_HEADER = "X-Customer-Ids-Watermark";
+
+    private static final String NEXT_HEADER = "X-Customer-Ids-Next-After";
+
+    private final RestTemplate restTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Roaring64NavigableMap customerIds = new Roaring64NavigableMap();
+
+    // Only touched by the sync schedule
+    private LocalDateTime watermark;
+
+    private Instant lastSnapshotAt;
+
+    private volatile Instant lastSyncedAt;
+
+    @Value("${customer-service.url}")
+    private String customerServiceUrl;
+
+    @Value("${account.customer-replica.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${account.customer-replica.max-staleness:PT30S}")
+    private Duration maxStaleness = Duration.ofSeconds(30);
+
+    @Value("${account.customer-replica.watermark-overlap:PT5S}")
+    private Duration watermarkOverlap = Duration.ofSeconds(5);
+
+    @Value("${account.customer-replica.snapshot-interval:PT1H}")
+    private Duration snapshotInterval = Duration.ofHours(1);
+
+    public CustomerIdReplica(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    public boolean isFresh() {
+        Instant syncedAt = lastSyncedAt;
+        return syncedAt != null && syncedAt.plus(maxStaleness).isAfter(Instant.now());
+    }
+
+    // Callers should only trust this while the replica is fresh.
+    public boolean contains(long customerId) {
+        lock.readLock().lock();
+        try {
+            return customerIds.contains(customerId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A full snapshot is reloaded now and then so that anything the deltas missed, such as hard
+    // deletes, does not linger in the replica.
+    @Scheduled(fixedDelayString = "${account.customer-replica.sync-interval:PT2S}")
+    public void sync() {
+        if (!enabled)
+            return;
+
+        try {
+            if (watermark == null || lastSnapshotAt.plus(snapshotInterval).isBefore(Instant.now())) {
+                loadSnapshot();
+            } else {
+                applyChanges();
+            }
+            lastSyncedAt = Instant.now();
+        } catch (Exception e) {
+            log.warn("Failed to sync customer id replica, falling back to customer-service once stale: {}", e.getMessage());
+        }
+    }
+
+    // The snapshot is read a page at a time and kept at the first page's watermark, so changes made while the
+    // later pages are read are applied again by the next changes request
+    private void loadSnapshot() throws IOException {
+        Roaring64NavigableMap snapshot = new Roaring64NavigableMap();
+        LocalDateTime snapshotWatermark = null;
+        long bytes = 0;
+        String after = "0";
+        while (after != null) {
+            ResponseEntity<byte[]> response = restTemplate.getForEntity(
+                    customerServiceUrl + "/api/customers/ids/snapshot?after=" + after, byte[].class);
+            String pageWatermark = response.getHeaders().getFirst(WATERMARK_HEADER);
+            if (response.getBody() == null || pageWatermark == null)
+                throw new IllegalStateException("Customer id snapshot is missing its body or watermark");
+
+            Roaring64NavigableMap page = new Roaring64NavigableMap();
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(response.getBody()))) {
+                page.deserialize(in);
+            }
+            snapshot.or(page);
+            bytes += response.getBody().length;
+            if (snapshotWatermark == null)
+                snapshotWatermark = LocalDateTime.parse(pageWatermark);
+            after = response.getHeaders().getFirst(NEXT_HEADER);
+        }
+
+        lock.writeLock().lock();
+        try {
+            customerIds = snapshot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        watermark = snapshotWatermark;
+        lastSnapshotAt = Instant.now();
+        log.info("Loaded customer id snapshot with {} id(s) in {} bytes", snapshot.getLongCardinality(), bytes);
+    }
+
+    // Changes are asked for with some overlap, since a customer can commit a little after its
+    // created/deleted timestamp. Re-applying an id that was already seen is harmless.
+    private void applyChanges() {
+        String url = customerServiceUrl + "/api/customers/ids/changes?since=" + watermark.minus(watermarkOverlap);
+        CustomerIdChangesDTO changes = restTemplate.getForObject(url, CustomerIdChangesDTO.class);
+        if (changes == null || changes.getWatermark() == null)
+            throw new IllegalStateException("Customer id changes are missing their watermark");
+
+        lock.writeLock().lock();
+        try {
+            if (changes.getCreated() != null)
+                changes.getCreated().forEach(customerIds::addLong);
+            if (changes.getDeleted() != null)
+                changes.getDeleted().forEach(customerIds::removeLong);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        watermark = changes.getWatermark();
+    }
+}
@@ -0,0 +1,77 @@
+package dev.gavin.account_service.service;
+
+import dev.gavin.common.events.CustomerVerificationRequest;
+import dev.gavin.common.events.CustomerVerificationResponse;
+import dev.gavin.common.events.EventBroker;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Answers verification requests with batched calls to customer-service for deployments where
+// customer-service is not attached to the broker itself.
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "account.verification.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class CustomerVerificationRelay {
+
+    private final EventBroker eventBroker;
+
+    private final RestTemplate restTemplate;
+
+    private final BlockingQueue<CustomerVerificationRequest> pendingRequests = new LinkedBlockingQueue<>();
+
+    @Value("${customer-service.url}")
+    private String customerServiceUrl;
+
+    @Value("${account.verification.relay.batch-size:500}")
+    private int batchSize = 500;
+
+    public CustomerVerificationRelay(EventBroker eventBroker, RestTemplate restTemplate) {
+        this.eventBroker = eventBroker;
+        this.restTemplate = restTemplate;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        eventBroker.subscribe(CustomerVerificationRequest.TOPIC, CustomerVerificationRequest.class, pendingRequests::add);
+    }
+
+    @Scheduled(fixedDelayString = "${account.verification.relay.interval:PT0.2S}")
+    public void relayPendingRequests() {
+        List<CustomerVerificationRequest> batch = new ArrayList<>(batchSize);
+        while (pendingRequests.drainTo(batch, batchSize) > 0) {
+            relay(batch);
+            batch.clear();
+        }
+    }
+
+    private void relay(List<CustomerVerificationRequest> batch) {
+        Set<Long> customerIds = new HashSet<>();
+        batch.forEach(request -> customerIds.add(request.getCustomerId()));
+
+        Set<Long> existingCustomers;
+        try {
+            Long[] existing = restTemplate.postForObject(
+                    customerServiceUrl + "/api/customers/exists", customerIds, Long[].class);
+            existingCustomers = existing != null ? new HashSet<>(Arrays.asList(existing)) : Set.of();
+        } catch (Exception e) {
+            // Left unanswered on purpose: the accounts stay pending and are republished later.
+            log.warn("Failed to verify {} customer(s), requests will be retried: {}", customerIds.size(), e.getMessage());
+            return;
+        }
+
+        for (CustomerVerificationRequest request : batch) {
+            eventBroker.publish(CustomerVerificationResponse.TOPIC, new CustomerVerificationResponse(
+                    request.getAccountId(), request.getCustomerId(), request.getRequestId(),
+                    existingCustomers.contains(request.getCustomerId())));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package dev.gavin.account_service.utils;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public final class SearchTerms {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SearchTerms() {
+    }
+
+    // Stored and searched forms of IBANs and BICs are uppercase without spaces, so "de89 3704" matches
+    // "DE89370400440532013000".
+    public static String normalize(String value) {
+        if (value == null)
+            return null;
+
+        String normalized = WHITESPACE.matcher(value).replaceAll("").toUpperCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    // A normalized term as a LIKE pattern that matches it literally, for use with ESCAPE '\'. Without this a
+    // "%" or "_" typed into the search would act as a wildcard. An absent term stays null.
+    public static String likePattern(String term) {
+        if (term == null)
+            return null;
+
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,109 @@
+package dev.gavin.account_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.account_service.dto.ExportFormat;
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.exception.BadRequestException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountExportServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private TypedQuery<Account> query;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @InjectMocks
+    private AccountExportService accountExportService;
+
+    private Account account1;
+    private Account account2;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(accountExportService, "fetchSize", 1);
+
+        account1 = Account.builder().id(1L).iban("GB001").bicSwift("BIC1").customerId(10L)
+                .status(AccountStatus.ACTIVE).build();
+        account2 = Account.builder().id(2L).iban("GB002").bicSwift("BIC2").customerId(11L)
+                .status(AccountStatus.REJECTED).rejectionReason("Customer \"unverified\", retry later").build();
+    }
+
+    @Test
+    void exportAccounts_Ndjson_WritesOneLinePerAccountAndDetachesRows() throws IOException {
+        // Given
+        stubAccounts();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        accountExportService.exportAccounts(ExportFormat.NDJSON, false, out);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("GB001", objectMapper.readTree(lines[0]).get("iban").asText());
+        assertEquals("GB002", objectMapper.readTree(lines[1]).get("iban").asText());
+        verify(query).setHint(HINT_FETCH_SIZE, 1);
+        verify(entityManager).detach(account1);
+        verify(entityManager).detach(account2);
+    }
+
+    @Test
+    void exportAccounts_CsvGzip_WritesCompressedCsvWithEscapedValues() throws IOException {
+        // Given
+        stubAccounts();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        accountExportService.exportAccounts(ExportFormat.CSV, true, out);
+
+        // Then
+        String csv;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = csv.split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("id,iban,bicSwift,customerId,status,description,createdAt,updatedAt", lines[0]);
+        assertEquals("1,GB001,BIC1,10,ACTIVE,,,", lines[1]);
+        assertEquals("2,GB002,BIC2,11,REJECTED,\"Customer \"\"unverified\"\", retry later\",,", lines[2]);
+    }
+
+    @Test
+    void exportFormat_Unsupported_ThrowsException() {
+        assertThrows(BadRequestException.class, () -> ExportFormat.from("xml"));
+    }
+
+    private void stubAccounts() {
+        when(entityManager.createQuery(anyString(), eq(Account.class))).thenReturn(query);
+        when(query.setHint(anyString(), any())).thenReturn(query);
+        when(query.getResultStream()).thenReturn(Stream.of(account1, account2));
+    }
+}
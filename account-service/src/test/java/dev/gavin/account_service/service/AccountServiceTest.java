@@ -1,27 +1,57 @@
 package dev.gavin.account_service.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.gavin.account_service.dto.AccountRequest;
+import dev.gavin.account_service.dto.CreateAccountResponse;
 import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.repository.AccountEventRepository;
 import dev.gavin.account_service.repository.AccountRepository;
 import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.dto.SliceDTO;
+import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.events.CustomerVerificationRequest;
+import dev.gavin.common.events.EventBroker;
 import dev.gavin.common.exception.BadRequestException;
 import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.common.existence.BatchExistence;
+import dev.gavin.common.existence.ExistenceFormat;
+import dev.gavin.common.existence.IdFilter;
+import dev.gavin.common.pagination.KeysetCursor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -36,6 +66,24 @@ public class AccountServiceTest {
     @Mock
     private AccountRepository accountRepository;
 
+    @Mock
+    private EventBroker eventBroker;
+
+    @Mock
+    private CustomerIdReplica customerIdReplica;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Mock
+    private AccountEventRepository accountEventRepository;
+
+    @Mock
+    private CardCounterService cardCounterService;
+
+    @Mock
+    private IdFilter accountIdFilter;
+
     @InjectMocks
     private AccountService accountService;
 
@@ -92,6 +140,7 @@ public class AccountServiceTest {
 
         verify(accountRepository, times(1)).findByIban(accountRequest.getIban());
         verify(accountRepository, times(1)).save(any(Account.class));
+        verify(accountEventRepository, times(1)).save(argThat(event -> event.getType() == ReferenceEventType.CREATED));
     }
 
     @Test
@@ -112,6 +161,39 @@ public class AccountServiceTest {
         verify(accountRepository, never()).save(any(Account.class));
     }
 
+    @Test
+    void createAccount_CustomerInFreshReplica_SkipsRemoteCheck() {
+        // Given
+        when(accountRepository.findByIban(anyString())).thenReturn(Optional.empty());
+        when(customerIdReplica.isFresh()).thenReturn(true);
+        when(customerIdReplica.contains(1L)).thenReturn(true);
+        when(accountRepository.save(any(Account.class))).thenReturn(account);
+
+        // When
+        AccountDTO result = accountService.createAccount(accountRequest);
+
+        // Then
+        assertEquals(accountDTO.getId(), result.getId());
+        verify(restTemplate, never()).getForObject(anyString(), eq(Boolean.class));
+    }
+
+    @Test
+    void createAccount_CustomerMissingFromReplica_FallsBackToRemoteCheck() {
+        // Given
+        when(accountRepository.findByIban(anyString())).thenReturn(Optional.empty());
+        when(customerIdReplica.isFresh()).thenReturn(true);
+        when(customerIdReplica.contains(1L)).thenReturn(false);
+        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+        when(accountRepository.save(any(Account.class))).thenReturn(account);
+
+        // When
+        accountService.createAccount(accountRequest);
+
+        // Then
+        verify(restTemplate, times(1)).getForObject(anyString(), eq(Boolean.class));
+        verify(accountRepository, times(1)).save(any(Account.class));
+    }
+
     @Test
     void createAccount_DuplicateIban_ThrowsException() {
         // Given
@@ -125,6 +207,44 @@ public class AccountServiceTest {
         verify(accountRepository, never()).save(any(Account.class));
     }
 
+    @Test
+    void createAccountAsync_SavesPendingAccountAndPublishesVerificationRequest() {
+        // Given
+        when(accountRepository.findByIban(anyString())).thenReturn(Optional.empty());
+        when(accountRepository.save(any(Account.class))).thenAnswer(invocation -> {
+            Account pending = invocation.getArgument(0);
+            pending.setId(5L);
+            return pending;
+        });
+
+        // When
+        CreateAccountResponse result = accountService.createAccountAsync(accountRequest);
+
+        // Then
+        assertEquals(5L, result.getAccountId());
+        assertEquals(AccountStatus.PENDING, result.getStatus());
+
+        ArgumentCaptor<CustomerVerificationRequest> captor = ArgumentCaptor.forClass(CustomerVerificationRequest.class);
+        verify(eventBroker, times(1)).publish(eq(CustomerVerificationRequest.TOPIC), captor.capture());
+        assertEquals(5L, captor.getValue().getAccountId());
+        assertEquals(accountRequest.getCustomerId(), captor.getValue().getCustomerId());
+        assertNotNull(captor.getValue().getRequestId());
+        verify(restTemplate, never()).getForObject(anyString(), eq(Boolean.class));
+    }
+
+    @Test
+    void createAccountAsync_DuplicateIban_ThrowsException() {
+        // Given
+        when(accountRepository.findByIban(anyString())).thenReturn(Optional.of(account));
+
+        // When
+        assertThrows(BadRequestException.class, () -> accountService.createAccountAsync(accountRequest));
+
+        // Then
+        verify(accountRepository, never()).save(any(Account.class));
+        verify(eventBroker, never()).publish(anyString(), any());
+    }
+
     @Test
     void getAccountById_Success() {
         // Given
@@ -170,6 +290,34 @@ public class AccountServiceTest {
         verify(accountRepository, times(1)).findByCustomerId(1L);
     }
 
+    @Test
+    void writeAccountsByCustomerIds_GroupsAccountsByCustomerInChunks() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(accountService, "customerChunkSize", 2);
+        Account other = Account.builder().id(2L).iban("GB29NWBK60161331926819").bicSwift("NWBKGB2L").customerId(3L).build();
+        when(accountRepository.findByCustomerIds(List.of(1L, 2L))).thenReturn(List.of(account));
+        when(accountRepository.findByCustomerIds(List.of(3L))).thenReturn(List.of(other));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        accountService.writeAccountsByCustomerIds(List.of(1L, 2L, 3L), out);
+
+        // Then
+        JsonNode result = objectMapper.readTree(out.toByteArray());
+        assertEquals(1L, result.get("1").get(0).get("id").asLong());
+        assertTrue(result.get("2").isEmpty());
+        assertEquals(2L, result.get("3").get(0).get("id").asLong());
+    }
+
+    @Test
+    void validateCustomerIds_DropsDuplicatesAndRejectsOversizedBatches() {
+        ReflectionTestUtils.setField(accountService, "maxCustomerIds", 2);
+
+        assertEquals(List.of(1L, 2L), accountService.validateCustomerIds(List.of(1L, 2L, 1L)));
+        assertThrows(BadRequestException.class, () -> accountService.validateCustomerIds(List.of(1L, 2L, 3L)));
+        assertThrows(BadRequestException.class, () -> accountService.validateCustomerIds(List.of()));
+    }
+
     @Test
     void getAccountsWithFilters_Success() {
         // Given
@@ -191,6 +339,151 @@ public class AccountServiceTest {
         verify(accountRepository, times(1)).findWithFilters(filter.getIban(), filter.getBicSwift(), pageable);
     }
 
+    @Test
+    void getAccountsWithFilters_NormalizesSearchTerms() {
+        // Given
+        AccountRequest filter = new AccountRequest("de89 3704", "  ", null, null);
+        Pageable pageable = PageRequest.of(0, 10);
+
+        when(accountRepository.findWithFilters(eq("DE893704"), isNull(), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(account)));
+
+        // When
+        Page<AccountDTO> results = accountService.getAccountsWithFilters(filter, pageable);
+
+        // Then
+        assertEquals(1, results.getTotalElements());
+        verify(accountRepository, times(1)).findWithFilters("DE893704", null, pageable);
+    }
+
+    @Test
+    void getAccountsWithFilters_EscapesLikeWildcards() {
+        // Given
+        AccountRequest filter = new AccountRequest("%", "de_89", null, null);
+        Pageable pageable = PageRequest.of(0, 10);
+
+        when(accountRepository.findWithFilters(eq("\\%"), eq("DE\\_89"), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of()));
+
+        // When
+        Page<AccountDTO> results = accountService.getAccountsWithFilters(filter, pageable);
+
+        // Then
+        assertEquals(0, results.getTotalElements());
+    }
+
+    @Test
+    void scrollAccountsWithFilters_ContinuesAfterCursor() {
+        // Given
+        Account next = Account.builder()
+                .id(2L)
+                .iban("GB29NWBK60161331926819")
+                .bicSwift("NWBKGB2L")
+                .customerId(1L)
+                .build();
+        String cursor = new KeysetCursor("iban", Sort.Direction.ASC, 1L, account.getIban()).encode();
+        when(accountRepository.scrollWithFilters(isNull(), isNull(), notNull(), any(Sort.class), eq(2)))
+                .thenReturn(List.of(next));
+
+        // When
+        SliceDTO<AccountDTO> result = accountService.scrollAccountsWithFilters(
+                new AccountRequest(), "iban", Sort.Direction.ASC, 1, cursor);
+
+        // Then
+        assertEquals(1, result.getSize());
+        assertEquals(2L, result.getContent().get(0).getId());
+        assertFalse(result.isHasNext());
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    void scrollAccountsWithFilters_LastRowWithoutSortKey_IssuesCursorThatContinues() {
+        // Given a legacy row without createdAt at the end of the first slice
+        Account legacy = Account.builder().id(2L).customerId(1L).build();
+        Account next = Account.builder().id(3L).customerId(1L).build();
+        when(accountRepository.scrollWithFilters(isNull(), isNull(), isNull(), any(Sort.class), eq(2)))
+                .thenReturn(List.of(legacy, next));
+        when(accountRepository.scrollWithFilters(isNull(), isNull(), notNull(), any(Sort.class), eq(2)))
+                .thenReturn(List.of(next));
+
+        // When
+        SliceDTO<AccountDTO> first = accountService.scrollAccountsWithFilters(
+                new AccountRequest(), "createdAt", Sort.Direction.ASC, 1, null);
+        SliceDTO<AccountDTO> second = accountService.scrollAccountsWithFilters(
+                new AccountRequest(), "createdAt", Sort.Direction.ASC, 1, first.getNextCursor());
+
+        // Then
+        assertNull(KeysetCursor.decode(first.getNextCursor()).getLastValue());
+        assertEquals(3L, second.getContent().get(0).getId());
+    }
+
+    @Test
+    void scrollAccountsWithFilters_UnknownSortField_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> accountService.scrollAccountsWithFilters(
+                new AccountRequest(), "status", Sort.Direction.ASC, 10, null));
+        verify(accountRepository, never()).scrollWithFilters(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void attachCards_FillsWholePageWithOneCall() {
+        // Given
+        ReflectionTestUtils.setField(accountService, "cardServiceUrl", "http://card-service");
+        AccountDTO other = AccountDTO.builder().id(2L).build();
+        CardDTO card = CardDTO.builder().id(10L).accountId(1L).pan("400000******7899").build();
+        when(restTemplate.exchange(eq("http://card-service/api/cards/by-accounts"), eq(HttpMethod.POST),
+                any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, List.of(card), 2L, List.of())));
+
+        // When
+        accountService.attachCards(List.of(accountDTO, other));
+
+        // Then
+        assertEquals(List.of(card), accountDTO.getCards());
+        assertEquals(List.of(), other.getCards());
+        ArgumentCaptor<HttpEntity<List<Long>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), request.capture(),
+                any(ParameterizedTypeReference.class));
+        assertEquals(List.of(1L, 2L), request.getValue().getBody());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void attachCards_CardServiceDown_LeavesCardsUnset() {
+        // Given
+        ReflectionTestUtils.setField(accountService, "cardServiceUrl", "http://card-service");
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenThrow(new RuntimeException("Connection refused"));
+
+        // When
+        accountService.attachCards(List.of(accountDTO));
+
+        // Then
+        assertNull(accountDTO.getCards());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void attachCards_LaterChunkFails_LeavesWholePageUnset() {
+        // Given a page fetched in two calls, where the second fails
+        ReflectionTestUtils.setField(accountService, "cardServiceUrl", "http://card-service");
+        ReflectionTestUtils.setField(accountService, "cardBatchSize", 1);
+        AccountDTO other = AccountDTO.builder().id(2L).build();
+        CardDTO card = CardDTO.builder().id(10L).accountId(1L).pan("400000******7899").build();
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, List.of(card))))
+                .thenThrow(new RuntimeException("Connection refused"));
+
+        // When
+        accountService.attachCards(List.of(accountDTO, other));
+
+        // Then
+        assertNull(accountDTO.getCards());
+        assertNull(other.getCards());
+    }
+
     @Test
     void updateAccount_Success() {
         // Given
@@ -271,27 +564,44 @@ public class AccountServiceTest {
     @Test
     void deleteAccount_Success() {
         // Given
-        when(accountRepository.existsById(anyLong())).thenReturn(true);
+        when(accountRepository.findById(anyLong())).thenReturn(Optional.of(account));
         doNothing().when(accountRepository).deleteById(anyLong());
 
         // When
         accountService.deleteAccount(1L);
 
         // Then
-        verify(accountRepository, times(1)).existsById(1L);
+        verify(accountRepository, times(1)).findById(1L);
         verify(accountRepository, times(1)).deleteById(1L);
+        verify(cardCounterService, times(1)).removeCounter(1L);
+        verify(accountEventRepository, times(1)).save(argThat(event -> event.getType() == ReferenceEventType.DELETED));
+    }
+
+    @Test
+    void deleteAccount_WithTrackedCards_ThrowsWithoutCallingCardService() {
+        // Given
+        when(accountRepository.findById(anyLong())).thenReturn(Optional.of(account));
+        when(cardCounterService.isTracking()).thenReturn(true);
+        when(cardCounterService.countCards(1L)).thenReturn(2L);
+
+        // When
+        assertThrows(BadRequestException.class, () -> accountService.deleteAccount(1L));
+
+        // Then
+        verify(restTemplate, never()).getForObject(anyString(), eq(Integer.class));
+        verify(accountRepository, never()).deleteById(anyLong());
     }
 
     @Test
     void deleteAccount_NotFound_ThrowsException() {
         // Given
-        when(accountRepository.existsById(anyLong())).thenReturn(false);
+        when(accountRepository.findById(anyLong())).thenReturn(Optional.empty());
 
         // When
         assertThrows(ResourceNotFoundException.class, () -> accountService.deleteAccount(1L));
 
         // Then
-        verify(accountRepository, times(1)).existsById(1L);
+        verify(accountRepository, times(1)).findById(1L);
         verify(accountRepository, never()).deleteById(anyLong());
     }
 
@@ -321,6 +631,43 @@ public class AccountServiceTest {
         verify(accountRepository, times(1)).existsById(1L);
     }
 
+    @Test
+    void checkExistence_SkipsFilteredIdsAndListsMissing() {
+        // Given
+        ExistenceRequestDTO request = ExistenceRequestDTO.builder().ids(List.of(8L, 1L, 3L)).build();
+        when(accountIdFilter.isDefinitelyMissing(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) == 1L);
+        when(accountRepository.findExistingIds(List.of(8L, 3L))).thenReturn(List.of(3L));
+
+        // When
+        ExistenceDTO result = accountService.checkExistence(request, ExistenceFormat.MISSING);
+
+        // Then
+        assertEquals(3, result.getSize());
+        assertEquals(1, result.getExisting());
+        assertEquals(List.of(1L, 8L), result.getMissing());
+        verify(accountRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkExistence_MaxIds_QueriesInChunksWithinBindLimit() {
+        // Given
+        List<Long> ids = LongStream.rangeClosed(1, BatchExistence.MAX_IDS).boxed().toList();
+        ExistenceRequestDTO request = ExistenceRequestDTO.builder().ids(ids).build();
+        when(accountRepository.findExistingIds(anyCollection()))
+                .thenAnswer(invocation -> new ArrayList<>((Collection<Long>) invocation.getArgument(0)));
+
+        // When
+        ExistenceDTO result = accountService.checkExistence(request, ExistenceFormat.BITSET);
+
+        // Then
+        assertEquals(BatchExistence.MAX_IDS, result.getExisting());
+        ArgumentCaptor<Collection<Long>> chunks = ArgumentCaptor.forClass(Collection.class);
+        verify(accountRepository, times(BatchExistence.MAX_IDS / BatchExistence.QUERY_CHUNK_SIZE))
+                .findExistingIds(chunks.capture());
+        assertTrue(chunks.getAllValues().stream().allMatch(chunk -> chunk.size() <= BatchExistence.QUERY_CHUNK_SIZE));
+    }
+
     @Test
     void countAccountsByCustomerId_Success() {
         // Given
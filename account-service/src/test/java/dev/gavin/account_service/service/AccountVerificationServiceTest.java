@@ -0,0 +1,145 @@
+package dev.gavin.account_service.service;
+
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.entity.AccountEvent;
+import dev.gavin.account_service.repository.AccountEventRepository;
+import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.events.CustomerVerificationRequest;
+import dev.gavin.common.events.CustomerVerificationResponse;
+import dev.gavin.common.events.EventBroker;
+import dev.gavin.common.events.InProcessEventBroker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountVerificationServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private AccountEventRepository accountEventRepository;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EventBroker eventBroker;
+
+    private AccountVerificationService accountVerificationService;
+
+    private CustomerVerificationRelay customerVerificationRelay;
+
+    private Account pendingAccount;
+
+    @BeforeEach
+    void setUp() {
+        eventBroker = new InProcessEventBroker(Runnable::run);
+
+        accountVerificationService = new AccountVerificationService(accountRepository, accountEventRepository, eventBroker,
+                new TransactionTemplate(transactionManager));
+        accountVerificationService.subscribe();
+
+        customerVerificationRelay = new CustomerVerificationRelay(eventBroker, restTemplate);
+        ReflectionTestUtils.setField(customerVerificationRelay, "customerServiceUrl", "http://customer-service");
+        customerVerificationRelay.subscribe();
+
+        pendingAccount = Account.builder()
+                .id(1L)
+                .iban("DE89370400440532013000")
+                .bicSwift("DEUTDEFF")
+                .customerId(1L)
+                .status(AccountStatus.PENDING)
+                .verificationRequestId(UUID.randomUUID())
+                .build();
+    }
+
+    @Test
+    void verificationRoundTrip_ExistingCustomer_ActivatesAccount() {
+        // Given
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[]{1L});
+        when(accountRepository.findByVerificationRequestId(pendingAccount.getVerificationRequestId()))
+                .thenReturn(Optional.of(pendingAccount));
+
+        // When
+        eventBroker.publish(CustomerVerificationRequest.TOPIC, new CustomerVerificationRequest(
+                pendingAccount.getId(), pendingAccount.getCustomerId(), pendingAccount.getVerificationRequestId()));
+        customerVerificationRelay.relayPendingRequests();
+
+        // Then
+        assertEquals(AccountStatus.ACTIVE, pendingAccount.getStatus());
+        assertNull(pendingAccount.getRejectionReason());
+        verify(accountRepository, times(1)).save(pendingAccount);
+        verify(accountEventRepository).save(argThat((AccountEvent event) ->
+                event.getType() == ReferenceEventType.UPDATED && event.getAccountId().equals(1L)));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void verificationRoundTrip_MissingCustomer_RejectsAccount() {
+        // Given
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[0]);
+        when(accountRepository.findByVerificationRequestId(pendingAccount.getVerificationRequestId()))
+                .thenReturn(Optional.of(pendingAccount));
+
+        // When
+        eventBroker.publish(CustomerVerificationRequest.TOPIC, new CustomerVerificationRequest(
+                pendingAccount.getId(), pendingAccount.getCustomerId(), pendingAccount.getVerificationRequestId()));
+        customerVerificationRelay.relayPendingRequests();
+
+        // Then
+        assertEquals(AccountStatus.REJECTED, pendingAccount.getStatus());
+        assertEquals("Customer with id, 1 cannot be found", pendingAccount.getRejectionReason());
+    }
+
+    @Test
+    void relay_CustomerServiceUnavailable_LeavesAccountPending() {
+        // Given
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        // When
+        eventBroker.publish(CustomerVerificationRequest.TOPIC, new CustomerVerificationRequest(
+                pendingAccount.getId(), pendingAccount.getCustomerId(), pendingAccount.getVerificationRequestId()));
+        customerVerificationRelay.relayPendingRequests();
+
+        // Then
+        assertEquals(AccountStatus.PENDING, pendingAccount.getStatus());
+        verify(accountRepository, never()).save(any(Account.class));
+    }
+
+    @Test
+    void handleVerificationResponse_AlreadyCompleted_IsIgnored() {
+        // Given
+        pendingAccount.setStatus(AccountStatus.ACTIVE);
+        when(accountRepository.findByVerificationRequestId(pendingAccount.getVerificationRequestId()))
+                .thenReturn(Optional.of(pendingAccount));
+
+        // When
+        eventBroker.publish(CustomerVerificationResponse.TOPIC, new CustomerVerificationResponse(
+                pendingAccount.getId(), pendingAccount.getCustomerId(), pendingAccount.getVerificationRequestId(), false));
+
+        // Then
+        assertEquals(AccountStatus.ACTIVE, pendingAccount.getStatus());
+        verify(accountRepository, never()).save(any(Account.class));
+    }
+}
@@ -0,0 +1,210 @@
+package dev.gavin.account_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.account_service.dto.BulkAccountResponse;
+import dev.gavin.account_service.dto.BulkAccountResult;
+import dev.gavin.account_service.entity.Account;
+import dev.gavin.account_service.repository.AccountBatchRepository;
+import dev.gavin.account_service.repository.AccountRepository;
+import dev.gavin.common.enums.AccountStatus;
+import dev.gavin.common.exception.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkAccountServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private AccountBatchRepository accountBatchRepository;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private BulkAccountService bulkAccountService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkAccountService, "customerServiceUrl", "http://customer-service");
+        ReflectionTestUtils.setField(bulkAccountService, "chunkSize", 2);
+    }
+
+    @Test
+    void createAccounts_InsertsEachChunkAsOneBatch() {
+        // Given
+        when(accountRepository.findExistingIbans(anyCollection())).thenReturn(List.of());
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[]{1L, 2L});
+        doAnswer(invocation -> {
+            List<Account> accounts = invocation.getArgument(0);
+            accounts.forEach(account -> account.setId(account.getCustomerId() * 100));
+            return null;
+        }).when(accountBatchRepository).insertAll(anyList());
+
+        // When
+        BulkAccountResponse response = bulkAccountService.createAccounts(json("""
+                [
+                  {"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1},
+                  {"iban": "DE02", "bicSwift": "DEUTDEFF", "customerId": 2},
+                  {"iban": "DE03", "bicSwift": "DEUTDEFF", "customerId": 1}
+                ]
+                """));
+
+        // Then
+        assertEquals(3, response.getReceived());
+        assertEquals(3, response.getCreated());
+        assertEquals(0, response.getRejected());
+        assertEquals(100L, response.getResults().get(2).getAccountId());
+        verify(accountBatchRepository, times(2)).insertAll(anyList());
+        verify(restTemplate, times(2)).postForObject(anyString(), any(), eq(Long[].class));
+        verify(accountRepository, never()).findByIban(anyString());
+    }
+
+    @Test
+    void createAccounts_AcceptsNewlineDelimitedJson() {
+        // Given
+        when(accountRepository.findExistingIbans(anyCollection())).thenReturn(List.of());
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[]{1L});
+
+        // When
+        BulkAccountResponse response = bulkAccountService.createAccounts(json("""
+                {"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1}
+                {"iban": "DE02", "bicSwift": "DEUTDEFF", "customerId": 1}
+                """));
+
+        // Then
+        assertEquals(2, response.getReceived());
+        verify(accountBatchRepository, times(1)).insertAll(anyList());
+    }
+
+    @Test
+    void createAccounts_RejectsDuplicateAndExistingIbansAndUnknownCustomers() {
+        // Given
+        ReflectionTestUtils.setField(bulkAccountService, "chunkSize", 10);
+        when(accountRepository.findExistingIbans(anyCollection())).thenReturn(List.of("DE02"));
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[]{1L});
+        doAnswer(invocation -> {
+            List<Account> accounts = invocation.getArgument(0);
+            accounts.forEach(account -> account.setId(1L));
+            return null;
+        }).when(accountBatchRepository).insertAll(anyList());
+
+        // When
+        BulkAccountResponse response = bulkAccountService.createAccounts(json("""
+                [
+                  {"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1},
+                  {"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1},
+                  {"iban": "DE02", "bicSwift": "DEUTDEFF", "customerId": 1},
+                  {"iban": "DE03", "bicSwift": "DEUTDEFF", "customerId": 9},
+                  {"iban": "DE04", "customerId": 1}
+                ]
+                """));
+
+        // Then
+        List<BulkAccountResult> results = response.getResults();
+        assertEquals(1, response.getCreated());
+        assertEquals(4, response.getRejected());
+        assertEquals(AccountStatus.ACTIVE, results.get(0).getStatus());
+        assertEquals("Duplicate IBAN DE01 in request", results.get(1).getDescription());
+        assertEquals("Account with IBAN DE02 already exists", results.get(2).getDescription());
+        assertEquals("Customer with id, 9 cannot be found", results.get(3).getDescription());
+        assertEquals("BIC/SWIFT is required", results.get(4).getDescription());
+    }
+
+    @Test
+    void createAccounts_CustomerServiceUnavailable_RejectsChunk() {
+        // Given
+        when(accountRepository.findExistingIbans(anyCollection())).thenReturn(List.of());
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        // When
+        BulkAccountResponse response = bulkAccountService.createAccounts(json("""
+                [{"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1}]
+                """));
+
+        // Then
+        assertEquals(1, response.getRejected());
+        assertEquals("Failed to verify customer details: Connection refused", response.getResults().get(0).getDescription());
+        verify(accountBatchRepository, never()).insertAll(anyList());
+    }
+
+    @Test
+    void createAccounts_BatchConflict_FallsBackToRowInserts() {
+        // Given
+        when(accountRepository.findExistingIbans(anyCollection())).thenReturn(List.of());
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[]{1L});
+        doThrow(new DuplicateKeyException("duplicate iban")).when(accountBatchRepository).insertAll(anyList());
+        doAnswer(invocation -> {
+            Account account = invocation.getArgument(0);
+            if (account.getIban().equals("DE02"))
+                throw new DuplicateKeyException("duplicate iban");
+            account.setId(7L);
+            return null;
+        }).when(accountBatchRepository).insert(any(Account.class));
+
+        // When
+        BulkAccountResponse response = bulkAccountService.createAccounts(json("""
+                [
+                  {"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1},
+                  {"iban": "DE02", "bicSwift": "DEUTDEFF", "customerId": 1}
+                ]
+                """));
+
+        // Then
+        assertEquals(7L, response.getResults().get(0).getAccountId());
+        assertEquals(AccountStatus.REJECTED, response.getResults().get(1).getStatus());
+        verify(accountBatchRepository, times(2)).insert(any(Account.class));
+    }
+
+    @Test
+    void createAccounts_RowFailsOtherConstraint_IsNotReportedAsExisting() {
+        // Given
+        when(accountRepository.findExistingIbans(anyCollection())).thenReturn(List.of());
+        when(restTemplate.postForObject(anyString(), any(), eq(Long[].class))).thenReturn(new Long[]{1L});
+        doThrow(new DataIntegrityViolationException("value too long")).when(accountBatchRepository).insertAll(anyList());
+        doThrow(new DataIntegrityViolationException("value too long")).when(accountBatchRepository).insert(any(Account.class));
+
+        // When
+        BulkAccountResponse response = bulkAccountService.createAccounts(json("""
+                [{"iban": "DE01", "bicSwift": "DEUTDEFF", "customerId": 1}]
+                """));
+
+        // Then
+        assertEquals(AccountStatus.REJECTED, response.getResults().get(0).getStatus());
+        assertEquals("Failed to create account: value too long", response.getResults().get(0).getDescription());
+    }
+
+    @Test
+    void createAccounts_MalformedPayload_ThrowsException() {
+        assertThrows(BadRequestException.class, () -> bulkAccountService.createAccounts(json("[{\"iban\": ")));
+    }
+
+    private InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
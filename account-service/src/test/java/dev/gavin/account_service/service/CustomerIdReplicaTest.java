@@ -0,0 +1,122 @@
+package dev.gavin.account_service.service;
+
+import dev.gavin.common.dto.CustomerIdChangesDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerIdReplicaTest {
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private CustomerIdReplica customerIdReplica;
+
+    private LocalDateTime watermark;
+
+    @BeforeEach
+    void setUp() {
+        customerIdReplica = new CustomerIdReplica(restTemplate);
+        ReflectionTestUtils.setField(customerIdReplica, "customerServiceUrl", "http://customer-service");
+        watermark = LocalDateTime.of(2025, 1, 1, 12, 0);
+    }
+
+    @Test
+    void sync_BeforeFirstSnapshot_IsNotFresh() {
+        assertFalse(customerIdReplica.isFresh());
+        assertFalse(customerIdReplica.contains(1L));
+    }
+
+    @Test
+    void sync_LoadsSnapshotPagesThenAppliesChanges() throws IOException {
+        // Given
+        when(restTemplate.getForEntity(eq("http://customer-service/api/customers/ids/snapshot?after=0"), eq(byte[].class)))
+                .thenReturn(snapshotResponse(2L, 1L, 2L));
+        when(restTemplate.getForEntity(eq("http://customer-service/api/customers/ids/snapshot?after=2"), eq(byte[].class)))
+                .thenReturn(snapshotResponse(null, 3L));
+        when(restTemplate.getForObject(anyString(), eq(CustomerIdChangesDTO.class)))
+                .thenReturn(new CustomerIdChangesDTO(List.of(4L), List.of(2L), watermark.plusSeconds(2)));
+
+        // When
+        customerIdReplica.sync();
+
+        // Then
+        assertTrue(customerIdReplica.isFresh());
+        assertTrue(customerIdReplica.contains(2L));
+        assertFalse(customerIdReplica.contains(4L));
+
+        // When
+        customerIdReplica.sync();
+
+        // Then
+        assertTrue(customerIdReplica.contains(1L));
+        assertFalse(customerIdReplica.contains(2L));
+        assertTrue(customerIdReplica.contains(4L));
+        verify(restTemplate).getForObject(
+                eq("http://customer-service/api/customers/ids/changes?since=" + watermark.minusSeconds(5)),
+                eq(CustomerIdChangesDTO.class));
+    }
+
+    @Test
+    void sync_WhenCustomerServiceFails_BecomesStale() throws IOException {
+        // Given
+        when(restTemplate.getForEntity(anyString(), eq(byte[].class))).thenReturn(snapshotResponse(null, 1L));
+        when(restTemplate.getForObject(anyString(), eq(CustomerIdChangesDTO.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+        customerIdReplica.sync();
+        ReflectionTestUtils.setField(customerIdReplica, "lastSyncedAt", Instant.now().minus(Duration.ofMinutes(1)));
+
+        // When
+        customerIdReplica.sync();
+
+        // Then
+        assertFalse(customerIdReplica.isFresh());
+    }
+
+    @Test
+    void sync_WhenDisabled_NeverCallsCustomerService() {
+        // Given
+        ReflectionTestUtils.setField(customerIdReplica, "enabled", false);
+
+        // When
+        customerIdReplica.sync();
+
+        // Then
+        assertFalse(customerIdReplica.isFresh());
+        verifyNoInteractions(restTemplate);
+    }
+
+    private ResponseEntity<byte[]> snapshotResponse(Long nextAfter, long... customerIds) throws IOException {
+        Roaring64NavigableMap bitmap = Roaring64NavigableMap.bitmapOf(customerIds);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.serialize(new DataOutputStream(out));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Customer-Ids-Watermark", watermark.toString());
+        if (nextAfter != null)
+            headers.add("X-Customer-Ids-Next-After", nextAfter.toString());
+        return new ResponseEntity<>(out.toByteArray(), headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,57 @@
+// Concurrent card issuance against the one-card-per-type rule.
+//
+// Every account in [FIRST_ACCOUNT_ID, FIRST_ACCOUNT_ID + ACCOUNTS) gets ATTEMPTS simultaneous requests for
+// the same card type. The accounts must exist and hold no cards yet. Exactly one request per account should
+// answer 201 and the rest 400; teardown then counts the cards each account ended up with, and any account
+// holding more than one card of the type fails the duplicate_cards threshold.
+//
+//   docker compose up -d && k6 run -e FIRST_ACCOUNT_ID=1 -e ACCOUNTS=500 benchmark/card-issuance.js
+//
+// http_req_duration{status:201} is the issuance latency.
+
+import http from 'k6/http';
+import exec from 'k6/execution';
+import { check } from 'k6';
+import { Counter } from 'k6/metrics';
+
+const CARD_URL = __ENV.CARD_URL || 'http://localhost:8083';
+const FIRST_ACCOUNT_ID = parseInt(__ENV.FIRST_ACCOUNT_ID || '1');
+const ACCOUNTS = parseInt(__ENV.ACCOUNTS || '500');
+const ATTEMPTS = parseInt(__ENV.ATTEMPTS || '8');
+const CARD_TYPE = __ENV.CARD_TYPE || 'VIRTUAL';
+
+const duplicateCards = new Counter('duplicate_cards');
+
+export const options = {
+    scenarios: {
+        issue: {
+            executor: 'shared-iterations',
+            vus: ATTEMPTS * 4,
+            iterations: ACCOUNTS * ATTEMPTS,
+            maxDuration: __ENV.DURATION || '5m',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        duplicate_cards: ['count==0'],
+        'http_req_duration{status:201}': ['p(99)>=0'],
+    },
+};
+
+export default function () {
+    // Consecutive iterations, which run at the same time on different VUs, target the same account
+    const accountId = FIRST_ACCOUNT_ID + Math.floor(exec.scenario.iterationInTest / ATTEMPTS);
+    const card = { accountId: accountId, cardType: CARD_TYPE, cardAlias: `stress-${accountId}` };
+    const response = http.post(`${CARD_URL}/api/cards`, JSON.stringify(card),
+        { headers: { 'Content-Type': 'application/json' } });
+    check(response, { 'issued or refused': r => r.status === 201 || r.status === 400 });
+}
+
+export function teardown() {
+    for (let accountId = FIRST_ACCOUNT_ID; accountId < FIRST_ACCOUNT_ID + ACCOUNTS; accountId++) {
+        const response = http.get(`${CARD_URL}/api/cards/scroll?accountId=${accountId}&size=100`);
+        const cards = response.json('content').filter(c => c.cardType.toUpperCase() === CARD_TYPE);
+        if (cards.length > 1)
+            duplicateCards.add(cards.length - 1);
+    }
+}
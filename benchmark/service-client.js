@@ -0,0 +1,61 @@
+// Pooled service client vs the previous SimpleClientHttpRequestFactory client, on exists/count peer calls.
+//
+// Both scenarios fail validation after the peer call, so they measure the client and leave the data alone:
+//   - exists: POST /api/cards for an account id that does not exist; card-service asks account-service
+//     /api/accounts/exists/{id} and answers 404.
+//   - count:  DELETE /api/customers/{id} for customers that own accounts; with the local counters disabled
+//     customer-service asks account-service /api/accounts/count/customer/{id} and answers 400.
+//
+// Run once per client against the compose stack with CUSTOMER_ACCOUNT_COUNTERS_ENABLED=false:
+//
+//   SERVICE_CLIENT_POOLED=true  docker compose up -d && k6 run benchmark/service-client.js
+//   SERVICE_CLIENT_POOLED=false docker compose up -d && k6 run benchmark/service-client.js
+//
+// Compare http_req_duration p(99) per scenario here, and service.client.requests / service.client.in.flight
+// from /actuator/metrics on card-service and customer-service.
+
+import http from 'k6/http';
+import { check } from 'k6';
+
+const CUSTOMER_URL = __ENV.CUSTOMER_URL || 'http://localhost:8081';
+const CARD_URL = __ENV.CARD_URL || 'http://localhost:8083';
+const MAX_CUSTOMER_ID = parseInt(__ENV.MAX_CUSTOMER_ID || '10000');
+
+export const options = {
+    scenarios: {
+        exists: {
+            executor: 'constant-arrival-rate',
+            exec: 'exists',
+            rate: parseInt(__ENV.RATE || '2000'),
+            timeUnit: '1s',
+            duration: __ENV.DURATION || '2m',
+            preAllocatedVUs: 500,
+        },
+        count: {
+            executor: 'constant-arrival-rate',
+            exec: 'count',
+            rate: parseInt(__ENV.RATE || '2000'),
+            timeUnit: '1s',
+            duration: __ENV.DURATION || '2m',
+            preAllocatedVUs: 500,
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        'http_req_duration{scenario:exists}': ['p(99)>=0'],
+        'http_req_duration{scenario:count}': ['p(99)>=0'],
+    },
+};
+
+export function exists() {
+    const card = { accountId: 900000000 + Math.floor(Math.random() * 1000000), cardType: 'VIRTUAL', cardAlias: 'bench' };
+    const response = http.post(`${CARD_URL}/api/cards`, JSON.stringify(card),
+        { headers: { 'Content-Type': 'application/json' } });
+    check(response, { 'account not found': r => r.status === 404 });
+}
+
+export function count() {
+    const id = 1 + Math.floor(Math.random() * MAX_CUSTOMER_ID);
+    const response = http.del(`${CUSTOMER_URL}/api/customers/${id}`);
+    check(response, { 'delete refused': r => r.status === 400 });
+}
@@ -0,0 +1,54 @@
+// Platform vs virtual thread comparison for customer-, account- and card-service.
+//
+// Runs 2,000 concurrent clients against a read mix that blocks on JDBC and on peer calls
+// (GET /api/customers/{id} fans out to account-service). Run once per mode against the compose stack:
+//
+//   VIRTUAL_THREADS_ENABLED=false docker compose up -d --build && k6 run benchmark/thread-modes.js
+//   VIRTUAL_THREADS_ENABLED=true  docker compose up -d --build && k6 run benchmark/thread-modes.js
+//
+// Compare http_reqs (throughput), the p(99) of http_req_duration per endpoint and the share of 503s,
+// which in virtual mode are requests shed by the connection-pool-sized concurrency limit.
+
+import http from 'k6/http';
+import { check } from 'k6';
+
+const CUSTOMER_URL = __ENV.CUSTOMER_URL || 'http://localhost:8081';
+const ACCOUNT_URL = __ENV.ACCOUNT_URL || 'http://localhost:8082';
+const CARD_URL = __ENV.CARD_URL || 'http://localhost:8083';
+const MAX_ID = parseInt(__ENV.MAX_ID || '10000');
+
+export const options = {
+    scenarios: {
+        load: {
+            executor: 'constant-vus',
+            vus: parseInt(__ENV.VUS || '2000'),
+            duration: __ENV.DURATION || '3m',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    thresholds: {
+        'http_req_duration{endpoint:customer}': ['p(99)>=0'],
+        'http_req_duration{endpoint:account}': ['p(99)>=0'],
+        'http_req_duration{endpoint:cards}': ['p(99)>=0'],
+    },
+};
+
+function randomId() {
+    return 1 + Math.floor(Math.random() * MAX_ID);
+}
+
+export default function () {
+    const roll = Math.random();
+    let response;
+    if (roll < 0.4) {
+        response = http.get(`${CUSTOMER_URL}/api/customers/${randomId()}`, { tags: { endpoint: 'customer' } });
+    } else if (roll < 0.8) {
+        response = http.get(`${ACCOUNT_URL}/api/accounts/${randomId()}`, { tags: { endpoint: 'account' } });
+    } else {
+        response = http.get(`${CARD_URL}/api/cards/scroll?size=20`, { tags: { endpoint: 'cards' } });
+    }
+
+    check(response, {
+        'not a server error': r => r.status < 500,
+    });
+}
@@ -1,14 +1,71 @@
 package dev.gavin.card_service.config;
 
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.concurrency.ConcurrencyLimitFilter;
+import dev.gavin.common.concurrency.PinnedThreadMonitor;
+import dev.gavin.common.events.EventFeedSequencer;
+import dev.gavin.common.http.ServiceClientConfiguration;
+import dev.gavin.common.idempotency.IdempotencyConfiguration;
+import dev.gavin.common.metrics.MetricsConfiguration;
+import dev.gavin.common.schema.EventSchemaInitializer;
+import dev.gavin.common.schema.SchemaTasks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
 
 @Configuration
+@Import({ServiceClientConfiguration.class, IdempotencyConfiguration.class, MetricsConfiguration.class})
 public class AppConfig {
 
+    // Sized against the connection pool so virtual threads queue here rather than on Hikari
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+            @Value("${virtual-threads.requests-per-connection:4}") int requestsPerConnection,
+            @Value("${virtual-threads.max-wait:PT2S}") Duration maxWait) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(poolSize * requestsPerConnection, maxWait));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public PinnedThreadMonitor pinnedThreadMonitor(@Value("${virtual-threads.pinned-threshold:PT0.02S}") Duration threshold) {
+        return new PinnedThreadMonitor(threshold);
+    }
+
+    // Issuance jobs run here, off the request-sized applicationTaskExecutor
+    @Bean(destroyMethod = "close")
+    public BackgroundTasks backgroundTasks(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${background-tasks.pool-size:8}") int poolSize) {
+        return BackgroundTasks.pool(poolSize, virtualThreads);
+    }
+
+    @Bean(initMethod = "createTable")
+    public SchemaTasks schemaTasks(JdbcTemplate jdbcTemplate) {
+        return new SchemaTasks(jdbcTemplate);
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public EventSchemaInitializer cardEventSchemaInitializer(JdbcTemplate jdbcTemplate, SchemaTasks schemaTasks) {
+        return new EventSchemaInitializer(jdbcTemplate, schemaTasks, "card_events");
+    }
+
+    // Positions card events in commit order as consumers read them
+    @Bean(initMethod = "createTable")
+    public EventFeedSequencer cardEventSequencer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            @Value("${card.events.max-batch-size:5000}") int batchSize) {
+        return new EventFeedSequencer(jdbcTemplate, transactionTemplate, "card_events", "card_events", batchSize);
     }
 }
@@ -0,0 +1,45 @@
+package dev.gavin.card_service.config;
+
+import dev.gavin.common.schema.SchemaTasks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Hibernate's schema update cannot create partial indexes, so the rules card issuance relies on are created
+// here: one live card per account and type, and PANs unique across all cards ever issued. Existing duplicates
+// make the statement fail; that is logged rather than stopping the service, and issuance stays unguarded
+// until the duplicates are resolved.
+@Component
+public class CardConstraintInitializer implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(CardConstraintInitializer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final SchemaTasks schemaTasks;
+
+    public CardConstraintInitializer(JdbcTemplate jdbcTemplate, SchemaTasks schemaTasks) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaTasks = schemaTasks;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!schemaTasks.isPostgres())
+            return;
+
+        createIndex("CREATE UNIQUE INDEX IF NOT EXISTS uk_cards_account_id_card_type ON cards (account_id, card_type) WHERE deleted = false");
+        createIndex("CREATE UNIQUE INDEX IF NOT EXISTS uk_cards_pan ON cards (pan)");
+    }
+
+    private void createIndex(String sql) {
+        try {
+            jdbcTemplate.execute(sql);
+        } catch (DataAccessException e) {
+            log.error("Failed to create card constraint, resolve the duplicate rows and restart: {}", e.getMessage());
+        }
+    }
+}
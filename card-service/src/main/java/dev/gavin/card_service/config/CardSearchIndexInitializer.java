@@ -0,0 +1,78 @@
+package dev.gavin.card_service.config;
+
+import dev.gavin.card_service.utils.PanHasher;
+import dev.gavin.common.schema.SchemaTasks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Hibernate's schema update cannot create extensions or GIN indexes, so the trigram index behind the alias
+// search is created here once the table exists. Rows written before the search columns were added are
+// backfilled first, once; the PAN hashes are computed here in chunks since the key only exists in the service.
+@Component
+public class CardSearchIndexInitializer implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(CardSearchIndexInitializer.class);
+
+    private static final String BACKFILL_TASK = "cards.search-columns-backfill";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PanHasher panHasher;
+
+    private final SchemaTasks schemaTasks;
+
+    @Value("${card.search.create-indexes:true}")
+    private boolean createIndexes = true;
+
+    @Value("${card.search.backfill-chunk-size:1000}")
+    private int backfillChunkSize = 1000;
+
+    public CardSearchIndexInitializer(JdbcTemplate jdbcTemplate, PanHasher panHasher, SchemaTasks schemaTasks) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.panHasher = panHasher;
+        this.schemaTasks = schemaTasks;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!createIndexes || !schemaTasks.isPostgres())
+            return;
+
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        schemaTasks.runOnce(BACKFILL_TASK, this::backfill);
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_cards_card_alias_search_trgm ON cards USING gin (card_alias_search gin_trgm_ops)");
+    }
+
+    // New cards get their search columns from the entity, so only rows from before they existed need this
+    private void backfill() {
+        int backfilled = jdbcTemplate.update("""
+                UPDATE cards
+                    SET pan_last4 = RIGHT(pan, 4),
+                        card_alias_search = LOWER(TRIM(card_alias))
+                    WHERE pan_last4 IS NULL OR card_alias_search IS NULL
+                """);
+        if (backfilled > 0)
+            log.info("Backfilled search columns for {} card(s)", backfilled);
+
+        int hashed = 0;
+        List<Object[]> chunk;
+        while (!(chunk = findUnhashed()).isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE cards SET pan_hash = ? WHERE id = ?", chunk);
+            hashed += chunk.size();
+        }
+        if (hashed > 0)
+            log.info("Backfilled PAN hashes for {} card(s)", hashed);
+    }
+
+    private List<Object[]> findUnhashed() {
+        return jdbcTemplate.query("SELECT id, pan FROM cards WHERE pan_hash IS NULL ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new Object[]{panHasher.hash(rs.getString("pan")), rs.getLong("id")},
+                backfillChunkSize);
+    }
+}
@@ -1,8 +1,14 @@
 package dev.gavin.card_service.controller;
 
 
+import dev.gavin.card_service.dto.CardIssuanceJobDTO;
+import dev.gavin.card_service.dto.CardIssuanceRequest;
+import dev.gavin.card_service.service.CardIssuanceService;
 import dev.gavin.card_service.service.CardService;
 import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.dto.SliceDTO;
+import dev.gavin.common.idempotency.IdempotencyStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -13,6 +19,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/cards")
@@ -20,9 +27,16 @@ public class CardController {
 
     private final CardService cardService;
 
+    private final CardIssuanceService cardIssuanceService;
+
+    private final IdempotencyStore idempotencyStore;
+
     @Autowired
-    public CardController(CardService cardService) {
+    public CardController(CardService cardService, CardIssuanceService cardIssuanceService,
+                          IdempotencyStore idempotencyStore) {
         this.cardService = cardService;
+        this.cardIssuanceService = cardIssuanceService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @GetMapping("/{cardId}")
@@ -62,16 +76,95 @@ public class CardController {
         return ResponseEntity.ok(cards);
     }
 
+    @GetMapping("/scroll")
+    public ResponseEntity<SliceDTO<CardDTO>> scrollCards(
+            @RequestParam(required = false) String cardAlias,
+            @RequestParam(required = false) String pan,
+            @RequestParam(required = false) String cardType,
+            @RequestParam(required = false) Long accountId,
+            @RequestParam(defaultValue = "false") boolean showSensitiveData,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDirection) {
+
+        Sort.Direction direction = sortDirection.equalsIgnoreCase("desc") ?
+                Sort.Direction.DESC : Sort.Direction.ASC;
+
+        CardDTO filter = CardDTO.builder()
+                .accountId(accountId)
+                .cardAlias(cardAlias)
+                .pan(pan)
+                .cardType(cardType)
+                .build();
+
+        SliceDTO<CardDTO> cards = cardService.scrollCards(filter, showSensitiveData, sortBy, direction, size, cursor);
+        return ResponseEntity.ok(cards);
+    }
+
     @GetMapping("/count/account/{accountId}")
     public ResponseEntity<Integer> getCardCountByAccountId(@PathVariable Long accountId) {
         Integer cardCount = cardService.getCardCountByAccountId(accountId);
         return ResponseEntity.ok(cardCount);
     }
 
+    @PostMapping("/count/accounts")
+    public ResponseEntity<Map<Long, Long>> getCardCountsByAccountIds(@RequestBody List<Long> accountIds) {
+        Map<Long, Long> counts = cardService.getCardCountsByAccountIds(accountIds);
+        return ResponseEntity.ok(counts);
+    }
+
+    // Cards of up to card.by-accounts.max-ids accounts, masked, keyed by account id
+    @PostMapping("/by-accounts")
+    public ResponseEntity<Map<Long, List<CardDTO>>> getCardsByAccountIds(@RequestBody List<Long> accountIds) {
+        Map<Long, List<CardDTO>> cards = cardService.getCardsByAccountIds(accountIds);
+        return ResponseEntity.ok(cards);
+    }
+
+    @GetMapping("/events")
+    public ResponseEntity<List<ReferenceEventDTO>> getEvents(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "1000") int limit) {
+        List<ReferenceEventDTO> events = cardService.getEventsAfter(after, limit);
+        return ResponseEntity.ok(events);
+    }
+
+    @GetMapping("/events/head")
+    public ResponseEntity<Long> getHeadEventOffset() {
+        long offset = cardService.getHeadEventOffset();
+        return ResponseEntity.ok(offset);
+    }
+
     @PostMapping
-    public ResponseEntity<CardDTO> createCard(@RequestBody CardDTO cardDTO) {
-        CardDTO createdCard = cardService.createCard(cardDTO);
-        return new ResponseEntity<>(createdCard, HttpStatus.CREATED);
+    public ResponseEntity<CardDTO> createCard(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody CardDTO cardDTO) {
+        return idempotencyStore.execute("cards.create", idempotencyKey, cardDTO, CardDTO.class, () -> {
+            CardDTO createdCard = cardService.createCard(cardDTO);
+            return new ResponseEntity<>(createdCard, HttpStatus.CREATED);
+        });
+    }
+
+    // Either accountIds or a fromAccountId..toAccountId range; the job runs in the background
+    @PostMapping("/issuance-jobs")
+    public ResponseEntity<CardIssuanceJobDTO> startIssuanceJob(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody CardIssuanceRequest request) {
+        return idempotencyStore.execute("cards.issuance-jobs", idempotencyKey, request, CardIssuanceJobDTO.class,
+                () -> ResponseEntity.accepted().body(cardIssuanceService.startJob(request)));
+    }
+
+    @GetMapping("/issuance-jobs/{jobId}")
+    public ResponseEntity<CardIssuanceJobDTO> getIssuanceJob(@PathVariable Long jobId) {
+        CardIssuanceJobDTO job = cardIssuanceService.getJob(jobId);
+        return ResponseEntity.ok(job);
+    }
+
+    // Issues the chunks a failed or interrupted job has left
+    @PostMapping("/issuance-jobs/{jobId}/resume")
+    public ResponseEntity<CardIssuanceJobDTO> resumeIssuanceJob(@PathVariable Long jobId) {
+        CardIssuanceJobDTO job = cardIssuanceService.resumeJob(jobId);
+        return ResponseEntity.accepted().body(job);
     }
 
     @PatchMapping("/{cardId}/alias")
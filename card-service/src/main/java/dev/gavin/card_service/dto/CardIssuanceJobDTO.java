@@ -0,0 +1,31 @@
+package dev.gavin.card_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CardIssuanceJobDTO {
+    private Long id;
+    private String cardType;
+    private String cardAlias;
+    private String status;
+    private long totalAccounts;
+    private int totalChunks;
+    private int completedChunks;
+    private long issued;
+    private long skippedMissing;
+    private long skippedIneligible;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,23 @@
+package dev.gavin.card_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// Accounts to issue a card to: either an explicit list of account ids or an inclusive account id range
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CardIssuanceRequest {
+    private List<Long> accountIds;
+    private Long fromAccountId;
+    private Long toAccountId;
+    private String cardType;
+    private String cardAlias;
+}
@@ -1,6 +1,7 @@
 package dev.gavin.card_service.entity;
 
 import dev.gavin.card_service.enums.CardType;
+import dev.gavin.card_service.utils.CardSearchTerms;
 import dev.gavin.common.entity.BaseEntity;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -8,7 +9,15 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-@Table(name = "cards")
+// The (sort column, id) indexes let cursor-paged listings seek straight to the next slice; the PAN indexes
+// serve searches by last 4 digits and by full card number
+@Table(name = "cards", indexes = {
+        @Index(name = "idx_cards_card_alias_id", columnList = "card_alias, id"),
+        @Index(name = "idx_cards_account_id_id", columnList = "account_id, id"),
+        @Index(name = "idx_cards_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_cards_pan_last4_id", columnList = "pan_last4, id"),
+        @Index(name = "idx_cards_pan_hash", columnList = "pan_hash")
+})
 @Entity
 @Getter
 @Setter
@@ -16,7 +25,7 @@ import lombok.Setter;
 @NoArgsConstructor
 public class Card extends BaseEntity {
 
-    @Column(nullable = false, updatable = false)
+    @Column(nullable = false)
     private String cardAlias;
 
     @Column(nullable = false, updatable = false)
@@ -31,4 +40,24 @@ public class Card extends BaseEntity {
 
     @Column(nullable = false, length = 3)
     private String cvv;
+
+    // Derived from pan, which is never updated either
+    @Column(name = "pan_last4", length = 4, updatable = false)
+    private String panLast4;
+
+    // PanHasher's keyed hash of the full PAN
+    @Column(name = "pan_hash", length = 64, updatable = false)
+    private String panHash;
+
+    // Normalized copy of cardAlias, backed by a trigram index for substring search. Recomputed whenever the
+    // card is updated, since renaming a card changes its alias.
+    @Column(name = "card_alias_search")
+    private String cardAliasSearch;
+
+    @PrePersist
+    @PreUpdate
+    public void normalizeSearchFields() {
+        this.panLast4 = CardSearchTerms.last4(pan);
+        this.cardAliasSearch = CardSearchTerms.normalizeAlias(cardAlias);
+    }
 }
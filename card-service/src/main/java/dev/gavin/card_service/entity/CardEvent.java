@@ -0,0 +1,42 @@
+package dev.gavin.card_service.entity;
+
+import dev.gavin.common.enums.ReferenceEventType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Outbox of card creations, updates and deletions, written in the same transaction as the card itself. Consumers
+// track the feed position, which EventFeedSequencer assigns once the event has committed.
+@Table(name = "card_events")
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "feed_position", unique = true)
+    private Long position;
+
+    @Column(nullable = false, updatable = false)
+    private Long accountId;
+
+    @Column(nullable = false, updatable = false)
+    private Long cardId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, updatable = false)
+    private ReferenceEventType type;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
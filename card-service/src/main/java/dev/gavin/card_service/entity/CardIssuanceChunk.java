@@ -0,0 +1,65 @@
+package dev.gavin.card_service.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+// A slice of a CardIssuanceJob's accounts: either an explicit list of account ids or an inclusive range of them.
+// It is marked completed in the same transaction that inserts its cards, which makes it the job's checkpoint.
+@Table(name = "card_issuance_chunks", indexes = {
+        @Index(name = "idx_card_issuance_chunks_job_id_completed", columnList = "job_id, completed")
+})
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardIssuanceChunk {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false, updatable = false)
+    private Long jobId;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(updatable = false)
+    private Long[] accountIds;
+
+    @Column(updatable = false)
+    private Long fromAccountId;
+
+    @Column(updatable = false)
+    private Long toAccountId;
+
+    @Column(nullable = false)
+    private boolean completed;
+
+    @Column(nullable = false)
+    private int issued;
+
+    @Column(nullable = false)
+    private int skippedMissing;
+
+    @Column(nullable = false)
+    private int skippedIneligible;
+
+    @Column
+    private LocalDateTime completedAt;
+
+    public int size() {
+        return accountIds != null ? accountIds.length : (int) (toAccountId - fromAccountId + 1);
+    }
+
+    public long accountIdAt(int index) {
+        return accountIds != null ? accountIds[index] : fromAccountId + index;
+    }
+}
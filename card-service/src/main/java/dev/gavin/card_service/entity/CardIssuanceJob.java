@@ -0,0 +1,70 @@
+package dev.gavin.card_service.entity;
+
+import dev.gavin.card_service.enums.CardIssuanceStatus;
+import dev.gavin.card_service.enums.CardType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// A bulk issuance of one card type to many accounts. The accounts are split into CardIssuanceChunks, and the
+// counters are advanced in the transaction that issues each chunk.
+@Table(name = "card_issuance_jobs")
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardIssuanceJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, updatable = false)
+    private CardType cardType;
+
+    @Column(nullable = false, updatable = false)
+    private String cardAlias;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CardIssuanceStatus status;
+
+    @Column(nullable = false, updatable = false)
+    private long totalAccounts;
+
+    @Column(nullable = false, updatable = false)
+    private int totalChunks;
+
+    @Column(nullable = false)
+    private int completedChunks;
+
+    @Column(nullable = false)
+    private long issued;
+
+    // Accounts that do not exist
+    @Column(nullable = false)
+    private long skippedMissing;
+
+    // Accounts that already have a card of the type or are at their card limit
+    @Column(nullable = false)
+    private long skippedIneligible;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column
+    private LocalDateTime updatedAt;
+
+    @Column
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,8 @@
+package dev.gavin.card_service.enums;
+
+public enum CardIssuanceStatus {
+    RUNNING,
+    COMPLETED,
+    // Stopped with chunks left to issue; resuming picks up from those
+    FAILED
+}
@@ -0,0 +1,81 @@
+package dev.gavin.card_service.repository;
+
+import dev.gavin.card_service.entity.Card;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+public class CardBatchRepository {
+
+    // The card and its CREATED event in one statement. The per-type unique index and the unique PAN index
+    // (CardConstraintInitializer) turn a conflicting card into no row, as does an account at its card limit.
+    private static final String INSERT_CARD_IF_ALLOWED = """
+            WITH inserted AS (
+                INSERT INTO cards (card_alias, account_id, card_type, pan, cvv, created_at, pan_last4, pan_hash,
+                                   card_alias_search, deleted, version)
+                SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, false, 0
+                WHERE (SELECT COUNT(*) FROM cards WHERE account_id = ? AND deleted = false) < ?
+                ON CONFLICT DO NOTHING
+                RETURNING id, account_id, created_at
+            )
+            INSERT INTO card_events (account_id, card_id, type, created_at)
+            SELECT account_id, id, 'CREATED', created_at FROM inserted
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Sets the card's id and returns true when the card was inserted
+    public boolean insertIfAllowed(Card card, int maxCardsPerAccount) {
+        card.normalizeSearchFields();
+        List<Long> ids = jdbcTemplate.query(INSERT_CARD_IF_ALLOWED + "RETURNING card_id",
+                ps -> bind(ps, card, maxCardsPerAccount), (rs, rowNum) -> rs.getLong("card_id"));
+        if (ids.isEmpty())
+            return false;
+
+        card.setId(ids.get(0));
+        return true;
+    }
+
+    // Sends the same statement in JDBC batches of batchSize and returns the cards it refused, in order.
+    // Ids are not read back.
+    public List<Card> insertAllIfAllowed(List<Card> cards, int maxCardsPerAccount, int batchSize) {
+        cards.forEach(Card::normalizeSearchFields);
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_CARD_IF_ALLOWED, cards, batchSize,
+                (ps, card) -> bind(ps, card, maxCardsPerAccount));
+
+        List<Card> refused = new ArrayList<>();
+        int index = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                if (count == 0)
+                    refused.add(cards.get(index));
+                index++;
+            }
+        }
+        return refused;
+    }
+
+    private void bind(PreparedStatement ps, Card card, int maxCardsPerAccount) throws SQLException {
+        ps.setString(1, card.getCardAlias());
+        ps.setLong(2, card.getAccountId());
+        ps.setString(3, card.getCardType().name());
+        ps.setString(4, card.getPan());
+        ps.setString(5, card.getCvv());
+        ps.setTimestamp(6, Timestamp.valueOf(card.getCreatedAt()));
+        ps.setString(7, card.getPanLast4());
+        ps.setString(8, card.getPanHash());
+        ps.setString(9, card.getCardAliasSearch());
+        ps.setLong(10, card.getAccountId());
+        ps.setInt(11, maxCardsPerAccount);
+    }
+}
@@ -0,0 +1,16 @@
+package dev.gavin.card_service.repository;
+
+import dev.gavin.card_service.entity.CardEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface CardEventRepository extends JpaRepository<CardEvent, Long> {
+
+    List<CardEvent> findByPositionGreaterThanOrderByPositionAsc(Long position, Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(e.position), 0) FROM CardEvent e")
+    long findHeadOffset();
+}
@@ -0,0 +1,32 @@
+package dev.gavin.card_service.repository;
+
+import dev.gavin.card_service.entity.CardIssuanceChunk;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CardIssuanceChunkRepository extends JpaRepository<CardIssuanceChunk, Long> {
+
+    @Query("SELECT c.id FROM CardIssuanceChunk c WHERE c.jobId = :jobId AND c.completed = false ORDER BY c.id")
+    List<Long> findPendingIds(@Param("jobId") Long jobId);
+
+    long countByJobIdAndCompletedFalse(Long jobId);
+
+    // SKIP LOCKED: a chunk another worker, possibly on another instance, is issuing comes back empty
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT c FROM CardIssuanceChunk c WHERE c.id = :id AND c.completed = false")
+    Optional<CardIssuanceChunk> lockPending(@Param("id") Long id);
+
+    // Pending chunks no worker on any instance is issuing right now; those being issued are skipped
+    @Query(value = "SELECT id FROM card_issuance_chunks WHERE job_id = :jobId AND completed = false FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Long> lockIdlePendingIds(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,51 @@
+package dev.gavin.card_service.repository;
+
+import dev.gavin.card_service.entity.CardIssuanceJob;
+import dev.gavin.card_service.enums.CardIssuanceStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface CardIssuanceJobRepository extends JpaRepository<CardIssuanceJob, Long> {
+
+    List<CardIssuanceJob> findByStatus(CardIssuanceStatus status);
+
+    // Increments in place, so chunks finishing concurrently on any instance do not overwrite each other
+    @Modifying
+    @Query("""
+            UPDATE CardIssuanceJob j SET j.completedChunks = j.completedChunks + 1, j.issued = j.issued + :issued,
+                        j.skippedMissing = j.skippedMissing + :skippedMissing,
+                        j.skippedIneligible = j.skippedIneligible + :skippedIneligible, j.updatedAt = :now
+            WHERE j.id = :id
+            """)
+    void recordChunk(@Param("id") Long id, @Param("issued") long issued, @Param("skippedMissing") long skippedMissing,
+                     @Param("skippedIneligible") long skippedIneligible, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("""
+            UPDATE CardIssuanceJob j SET j.status = :status, j.lastError = :lastError, j.completedAt = :completedAt,
+                        j.updatedAt = :now
+            WHERE j.id = :id
+            """)
+    void updateStatus(@Param("id") Long id, @Param("status") CardIssuanceStatus status,
+                      @Param("lastError") String lastError, @Param("completedAt") LocalDateTime completedAt,
+                      @Param("now") LocalDateTime now);
+
+    // Chunk failures are recorded as they happen, so whichever instance settles the job can report them
+    @Modifying
+    @Query("UPDATE CardIssuanceJob j SET j.lastError = :lastError, j.updatedAt = :now WHERE j.id = :id")
+    void recordError(@Param("id") Long id, @Param("lastError") String lastError, @Param("now") LocalDateTime now);
+
+    // Keeps the last recorded chunk failure, falling back to the given error when none was recorded
+    @Modifying
+    @Query("""
+            UPDATE CardIssuanceJob j SET j.status = dev.gavin.card_service.enums.CardIssuanceStatus.FAILED,
+                        j.lastError = COALESCE(j.lastError, :lastError), j.updatedAt = :now
+            WHERE j.id = :id
+            """)
+    void markFailed(@Param("id") Long id, @Param("lastError") String lastError, @Param("now") LocalDateTime now);
+}
@@ -2,34 +2,76 @@ package dev.gavin.card_service.repository;
 
 import dev.gavin.card_service.entity.Card;
 import dev.gavin.card_service.enums.CardType;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface CardRepository extends JpaRepository<Card, Long> {
+public interface CardRepository extends JpaRepository<Card, Long>, JpaSpecificationExecutor<Card> {
 
     List<Card> findByAccountId(Long accountId);
 
+    List<Card> findByAccountIdInOrderByAccountIdAscIdAsc(Collection<Long> accountIds);
+
     Optional<Card> findByIdAndAccountId(Long id, Long accountId);
 
     List<Card> findByAccountIdAndCardType(Long accountId, CardType cardType);
 
-    boolean existsByPan(String pan);
-
     int countByAccountId(Long accountId);
 
+    @Query("SELECT c.accountId, COUNT(c) FROM Card c WHERE c.accountId IN :accountIds GROUP BY c.accountId")
+    List<Object[]> countByAccountIds(@Param("accountIds") Collection<Long> accountIds);
+
+    // Accounts that already have a card of the type or have reached the card limit
     @Query("""
-            SELECT c FROM Card c WHERE (:cardAlias IS NULL OR LOWER(c.cardAlias) LIKE %:cardAlias%)
-                        AND (:pan IS NULL OR LOWER(c.pan) LIKE %:pan%)
+            SELECT c.accountId FROM Card c WHERE c.accountId IN :accountIds GROUP BY c.accountId
+            HAVING COUNT(c) >= :maxCards OR SUM(CASE WHEN c.cardType = :cardType THEN 1 ELSE 0 END) > 0
+            """)
+    List<Long> findIneligibleAccountIds(@Param("accountIds") Collection<Long> accountIds,
+                                        @Param("cardType") CardType cardType, @Param("maxCards") long maxCards);
+
+    // Expects the alias normalized and escaped by CardSearchTerms, and the PAN split into its last 4 digits and
+    // PanHasher's hash. On PostgreSQL the alias LIKE is served by the trigram index from CardSearchIndexInitializer.
+    @Query("""
+            SELECT c FROM Card c WHERE (:cardAlias IS NULL OR c.cardAliasSearch LIKE CONCAT('%', :cardAlias, '%') ESCAPE '\\')
+                        AND (:panLast4 IS NULL OR c.panLast4 = :panLast4)
+                        AND (:panHash IS NULL OR c.panHash = :panHash)
                         AND (:cardType IS NULL OR c.cardType = :cardType)
                         AND (:accountId IS NULL OR c.accountId = :accountId)
             """)
-    Page<Card> findWithFilters(@Param("cardAlias") String cardAlias, @Param("pan") String pan, @Param("cardType") CardType cardType,
+    Page<Card> findWithFilters(@Param("cardAlias") String cardAlias, @Param("panLast4") String panLast4,
+                               @Param("panHash") String panHash, @Param("cardType") CardType cardType,
                                @Param("accountId") Long accountId, Pageable pageable);
 
+    // Cursor-paged variant of findWithFilters: same filters, a keyset restriction instead of an offset
+    // and no count query.
+    default List<Card> scrollWithFilters(String cardAlias, String panLast4, String panHash, CardType cardType,
+                                         Long accountId, Specification<Card> after, Sort sort, int limit) {
+        Specification<Card> filters = (root, query, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (cardAlias != null)
+                predicates.add(criteriaBuilder.like(root.get("cardAliasSearch"), "%" + cardAlias + "%", '\\'));
+            if (panLast4 != null)
+                predicates.add(criteriaBuilder.equal(root.get("panLast4"), panLast4));
+            if (panHash != null)
+                predicates.add(criteriaBuilder.equal(root.get("panHash"), panHash));
+            if (cardType != null)
+                predicates.add(criteriaBuilder.equal(root.get("cardType"), cardType));
+            if (accountId != null)
+                predicates.add(criteriaBuilder.equal(root.get("accountId"), accountId));
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
+
+        return findBy(filters.and(after), query -> query.sortBy(sort).limit(limit).all());
+    }
 }
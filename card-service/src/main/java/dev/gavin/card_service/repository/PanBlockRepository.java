@@ -0,0 +1,49 @@
+package dev.gavin.card_service.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+// Reserves blocks of PAN positions from a database sequence. nextval is not undone when the caller's
+// transaction rolls back, so a block is never handed out twice, across instances or restarts. The sequence
+// advances by the block size and each value it returns is the end of a block; the size is read back from the
+// sequence, so the configured block size only applies when the sequence is first created.
+@Repository
+public class PanBlockRepository {
+
+    static final String SEQUENCE = "card_pan_blocks";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile boolean sequenceCreated;
+
+    @Value("${card.pan.block-size:1000}")
+    private int blockSize = 1000;
+
+    public PanBlockRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public PanBlock nextBlock() {
+        if (!sequenceCreated) {
+            if (blockSize < 1)
+                throw new IllegalStateException("PAN block size must be positive");
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE
+                    + " INCREMENT BY " + blockSize + " START WITH " + blockSize);
+            sequenceCreated = true;
+        }
+
+        return jdbcTemplate.queryForObject("""
+                SELECT nextval('%1$s') AS block_end,
+                       (SELECT increment_by FROM pg_sequences
+                            WHERE schemaname = current_schema() AND sequencename = '%1$s') AS block_size
+                """.formatted(SEQUENCE), (rs, rowNum) -> {
+            long end = rs.getLong("block_end");
+            return new PanBlock(end - rs.getLong("block_size"), end);
+        });
+    }
+
+    // Positions [start, end) belong to the caller alone
+    public record PanBlock(long start, long end) {
+    }
+}
@@ -0,0 +1,232 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.exception.InternalErrorException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Remembers which accounts exist so issuing cards does not call account-service for every card. Answers that an
+// account is missing expire much sooner than answers that it exists, since it may be created at any moment.
+// Concurrent misses for one account share a single remote call. Account events invalidate entries as accounts
+// are created and deleted; the TTLs bound how stale an entry can get if that feed stalls.
+// Entries are bounded to maxEntries, oldest first.
+@Service
+public class AccountExistenceCache {
+    private static final Logger log = LoggerFactory.getLogger(AccountExistenceCache.class);
+
+    static final String REQUESTS_METRIC = "card.account-cache.requests";
+
+    static final String EVICTIONS_METRIC = "card.account-cache.evictions";
+
+    static final String SIZE_METRIC = "card.account-cache.size";
+
+    private final RestTemplate restTemplate;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<QueuedAccount> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final Map<Long, CompletableFuture<Boolean>> loads = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter coalesced;
+
+    private final Counter sizeEvictions;
+
+    private final Counter expiredEvictions;
+
+    private final Counter invalidations;
+
+    // Offset of the last account event applied; null until the head of the feed has been read
+    private volatile Long lastOffset;
+
+    @Value("${account-service.url}")
+    private String accountServiceUrl;
+
+    @Value("${card.account-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${card.account-cache.positive-ttl:PT10M}")
+    private Duration positiveTtl = Duration.ofMinutes(10);
+
+    @Value("${card.account-cache.negative-ttl:PT5S}")
+    private Duration negativeTtl = Duration.ofSeconds(5);
+
+    @Value("${card.account-cache.max-entries:100000}")
+    private int maxEntries = 100000;
+
+    @Value("${card.account-cache.batch-size:1000}")
+    private int batchSize = 1000;
+
+    public AccountExistenceCache(RestTemplate restTemplate, MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.coalesced = requests(meterRegistry, "coalesced");
+        this.sizeEvictions = evictions(meterRegistry, "size");
+        this.expiredEvictions = evictions(meterRegistry, "expired");
+        this.invalidations = evictions(meterRegistry, "invalidated");
+        Gauge.builder(SIZE_METRIC, entries, Map::size).register(meterRegistry);
+    }
+
+    public boolean exists(Long accountId) {
+        if (!enabled)
+            return load(accountId);
+
+        Instant now = Instant.now();
+        Entry entry = entries.get(accountId);
+        if (entry != null) {
+            if (!entry.isExpired(now)) {
+                hits.increment();
+                return entry.exists();
+            }
+            if (entries.remove(accountId, entry))
+                expiredEvictions.increment();
+        }
+
+        CompletableFuture<Boolean> load = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlight = loads.putIfAbsent(accountId, load);
+        if (inFlight != null) {
+            coalesced.increment();
+            return await(inFlight);
+        }
+
+        misses.increment();
+        // An answer loaded before the event feed is being followed could miss a deletion, so it is not kept
+        boolean tracking = lastOffset != null;
+        try {
+            boolean exists = load(accountId);
+            // Invalidating drops the in-flight load, so an answer that may predate the event is not stored
+            boolean[] stored = new boolean[1];
+            loads.compute(accountId, (id, current) -> {
+                if (current != load)
+                    return current;
+                if (tracking) {
+                    Entry loaded = new Entry(exists, now.plus(exists ? positiveTtl : negativeTtl));
+                    entries.put(accountId, loaded);
+                    insertionOrder.add(new QueuedAccount(accountId, loaded));
+                    stored[0] = true;
+                }
+                return null;
+            });
+            if (stored[0])
+                evict(now);
+            load.complete(exists);
+            return exists;
+        } catch (RuntimeException e) {
+            loads.remove(accountId, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public void invalidate(Long accountId) {
+        loads.remove(accountId);
+        if (entries.remove(accountId) != null)
+            invalidations.increment();
+    }
+
+    // Creates drop a cached "missing" answer and deletes a cached "exists" one. Updates do not change whether
+    // an account exists.
+    @Scheduled(fixedDelayString = "${card.account-cache.poll-interval:PT1S}")
+    public void pollEvents() {
+        if (!enabled)
+            return;
+
+        try {
+            if (lastOffset == null) {
+                Long head = restTemplate.getForObject(accountServiceUrl + "/api/accounts/events/head", Long.class);
+                lastOffset = head != null ? head : 0L;
+                return;
+            }
+
+            String url = accountServiceUrl + "/api/accounts/events?after=" + lastOffset + "&limit=" + batchSize;
+            ReferenceEventDTO[] events = restTemplate.getForObject(url, ReferenceEventDTO[].class);
+            if (events == null)
+                return;
+
+            for (ReferenceEventDTO event : events) {
+                if (event.getType() != ReferenceEventType.UPDATED)
+                    invalidate(event.getChildId());
+                lastOffset = event.getOffset();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to poll account events: {}", e.getMessage());
+        }
+    }
+
+    private boolean load(Long accountId) {
+        try {
+            String url = accountServiceUrl + "/api/accounts/exists/" + accountId;
+            return Boolean.TRUE.equals(restTemplate.getForObject(url, Boolean.class));
+        } catch (Exception e) {
+            throw new InternalErrorException("Failed to verify account existence: " + e.getMessage());
+        }
+    }
+
+    private boolean await(CompletableFuture<Boolean> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    // Oldest entries go first once over maxEntries. Expired and replaced ones reaching the head are dropped
+    // along the way, which keeps the queue from outgrowing the entries it tracks.
+    private void evict(Instant now) {
+        QueuedAccount oldest;
+        while ((oldest = insertionOrder.peek()) != null) {
+            boolean current = entries.get(oldest.accountId()) == oldest.entry();
+            boolean expired = oldest.entry().isExpired(now);
+            if (current && !expired && entries.size() <= maxEntries)
+                return;
+            if (insertionOrder.remove(oldest) && current && entries.remove(oldest.accountId(), oldest.entry()))
+                (expired ? expiredEvictions : sizeEvictions).increment();
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(REQUESTS_METRIC)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictions(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder(EVICTIONS_METRIC)
+                .tag("cause", cause)
+                .register(meterRegistry);
+    }
+
+    private record Entry(boolean exists, Instant expiresAt) {
+
+        boolean isExpired(Instant now) {
+            return !expiresAt.isAfter(now);
+        }
+    }
+
+    private record QueuedAccount(Long accountId, Entry entry) {
+    }
+}
@@ -0,0 +1,385 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.card_service.dto.CardIssuanceJobDTO;
+import dev.gavin.card_service.dto.CardIssuanceRequest;
+import dev.gavin.card_service.entity.Card;
+import dev.gavin.card_service.entity.CardIssuanceChunk;
+import dev.gavin.card_service.entity.CardIssuanceJob;
+import dev.gavin.card_service.enums.CardIssuanceStatus;
+import dev.gavin.card_service.enums.CardType;
+import dev.gavin.card_service.repository.CardBatchRepository;
+import dev.gavin.card_service.repository.CardIssuanceChunkRepository;
+import dev.gavin.card_service.repository.CardIssuanceJobRepository;
+import dev.gavin.card_service.repository.CardRepository;
+import dev.gavin.card_service.utils.CardNumberGenerator;
+import dev.gavin.card_service.utils.PanHasher;
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.common.exception.ConflictException;
+import dev.gavin.common.exception.InternalErrorException;
+import dev.gavin.common.exception.ResourceNotFoundException;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Issues one card type to many accounts, e.g. a virtual card to every account when a product launches. The
+// accounts are split into chunks up front, and workers on the task executor take chunks in turn. Each chunk
+// checks its accounts with one batch existence call to account-service and one grouped query for the two-card
+// rule, allocates its PANs in one go and inserts its cards in JDBC batches. Completing a chunk is committed
+// with its cards, so a job stopped part way, by a failure or a restart, resumes with the chunks still pending.
+@Service
+@Timed(value = "service.method", histogram = true)
+public class CardIssuanceService {
+    private static final Logger log = LoggerFactory.getLogger(CardIssuanceService.class);
+
+    private final CardIssuanceJobRepository jobRepository;
+
+    private final CardIssuanceChunkRepository chunkRepository;
+
+    private final CardRepository cardRepository;
+
+    private final CardBatchRepository cardBatchRepository;
+
+    private final PanAllocator panAllocator;
+
+    private final PanHasher panHasher;
+
+    private final CardNumberGenerator cardNumberGenerator;
+
+    private final RestTemplate restTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final BackgroundTasks backgroundTasks;
+
+    // Jobs this instance is running, so a job is not dispatched twice side by side
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    @Value("${account-service.url}")
+    private String accountServiceUrl;
+
+    @Value("${card.issuance.workers:4}")
+    private int workers = 4;
+
+    @Value("${card.issuance.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    @Value("${card.issuance.insert-batch-size:500}")
+    private int insertBatchSize = 500;
+
+    @Value("${card.issuance.max-accounts:1000000}")
+    private int maxAccounts = 1000000;
+
+    @Value("${card.issuance.resume-on-startup:true}")
+    private boolean resumeOnStartup = true;
+
+    public CardIssuanceService(CardIssuanceJobRepository jobRepository, CardIssuanceChunkRepository chunkRepository,
+                               CardRepository cardRepository, CardBatchRepository cardBatchRepository,
+                               PanAllocator panAllocator, PanHasher panHasher, CardNumberGenerator cardNumberGenerator,
+                               RestTemplate restTemplate, TransactionTemplate transactionTemplate,
+                               BackgroundTasks backgroundTasks) {
+        this.jobRepository = jobRepository;
+        this.chunkRepository = chunkRepository;
+        this.cardRepository = cardRepository;
+        this.cardBatchRepository = cardBatchRepository;
+        this.panAllocator = panAllocator;
+        this.panHasher = panHasher;
+        this.cardNumberGenerator = cardNumberGenerator;
+        this.restTemplate = restTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.backgroundTasks = backgroundTasks;
+    }
+
+    public CardIssuanceJobDTO startJob(CardIssuanceRequest request) {
+        if (request.getCardType() == null || request.getCardType().isBlank())
+            throw new BadRequestException("Card type is required");
+        if (request.getCardAlias() == null || request.getCardAlias().isBlank())
+            throw new BadRequestException("Card alias is required");
+        CardType cardType = CardType.fromString(request.getCardType());
+        List<CardIssuanceChunk> chunks = split(request);
+
+        CardIssuanceJob job = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            CardIssuanceJob saved = jobRepository.save(CardIssuanceJob.builder()
+                    .cardType(cardType)
+                    .cardAlias(request.getCardAlias())
+                    .status(CardIssuanceStatus.RUNNING)
+                    .totalAccounts(chunks.stream().mapToLong(CardIssuanceChunk::size).sum())
+                    .totalChunks(chunks.size())
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .build());
+            chunks.forEach(chunk -> chunk.setJobId(saved.getId()));
+            chunkRepository.saveAll(chunks);
+            return saved;
+        });
+
+        dispatch(job);
+        return mapToDTO(job);
+    }
+
+    public CardIssuanceJobDTO getJob(Long jobId) {
+        return mapToDTO(findJob(jobId));
+    }
+
+    public CardIssuanceJobDTO resumeJob(Long jobId) {
+        CardIssuanceJob job = findJob(jobId);
+        if (job.getStatus() == CardIssuanceStatus.COMPLETED)
+            throw new ConflictException("Card issuance job " + jobId + " has already completed");
+        if (running.contains(jobId))
+            throw new ConflictException("Card issuance job " + jobId + " is already running");
+
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status ->
+                jobRepository.updateStatus(jobId, CardIssuanceStatus.RUNNING, null, null, now));
+        job.setStatus(CardIssuanceStatus.RUNNING);
+        job.setLastError(null);
+        dispatch(job);
+        return mapToDTO(job);
+    }
+
+    // Jobs still marked running were cut off by a shutdown. Another instance resuming the same job is harmless:
+    // chunks are locked while they are issued and skipped once completed.
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        if (!resumeOnStartup)
+            return;
+
+        for (CardIssuanceJob job : jobRepository.findByStatus(CardIssuanceStatus.RUNNING)) {
+            log.info("Resuming card issuance job {}", job.getId());
+            dispatch(job);
+        }
+    }
+
+    private void dispatch(CardIssuanceJob job) {
+        if (!running.add(job.getId()))
+            throw new ConflictException("Card issuance job " + job.getId() + " is already running");
+
+        try {
+            Queue<Long> pending = new ConcurrentLinkedQueue<>(chunkRepository.findPendingIds(job.getId()));
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[Math.max(1, Math.min(workers, pending.size()))];
+            for (int i = 0; i < tasks.length; i++)
+                tasks[i] = CompletableFuture.runAsync(() -> issueChunks(job, pending), backgroundTasks.executor());
+
+            CompletableFuture.allOf(tasks).whenComplete((result, e) -> {
+                try {
+                    if (e != null)
+                        recordError(job.getId(), e.getMessage());
+                    finish(job.getId());
+                } finally {
+                    running.remove(job.getId());
+                }
+            });
+        } catch (RuntimeException e) {
+            running.remove(job.getId());
+            throw e;
+        }
+    }
+
+    // A failed chunk stays pending for the next resume; the worker carries on with the others. A chunk locked by
+    // a worker elsewhere is in progress there and is not this worker's concern.
+    private void issueChunks(CardIssuanceJob job, Queue<Long> pending) {
+        Long chunkId;
+        while ((chunkId = pending.poll()) != null) {
+            try {
+                issueChunk(job, chunkId);
+            } catch (Exception e) {
+                log.warn("Failed to issue card issuance job {} chunk {}: {}", job.getId(), chunkId, e.getMessage());
+                recordError(job.getId(), "Chunk " + chunkId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    void issueChunk(CardIssuanceJob job, Long chunkId) {
+        Optional<CardIssuanceChunk> chunk = chunkRepository.findById(chunkId);
+        if (chunk.isEmpty() || chunk.get().isCompleted())
+            return;
+
+        // Asked before the transaction, so no connection is held across the call
+        Set<Long> existing = findExistingAccounts(chunk.get());
+        transactionTemplate.executeWithoutResult(status -> chunkRepository.lockPending(chunkId)
+                .ifPresentOrElse(locked -> issue(job, locked, existing),
+                        () -> log.debug("Card issuance job {} chunk {} is being issued elsewhere", job.getId(), chunkId)));
+    }
+
+    private void issue(CardIssuanceJob job, CardIssuanceChunk chunk, Set<Long> existing) {
+        Set<Long> eligible = new TreeSet<>(existing);
+        if (!eligible.isEmpty())
+            cardRepository.findIneligibleAccountIds(existing, job.getCardType(), CardService.MAX_CARDS_PER_ACCOUNT)
+                    .forEach(eligible::remove);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Card> cards = new ArrayList<>(eligible.size());
+        for (Long accountId : eligible) {
+            Card card = new Card();
+            card.setCreatedAt(now);
+            card.setCardAlias(job.getCardAlias());
+            card.setAccountId(accountId);
+            card.setCardType(job.getCardType());
+            card.setCvv(cardNumberGenerator.generateCVV());
+            cards.add(card);
+        }
+
+        // The insert guards both rules itself, so an account that gained a card since the check is refused.
+        // Such accounts are dropped on a second eligibility check; the cards still refused after it can only
+        // have clashed on their PAN with one issued before allocation and are retried with new PANs.
+        int issued = 0;
+        for (int attempt = 1; attempt <= CardService.MAX_ISSUE_ATTEMPTS && !cards.isEmpty(); attempt++) {
+            List<String> pans = panAllocator.nextPans(cards.size());
+            for (int i = 0; i < cards.size(); i++) {
+                cards.get(i).setPan(pans.get(i));
+                cards.get(i).setPanHash(panHasher.hash(pans.get(i)));
+            }
+            List<Card> refused = cardBatchRepository.insertAllIfAllowed(cards, CardService.MAX_CARDS_PER_ACCOUNT,
+                    insertBatchSize);
+            issued += cards.size() - refused.size();
+            cards = attempt < CardService.MAX_ISSUE_ATTEMPTS ? stillEligible(refused, job.getCardType()) : List.of();
+        }
+
+        int skippedMissing = chunk.size() - existing.size();
+        int skippedIneligible = existing.size() - issued;
+        chunk.setCompleted(true);
+        chunk.setIssued(issued);
+        chunk.setSkippedMissing(skippedMissing);
+        chunk.setSkippedIneligible(skippedIneligible);
+        chunk.setCompletedAt(now);
+        chunkRepository.save(chunk);
+        jobRepository.recordChunk(job.getId(), issued, skippedMissing, skippedIneligible, now);
+    }
+
+    private Set<Long> findExistingAccounts(CardIssuanceChunk chunk) {
+        ExistenceRequestDTO request = chunk.getAccountIds() != null
+                ? ExistenceRequestDTO.builder().ids(Arrays.asList(chunk.getAccountIds())).build()
+                : ExistenceRequestDTO.builder().from(chunk.getFromAccountId()).to(chunk.getToAccountId()).build();
+
+        ExistenceDTO existence;
+        try {
+            existence = restTemplate.postForObject(accountServiceUrl + "/api/accounts/exists/batch?format=bitset",
+                    request, ExistenceDTO.class);
+        } catch (Exception e) {
+            throw new InternalErrorException("Failed to verify account existence: " + e.getMessage());
+        }
+        if (existence == null || existence.getBitset() == null)
+            throw new InternalErrorException("Failed to verify account existence: empty response");
+
+        BitSet bits = BitSet.valueOf(Base64.getDecoder().decode(existence.getBitset()));
+        Set<Long> existing = new TreeSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0 && i < chunk.size(); i = bits.nextSetBit(i + 1))
+            existing.add(chunk.accountIdAt(i));
+        return existing;
+    }
+
+    private List<Card> stillEligible(List<Card> refused, CardType cardType) {
+        if (refused.isEmpty())
+            return refused;
+
+        Set<Long> ineligible = new HashSet<>(cardRepository.findIneligibleAccountIds(
+                refused.stream().map(Card::getAccountId).toList(), cardType, CardService.MAX_CARDS_PER_ACCOUNT));
+        return refused.stream()
+                .filter(card -> !ineligible.contains(card.getAccountId()))
+                .toList();
+    }
+
+    private void recordError(Long jobId, String error) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jobRepository.recordError(jobId, truncate(error), LocalDateTime.now()));
+        } catch (Exception e) {
+            log.error("Failed to record an error of card issuance job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    // Chunks still locked are being issued by workers elsewhere, which settle the job when they finish, so it is
+    // only marked failed once every pending chunk is idle. Whichever instance finishes last settles it.
+    private void finish(Long jobId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                long pending = chunkRepository.countByJobIdAndCompletedFalse(jobId);
+                if (pending == 0)
+                    jobRepository.updateStatus(jobId, CardIssuanceStatus.COMPLETED, null, now, now);
+                else if (chunkRepository.lockIdlePendingIds(jobId).size() >= pending)
+                    jobRepository.markFailed(jobId, pending + " chunk(s) left pending", now);
+            });
+        } catch (Exception e) {
+            log.error("Failed to record the outcome of card issuance job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    // Lists are deduplicated and sorted so each chunk covers a contiguous stretch of account ids
+    private List<CardIssuanceChunk> split(CardIssuanceRequest request) {
+        List<CardIssuanceChunk> chunks = new ArrayList<>();
+        if (request.getAccountIds() != null) {
+            if (request.getFromAccountId() != null || request.getToAccountId() != null)
+                throw new BadRequestException("Either account ids or an account id range is required, not both");
+            if (request.getAccountIds().isEmpty() || request.getAccountIds().size() > maxAccounts)
+                throw new BadRequestException("Between 1 and " + maxAccounts + " accounts can be issued cards at once");
+            if (request.getAccountIds().stream().anyMatch(Objects::isNull))
+                throw new BadRequestException("Account ids must not be null");
+
+            Long[] accountIds = new TreeSet<>(request.getAccountIds()).toArray(new Long[0]);
+            for (int from = 0; from < accountIds.length; from += chunkSize)
+                chunks.add(CardIssuanceChunk.builder()
+                        .accountIds(Arrays.copyOfRange(accountIds, from, Math.min(accountIds.length, from + chunkSize)))
+                        .build());
+            return chunks;
+        }
+
+        Long from = request.getFromAccountId();
+        Long to = request.getToAccountId();
+        if (from == null || to == null || from < 1 || to < from)
+            throw new BadRequestException("Either account ids or an account id range with 1 <= from <= to is required");
+        if (to - from >= maxAccounts)
+            throw new BadRequestException("An account id range can span at most " + maxAccounts + " ids");
+
+        long span = to - from + 1;
+        for (long offset = 0; offset < span; offset += chunkSize)
+            chunks.add(CardIssuanceChunk.builder()
+                    .fromAccountId(from + offset)
+                    .toAccountId(from + Math.min(span, offset + chunkSize) - 1)
+                    .build());
+        return chunks;
+    }
+
+    private CardIssuanceJob findJob(Long jobId) {
+        return jobRepository.findById(jobId)
+                .orElseThrow(() -> new ResourceNotFoundException("Card issuance job", "id", String.valueOf(jobId)));
+    }
+
+    private String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    private CardIssuanceJobDTO mapToDTO(CardIssuanceJob job) {
+        return CardIssuanceJobDTO.builder()
+                .id(job.getId())
+                .cardType(job.getCardType().getDisplayName())
+                .cardAlias(job.getCardAlias())
+                .status(job.getStatus().name())
+                .totalAccounts(job.getTotalAccounts())
+                .totalChunks(job.getTotalChunks())
+                .completedChunks(job.getCompletedChunks())
+                .issued(job.getIssued())
+                .skippedMissing(job.getSkippedMissing())
+                .skippedIneligible(job.getSkippedIneligible())
+                .lastError(job.getLastError())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+}
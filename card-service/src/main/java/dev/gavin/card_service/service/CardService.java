@@ -1,42 +1,97 @@
 package dev.gavin.card_service.service;
 
 import dev.gavin.card_service.entity.Card;
+import dev.gavin.card_service.entity.CardEvent;
 import dev.gavin.card_service.enums.CardType;
+import dev.gavin.card_service.repository.CardBatchRepository;
+import dev.gavin.card_service.repository.CardEventRepository;
 import dev.gavin.card_service.repository.CardRepository;
 import dev.gavin.card_service.utils.CardNumberGenerator;
+import dev.gavin.card_service.utils.CardSearchTerms;
+import dev.gavin.card_service.utils.PanHasher;
 import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.dto.SliceDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.events.EventFeedSequencer;
 import dev.gavin.common.exception.BadRequestException;
 import dev.gavin.common.exception.InternalErrorException;
 import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.common.pagination.Keyset;
+import dev.gavin.common.pagination.KeysetField;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
+@Timed(value = "service.method", histogram = true)
 public class CardService {
+    static final int MAX_CARDS_PER_ACCOUNT = 2;
+
+    static final int MAX_ISSUE_ATTEMPTS = 3;
+
+    private static final Map<String, KeysetField<Card>> KEYSET_FIELDS = Map.of(
+            "id", KeysetField.of(Card::getId, Long::valueOf),
+            "cardAlias", KeysetField.of(Card::getCardAlias, value -> value),
+            "accountId", KeysetField.of(Card::getAccountId, Long::valueOf),
+            "createdAt", KeysetField.of(Card::getCreatedAt, LocalDateTime::parse));
+
     private final CardRepository cardRepository;
 
-    private final RestTemplate restTemplate;
+    private final AccountExistenceCache accountExistenceCache;
 
     private final CardNumberGenerator cardNumberGenerator;
 
+    private final PanAllocator panAllocator;
+
+    private final CardEventRepository cardEventRepository;
+
+    private final CardBatchRepository cardBatchRepository;
+
+    private final PanHasher panHasher;
 
-    @Value("${account-service.url}")
-    private String accountServiceUrl;
+    private final EventFeedSequencer cardEventSequencer;
 
 
-    public CardService(CardRepository cardRepository, RestTemplate restTemplate, CardNumberGenerator cardNumberGenerator) {
+    @Value("${card.events.max-batch-size:5000}")
+    private int maxEventBatchSize = 5000;
+
+    @Value("${card.by-accounts.max-ids:5000}")
+    private int maxAccountIds = 5000;
+
+    @Value("${card.by-accounts.chunk-size:1000}")
+    private int accountChunkSize = 1000;
+
+
+    public CardService(CardRepository cardRepository, AccountExistenceCache accountExistenceCache,
+                       CardNumberGenerator cardNumberGenerator, PanAllocator panAllocator,
+                       CardEventRepository cardEventRepository, CardBatchRepository cardBatchRepository,
+                       PanHasher panHasher, EventFeedSequencer cardEventSequencer) {
         this.cardRepository = cardRepository;
-        this.restTemplate = restTemplate;
+        this.accountExistenceCache = accountExistenceCache;
         this.cardNumberGenerator = cardNumberGenerator;
+        this.panAllocator = panAllocator;
+        this.cardEventRepository = cardEventRepository;
+        this.cardBatchRepository = cardBatchRepository;
+        this.panHasher = panHasher;
+        this.cardEventSequencer = cardEventSequencer;
     }
 
     public CardDTO getCardById(Long cardId, Long accountId, boolean showSensitiveData) {
@@ -47,9 +102,11 @@ public class CardService {
     }
 
     public Page<CardDTO> fetchCards(CardDTO filter, boolean showSensitiveData, Pageable pageable) {
+        PanSearch panSearch = panSearch(filter.getPan());
         Page<Card> cards = cardRepository.findWithFilters(
-                filter.getCardAlias() != null ? filter.getCardAlias().trim().toLowerCase() : null,
-                filter.getPan() != null ? filter.getPan().trim().toLowerCase() : null,
+                CardSearchTerms.likePattern(CardSearchTerms.normalizeAlias(filter.getCardAlias())),
+                panSearch.last4(),
+                panSearch.hash(),
                 filter.getCardType() != null ? CardType.fromString(filter.getCardType()) : null,
                 filter.getAccountId(),
                 pageable
@@ -58,6 +115,27 @@ public class CardService {
         return cards.map(card -> mapToDTO(card, showSensitiveData));
     }
 
+    public SliceDTO<CardDTO> scrollCards(CardDTO filter, boolean showSensitiveData, String sortBy, Sort.Direction direction,
+                                         int size, String cursor) {
+        Keyset.validateSize(size);
+        KeysetField<Card> field = Keyset.field(KEYSET_FIELDS, sortBy);
+        Specification<Card> after = Keyset.after(cursor, sortBy, direction, field);
+
+        PanSearch panSearch = panSearch(filter.getPan());
+        List<Card> cards = cardRepository.scrollWithFilters(
+                CardSearchTerms.likePattern(CardSearchTerms.normalizeAlias(filter.getCardAlias())),
+                panSearch.last4(),
+                panSearch.hash(),
+                filter.getCardType() != null ? CardType.fromString(filter.getCardType()) : null,
+                filter.getAccountId(),
+                after,
+                Keyset.sort(sortBy, direction),
+                size + 1
+        );
+
+        return Keyset.slice(cards, size, sortBy, direction, field, Card::getId, card -> mapToDTO(card, showSensitiveData));
+    }
+
     public CardDTO createCard(CardDTO cardDTO) {
         if (cardDTO.getAccountId() == null)
             throw new BadRequestException("Account ID is required");
@@ -66,50 +144,37 @@ public class CardService {
         if (cardDTO.getCardAlias() == null || cardDTO.getCardAlias().isBlank())
             throw new BadRequestException("Card alias is required");
 
-        boolean accountExists;
-        try {
-
-            String url = accountServiceUrl + "/api/accounts/exists/" + cardDTO.getAccountId();
-            accountExists = Boolean.TRUE.equals(restTemplate.getForObject(url, Boolean.class));
-        } catch (Exception e) {
-            throw new InternalErrorException("Failed to verify account existence: " + e.getMessage());
-        }
-
-        if (!accountExists) {
+        if (!accountExistenceCache.exists(cardDTO.getAccountId())) {
             throw new ResourceNotFoundException("Account", "id", String.valueOf(cardDTO.getAccountId()));
         }
 
-        // An account can have only 2 cards but of different types
-        int count = cardRepository.countByAccountId(cardDTO.getAccountId());
-        if (count >= 2)
-            throw new BadRequestException("Cannot create more than 2 cards for this account");
-
         CardType cardType = CardType.fromString(cardDTO.getCardType());
 
-        List<Card> existingCards = cardRepository.findByAccountIdAndCardType(cardDTO.getAccountId(), cardType);
-        if (!existingCards.isEmpty())
-            throw new BadRequestException("Account already has a card of type " + cardType.getDisplayName());
-
-        String pan = cardNumberGenerator.generatePAN();
-        String cvv = cardNumberGenerator.generateCVV();
-
-        //if exists, regenerate PAN and CVV
-        if (cardRepository.existsByPan(pan)) {
-            pan = cardNumberGenerator.generatePAN();
-            cvv = cardNumberGenerator.generateCVV();
-        }
-
         Card card = new Card();
         card.setCreatedAt(LocalDateTime.now());
         card.setCardAlias(cardDTO.getCardAlias());
         card.setAccountId(cardDTO.getAccountId());
         card.setCardType(cardType);
-        card.setPan(pan);
-        card.setCvv(cvv);
-
-        Card savedCard = cardRepository.save(card);
+        card.setCvv(cardNumberGenerator.generateCVV());
+
+        // An account can have only 2 cards but of different types. The insert enforces both through database
+        // constraints, so concurrent requests cannot both pass; the reason is only looked up once it refused.
+        for (int attempt = 1; ; attempt++) {
+            card.setPan(panAllocator.nextPan());
+            card.setPanHash(panHasher.hash(card.getPan()));
+            if (cardBatchRepository.insertIfAllowed(card, MAX_CARDS_PER_ACCOUNT))
+                break;
+
+            if (cardRepository.countByAccountId(card.getAccountId()) >= MAX_CARDS_PER_ACCOUNT)
+                throw new BadRequestException("Cannot create more than 2 cards for this account");
+            if (!cardRepository.findByAccountIdAndCardType(card.getAccountId(), cardType).isEmpty())
+                throw new BadRequestException("Account already has a card of type " + cardType.getDisplayName());
+            // Neither rule refused it, so the PAN clashed with one issued before PANs were allocated
+            if (attempt == MAX_ISSUE_ATTEMPTS)
+                throw new InternalErrorException("Failed to issue a card with a unique PAN");
+        }
 
-        return mapToDTO(savedCard, false);
+        return mapToDTO(card, false);
     }
 
     public CardDTO updateCardAlias(Long cardId, Long accountId, String newAlias) {
@@ -119,6 +184,7 @@ public class CardService {
         card.setCardAlias(newAlias);
         card.setUpdatedAt(LocalDateTime.now());
         Card updatedCard = cardRepository.save(card);
+        recordEvent(updatedCard, ReferenceEventType.UPDATED);
 
         return mapToDTO(updatedCard, false); // Don't show sensitive data on update
     }
@@ -128,6 +194,49 @@ public class CardService {
                 .orElseThrow(() -> new BadRequestException("Card not found or does not belong to this account"));
 
         cardRepository.delete(card);
+        recordEvent(card, ReferenceEventType.DELETED);
+    }
+
+    // Events committed since the last read are positioned first, in their own transaction, so the read sees them
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ReferenceEventDTO> getEventsAfter(long offset, int limit) {
+        if (limit < 1 || limit > maxEventBatchSize)
+            throw new BadRequestException("Limit must be between 1 and " + maxEventBatchSize);
+
+        cardEventSequencer.sequence();
+        return cardEventRepository.findByPositionGreaterThanOrderByPositionAsc(offset, PageRequest.of(0, limit))
+                .stream()
+                .map(event -> new ReferenceEventDTO(event.getPosition(), event.getType(), event.getAccountId(),
+                        event.getCardId(), event.getCreatedAt()))
+                .toList();
+    }
+
+    public long getHeadEventOffset() {
+        return cardEventRepository.findHeadOffset();
+    }
+
+    private void recordEvent(Card card, ReferenceEventType type) {
+        cardEventRepository.save(CardEvent.builder()
+                .accountId(card.getAccountId())
+                .cardId(card.getId())
+                .type(type)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    // A PAN is searched by its last 4 digits or, in full, by its keyed hash; both columns are indexed
+    private PanSearch panSearch(String pan) {
+        String digits = CardSearchTerms.normalizePan(pan);
+        if (digits == null)
+            return new PanSearch(null, null);
+        if (digits.length() == 4)
+            return new PanSearch(digits, null);
+        if (digits.length() >= 13 && digits.length() <= 19)
+            return new PanSearch(CardSearchTerms.last4(digits), panHasher.hash(digits));
+        throw new BadRequestException("PAN search takes the last 4 digits or the full card number");
+    }
+
+    private record PanSearch(String last4, String hash) {
     }
 
     private CardDTO mapToDTO(Card card, boolean showSensitiveData) {
@@ -168,4 +277,50 @@ public class CardService {
     public Integer getCardCountByAccountId(Long accountId) {
         return cardRepository.countByAccountId(accountId);
     }
+
+    // Every requested account is present in the result, with 0 when it has no cards
+    public Map<Long, Long> getCardCountsByAccountIds(List<Long> accountIds) {
+        if (accountIds == null || accountIds.isEmpty())
+            return Map.of();
+
+        List<Long> distinctIds = validateAccountIds(accountIds);
+        Map<Long, Long> counts = new HashMap<>();
+        distinctIds.forEach(accountId -> counts.put(accountId, 0L));
+        for (List<Long> chunk : chunks(distinctIds)) {
+            for (Object[] row : cardRepository.countByAccountIds(chunk))
+                counts.put((Long) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    // Every requested account is present in the result, with an empty list when it has no cards. PANs and
+    // CVVs are always masked.
+    public Map<Long, List<CardDTO>> getCardsByAccountIds(List<Long> accountIds) {
+        if (accountIds == null || accountIds.isEmpty())
+            return Map.of();
+
+        List<Long> distinctIds = validateAccountIds(accountIds);
+        Map<Long, List<CardDTO>> cards = new LinkedHashMap<>();
+        distinctIds.forEach(accountId -> cards.put(accountId, new ArrayList<>()));
+        for (List<Long> chunk : chunks(distinctIds)) {
+            for (Card card : cardRepository.findByAccountIdInOrderByAccountIdAscIdAsc(chunk))
+                cards.get(card.getAccountId()).add(mapToDTO(card, false));
+        }
+        return cards;
+    }
+
+    private List<Long> validateAccountIds(List<Long> accountIds) {
+        List<Long> distinctIds = accountIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctIds.size() > maxAccountIds)
+            throw new BadRequestException("Cannot look up cards for more than " + maxAccountIds + " accounts at once");
+        return distinctIds;
+    }
+
+    // One query per chunk keeps the IN lists, and the rows each query returns, bounded
+    private List<List<Long>> chunks(List<Long> accountIds) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < accountIds.size(); from += accountChunkSize)
+            chunks.add(accountIds.subList(from, Math.min(from + accountChunkSize, accountIds.size())));
+        return chunks;
+    }
 }
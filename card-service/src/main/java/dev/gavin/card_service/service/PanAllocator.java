@@ -0,0 +1,124 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.card_service.repository.PanBlockRepository;
+import dev.gavin.card_service.repository.PanBlockRepository.PanBlock;
+import dev.gavin.card_service.utils.AccountNumberPermutation;
+import dev.gavin.card_service.utils.Luhn;
+import dev.gavin.common.exception.InternalErrorException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Issues Luhn-valid PANs from the configured BIN ranges without asking the database whether a number is taken.
+// The ranges are laid end to end in one space of positions, each position is handed out once (blocks of them
+// are reserved from PanBlockRepository and used up in memory), and a keyed permutation turns a position into
+// the account digits so that consecutive cards do not get consecutive numbers. The BIN list may only be
+// appended to, and the PAN length and permutation key must not change, once cards have been issued. The key
+// has no default outside the local profile, since numbers permuted under a known key are easy to enumerate.
+@Service
+public class PanAllocator {
+
+    private final PanBlockRepository panBlockRepository;
+
+    // Reserving a block goes to the database while holding this, so it is a lock rather than a monitor, which
+    // would pin the carrier of every virtual thread waiting on it
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private List<PanRange> ranges;
+
+    private long next;
+
+    private long end;
+
+    @Value("${card.pan.bins:400000}")
+    private List<String> bins = List.of("400000");
+
+    @Value("${card.pan.length:16}")
+    private int panLength = 16;
+
+    @Value("${card.pan.permutation-key:}")
+    private Long permutationKey;
+
+    public PanAllocator(PanBlockRepository panBlockRepository) {
+        this.panBlockRepository = panBlockRepository;
+    }
+
+    @PostConstruct
+    void init() {
+        if (panLength < 13 || panLength > 19)
+            throw new IllegalStateException("PAN length must be between 13 and 19");
+        if (permutationKey == null)
+            throw new IllegalStateException("card.pan.permutation-key is not set; provide it through CARD_PAN_PERMUTATION_KEY");
+
+        List<PanRange> configured = new ArrayList<>();
+        long start = 0L;
+        for (String bin : bins) {
+            String prefix = bin.trim();
+            if (!prefix.matches("\\d{6,8}"))
+                throw new IllegalStateException("BIN must be 6 to 8 digits: " + bin);
+
+            AccountNumberPermutation permutation = new AccountNumberPermutation(panLength - prefix.length() - 1, permutationKey);
+            configured.add(new PanRange(prefix, start, permutation));
+            start += permutation.domain();
+        }
+        if (configured.isEmpty())
+            throw new IllegalStateException("At least one BIN is required");
+        ranges = List.copyOf(configured);
+    }
+
+    public String nextPan() {
+        lock.lock();
+        try {
+            if (next >= end)
+                reserveBlock();
+            return toPan(next++);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<String> nextPans(int count) {
+        List<String> pans = new ArrayList<>(count);
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (next >= end)
+                    reserveBlock();
+                pans.add(toPan(next++));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return pans;
+    }
+
+    private void reserveBlock() {
+        PanBlock block = panBlockRepository.nextBlock();
+        next = block.start();
+        end = block.end();
+    }
+
+    private String toPan(long position) {
+        for (PanRange range : ranges) {
+            long offset = position - range.start();
+            if (offset >= range.permutation().domain())
+                continue;
+
+            String accountNumber = Long.toString(range.permutation().apply(offset));
+            int accountDigits = panLength - range.bin().length() - 1;
+            StringBuilder pan = new StringBuilder(panLength)
+                    .append(range.bin())
+                    .append("0".repeat(accountDigits - accountNumber.length()))
+                    .append(accountNumber);
+            return pan.append(Luhn.checkDigit(pan)).toString();
+        }
+        throw new InternalErrorException("All configured BIN ranges are exhausted");
+    }
+
+    private record PanRange(String bin, long start, AccountNumberPermutation permutation) {
+    }
+}
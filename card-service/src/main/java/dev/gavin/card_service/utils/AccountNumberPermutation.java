@@ -0,0 +1,65 @@
+package dev.gavin.card_service.utils;
+
+// Keyed bijection on [0, 10^digits). A balanced Feistel network runs over the smallest even number of bits
+// that covers the domain, and results that land outside the domain are encrypted again (cycle walking), which
+// keeps the mapping one-to-one. Distinct inputs therefore always give distinct account numbers.
+public final class AccountNumberPermutation {
+    private static final int ROUNDS = 8;
+
+    private final long domain;
+
+    private final int halfBits;
+
+    private final long halfMask;
+
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public AccountNumberPermutation(int digits, long key) {
+        if (digits < 1 || digits > 18)
+            throw new IllegalArgumentException("Digits must be between 1 and 18");
+
+        long size = 1L;
+        for (int i = 0; i < digits; i++)
+            size *= 10L;
+        domain = size;
+
+        int bits = 64 - Long.numberOfLeadingZeros(domain - 1);
+        halfBits = Math.max(1, (bits + 1) / 2);
+        halfMask = (1L << halfBits) - 1;
+        for (int round = 0; round < ROUNDS; round++)
+            roundKeys[round] = mix(key + (round + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    public long domain() {
+        return domain;
+    }
+
+    public long apply(long value) {
+        if (value < 0 || value >= domain)
+            throw new IllegalArgumentException("Value must be between 0 and " + (domain - 1));
+
+        long result = value;
+        do {
+            result = encrypt(result);
+        } while (result >= domain);
+        return result;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (long roundKey : roundKeys) {
+            long next = left ^ (mix(right ^ roundKey) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -8,14 +8,6 @@ import java.security.SecureRandom;
 public class CardNumberGenerator {
     private static final SecureRandom RANDOM = new SecureRandom();
 
-    public String generatePAN() {
-        StringBuilder pan = new StringBuilder();
-        for (int i = 0; i < 16; i++) {
-            pan.append(RANDOM.nextInt(10));
-        }
-        return pan.toString();
-    }
-
     public String generateCVV() {
         StringBuilder cvv = new StringBuilder();
         for (int i = 0; i < 3; i++) {
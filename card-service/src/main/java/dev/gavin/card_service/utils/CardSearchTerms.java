@@ -0,0 +1,50 @@
+package dev.gavin.card_service.utils;
+
+import dev.gavin.common.exception.BadRequestException;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public final class CardSearchTerms {
+    private static final Pattern PAN_SEPARATORS = Pattern.compile("[\\s-]+");
+
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+
+    private CardSearchTerms() {
+    }
+
+    // Stored and searched forms of aliases are trimmed and lowercase, so "travel" matches "  My Travel Card"
+    public static String normalizeAlias(String alias) {
+        if (alias == null)
+            return null;
+
+        String normalized = alias.trim().toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    // A normalized alias as a LIKE pattern that matches it literally, for use with ESCAPE '\'. Without this a
+    // "%" or "_" typed into the search would act as a wildcard. An absent alias stays null.
+    public static String likePattern(String alias) {
+        if (alias == null)
+            return null;
+
+        return alias.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Digits only, so "4000 0012 3456 7899" and "4000-0012-3456-7899" are the same card number
+    public static String normalizePan(String pan) {
+        if (pan == null)
+            return null;
+
+        String normalized = PAN_SEPARATORS.matcher(pan).replaceAll("");
+        if (normalized.isEmpty())
+            return null;
+        if (!DIGITS.matcher(normalized).matches())
+            throw new BadRequestException("PAN must contain digits only");
+        return normalized;
+    }
+
+    public static String last4(String pan) {
+        return pan == null || pan.length() < 4 ? null : pan.substring(pan.length() - 4);
+    }
+}
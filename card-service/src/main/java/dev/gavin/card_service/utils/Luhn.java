@@ -0,0 +1,32 @@
+package dev.gavin.card_service.utils;
+
+// Mod 10 check digit carried as the last digit of every PAN
+public final class Luhn {
+
+    private Luhn() {
+    }
+
+    // Check digit to append to the given digits
+    public static int checkDigit(CharSequence digits) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9)
+                    digit -= 9;
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    public static boolean isValid(String number) {
+        if (number == null || number.length() < 2 || !number.chars().allMatch(Character::isDigit))
+            return false;
+
+        return checkDigit(number.subSequence(0, number.length() - 1)) == number.charAt(number.length() - 1) - '0';
+    }
+}
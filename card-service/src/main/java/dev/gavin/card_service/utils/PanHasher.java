@@ -0,0 +1,38 @@
+package dev.gavin.card_service.utils;
+
+import dev.gavin.common.exception.InternalErrorException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+// Keyed hash of a full PAN, stored next to the card so an exact card number lookup is an index seek without
+// the PAN itself being indexed. Changing the key requires the stored hashes to be recomputed. There is no default
+// key outside the local profile, since hashes under a key checked into the repository are easy to reverse.
+@Component
+public class PanHasher {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public PanHasher(@Value("${card.pan.hash-key:}") String key) {
+        if (key == null || key.isBlank())
+            throw new IllegalStateException("card.pan.hash-key is not set; provide it through CARD_PAN_HASH_KEY");
+        this.key = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public String hash(String pan) {
+        try {
+            // Mac instances are not thread-safe, and creating one is cheap next to the query it feeds
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return HexFormat.of().formatHex(mac.doFinal(pan.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new InternalErrorException("Failed to hash PAN", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.exception.InternalErrorException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountExistenceCacheTest {
+
+    private static final String EXISTS_URL = "http://account-service/api/accounts/exists/";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AccountExistenceCache accountExistenceCache;
+
+    @BeforeEach
+    void setUp() {
+        accountExistenceCache = new AccountExistenceCache(restTemplate, meterRegistry);
+        ReflectionTestUtils.setField(accountExistenceCache, "accountServiceUrl", "http://account-service");
+        ReflectionTestUtils.setField(accountExistenceCache, "lastOffset", 0L);
+    }
+
+    @Test
+    void exists_Repeated_CallsAccountServiceOnce() {
+        // Given
+        when(restTemplate.getForObject(EXISTS_URL + 1, Boolean.class)).thenReturn(true);
+
+        // When
+        boolean first = accountExistenceCache.exists(1L);
+        boolean second = accountExistenceCache.exists(1L);
+
+        // Then
+        assertTrue(first);
+        assertTrue(second);
+        verify(restTemplate, times(1)).getForObject(EXISTS_URL + 1, Boolean.class);
+        assertEquals(1.0, requests("hit"));
+        assertEquals(1.0, requests("miss"));
+    }
+
+    @Test
+    void exists_MissingAccount_ExpiresOnNegativeTtl() {
+        // Given
+        ReflectionTestUtils.setField(accountExistenceCache, "negativeTtl", Duration.ZERO);
+        when(restTemplate.getForObject(EXISTS_URL + 2, Boolean.class)).thenReturn(false, true);
+
+        // When
+        boolean first = accountExistenceCache.exists(2L);
+        boolean second = accountExistenceCache.exists(2L);
+
+        // Then
+        assertFalse(first);
+        assertTrue(second);
+        assertEquals(1.0, evictions("expired"));
+    }
+
+    @Test
+    void exists_ConcurrentMisses_ShareOneRemoteCall() throws Exception {
+        // Given a remote call that blocks until the second lookup is waiting on it
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(restTemplate.getForObject(EXISTS_URL + 3, Boolean.class)).thenAnswer(invocation -> {
+            called.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return true;
+        });
+
+        // When
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> accountExistenceCache.exists(3L));
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> accountExistenceCache.exists(3L));
+        while (requests("coalesced") < 1.0)
+            Thread.onSpinWait();
+        release.countDown();
+
+        // Then
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        verify(restTemplate, times(1)).getForObject(EXISTS_URL + 3, Boolean.class);
+    }
+
+    @Test
+    void pollEvents_DeletedAccount_InvalidatesEntry() {
+        // Given
+        when(restTemplate.getForObject(EXISTS_URL + 4, Boolean.class)).thenReturn(true, false);
+        accountExistenceCache.exists(4L);
+        when(restTemplate.getForObject(startsWith("http://account-service/api/accounts/events?after=0"), eq(ReferenceEventDTO[].class)))
+                .thenReturn(new ReferenceEventDTO[]{
+                        new ReferenceEventDTO(5L, ReferenceEventType.DELETED, 10L, 4L, LocalDateTime.now())});
+
+        // When
+        accountExistenceCache.pollEvents();
+
+        // Then
+        assertFalse(accountExistenceCache.exists(4L));
+        assertEquals(1.0, evictions("invalidated"));
+        assertEquals(5L, ReflectionTestUtils.getField(accountExistenceCache, "lastOffset"));
+    }
+
+    @Test
+    void exists_OverMaxEntries_EvictsOldest() {
+        // Given
+        ReflectionTestUtils.setField(accountExistenceCache, "maxEntries", 1);
+        when(restTemplate.getForObject(startsWith(EXISTS_URL), eq(Boolean.class))).thenReturn(true);
+
+        // When
+        accountExistenceCache.exists(5L);
+        accountExistenceCache.exists(6L);
+        accountExistenceCache.exists(5L);
+
+        // Then
+        verify(restTemplate, times(2)).getForObject(EXISTS_URL + 5, Boolean.class);
+        assertEquals(2.0, evictions("size"));
+        assertEquals(1.0, meterRegistry.get(AccountExistenceCache.SIZE_METRIC).gauge().value());
+    }
+
+    @Test
+    void exists_AccountServiceFailure_ThrowsAndCachesNothing() {
+        // Given
+        when(restTemplate.getForObject(EXISTS_URL + 7, Boolean.class))
+                .thenThrow(new RuntimeException("Connection refused"))
+                .thenReturn(true);
+
+        // When & Then
+        assertThrows(InternalErrorException.class, () -> accountExistenceCache.exists(7L));
+        assertTrue(accountExistenceCache.exists(7L));
+    }
+
+    @Test
+    void exists_BeforeFollowingEvents_DoesNotCache() {
+        // Given
+        ReflectionTestUtils.setField(accountExistenceCache, "lastOffset", null);
+        when(restTemplate.getForObject(EXISTS_URL + 8, Boolean.class)).thenReturn(true);
+
+        // When
+        accountExistenceCache.exists(8L);
+        accountExistenceCache.exists(8L);
+
+        // Then
+        verify(restTemplate, times(2)).getForObject(EXISTS_URL + 8, Boolean.class);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get(AccountExistenceCache.REQUESTS_METRIC).tag("result", result).counter().count();
+    }
+
+    private double evictions(String cause) {
+        return meterRegistry.get(AccountExistenceCache.EVICTIONS_METRIC).tag("cause", cause).counter().count();
+    }
+}
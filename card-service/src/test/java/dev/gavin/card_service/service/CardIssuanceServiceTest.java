@@ -0,0 +1,289 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.card_service.dto.CardIssuanceRequest;
+import dev.gavin.card_service.entity.Card;
+import dev.gavin.card_service.entity.CardIssuanceChunk;
+import dev.gavin.card_service.entity.CardIssuanceJob;
+import dev.gavin.card_service.enums.CardIssuanceStatus;
+import dev.gavin.card_service.enums.CardType;
+import dev.gavin.card_service.repository.CardBatchRepository;
+import dev.gavin.card_service.repository.CardIssuanceChunkRepository;
+import dev.gavin.card_service.repository.CardIssuanceJobRepository;
+import dev.gavin.card_service.repository.CardRepository;
+import dev.gavin.card_service.utils.CardNumberGenerator;
+import dev.gavin.card_service.utils.PanHasher;
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.common.exception.ConflictException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardIssuanceServiceTest {
+
+    private static final Long JOB_ID = 9L;
+
+    @Mock
+    private CardIssuanceJobRepository jobRepository;
+
+    @Mock
+    private CardIssuanceChunkRepository chunkRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private CardBatchRepository cardBatchRepository;
+
+    @Mock
+    private PanAllocator panAllocator;
+
+    @Mock
+    private CardNumberGenerator cardNumberGenerator;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private final PanHasher panHasher = new PanHasher("test-key");
+
+    private final List<CardIssuanceChunk> savedChunks = new ArrayList<>();
+
+    private CardIssuanceService cardIssuanceService;
+
+    @BeforeEach
+    void setUp() {
+        cardIssuanceService = issuanceService(Runnable::run);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void startJob_AccountList_IssuesEligibleAccountsChunkByChunk() {
+        // Given accounts 1 to 3 in chunks of 2, where account 2 does not exist and account 3 already has a card
+        ReflectionTestUtils.setField(cardIssuanceService, "chunkSize", 2);
+        stubJobAndChunks();
+        when(chunkRepository.findPendingIds(JOB_ID)).thenReturn(List.of(100L, 101L));
+        when(chunkRepository.findById(anyLong())).thenAnswer(invocation -> Optional.of(chunk(invocation.getArgument(0))));
+        when(chunkRepository.lockPending(anyLong())).thenAnswer(invocation -> Optional.of(chunk(invocation.getArgument(0))));
+        when(restTemplate.postForObject(eq("http://account-service/api/accounts/exists/batch?format=bitset"),
+                any(ExistenceRequestDTO.class), eq(ExistenceDTO.class)))
+                .thenReturn(existence(new int[]{0}));
+        when(cardRepository.findIneligibleAccountIds(anyCollection(), eq(CardType.VIRTUAL), eq(2L)))
+                .thenAnswer(invocation -> ((Collection<Long>) invocation.getArgument(0)).contains(3L) ? List.of(3L) : List.of());
+        when(cardNumberGenerator.generateCVV()).thenReturn("999");
+        when(panAllocator.nextPans(1)).thenReturn(List.of("4000001234567899"));
+        when(cardBatchRepository.insertAllIfAllowed(anyList(), eq(2), eq(500))).thenReturn(List.of());
+        when(chunkRepository.countByJobIdAndCompletedFalse(JOB_ID)).thenReturn(0L);
+
+        // When
+        cardIssuanceService.startJob(request(List.of(3L, 1L, 2L, 2L)));
+
+        // Then
+        assertEquals(2, savedChunks.size());
+        assertArrayEquals(new Long[]{1L, 2L}, savedChunks.get(0).getAccountIds());
+        assertArrayEquals(new Long[]{3L}, savedChunks.get(1).getAccountIds());
+
+        verify(cardBatchRepository).insertAllIfAllowed(argThat(cards -> cards.size() == 1
+                && cards.get(0).getAccountId().equals(1L)
+                && cards.get(0).getPanHash().equals(panHasher.hash("4000001234567899"))), eq(2), eq(500));
+        verify(jobRepository).recordChunk(eq(JOB_ID), eq(1L), eq(1L), eq(0L), any());
+        verify(jobRepository).recordChunk(eq(JOB_ID), eq(0L), eq(0L), eq(1L), any());
+        verify(jobRepository).updateStatus(eq(JOB_ID), eq(CardIssuanceStatus.COMPLETED), isNull(), any(), any());
+        assertTrue(savedChunks.stream().allMatch(CardIssuanceChunk::isCompleted));
+    }
+
+    @Test
+    void startJob_RefusedInsert_RetriesWithNewPans() {
+        // Given
+        stubJobAndChunks();
+        when(chunkRepository.findPendingIds(JOB_ID)).thenReturn(List.of(100L));
+        when(chunkRepository.findById(100L)).thenAnswer(invocation -> Optional.of(chunk(100L)));
+        when(chunkRepository.lockPending(100L)).thenAnswer(invocation -> Optional.of(chunk(100L)));
+        when(restTemplate.postForObject(anyString(), any(ExistenceRequestDTO.class), eq(ExistenceDTO.class)))
+                .thenReturn(existence(new int[]{0}));
+        when(cardRepository.findIneligibleAccountIds(anyCollection(), eq(CardType.VIRTUAL), eq(2L))).thenReturn(List.of());
+        when(panAllocator.nextPans(1)).thenReturn(List.of("4000001234567899"), List.of("4000009876543217"));
+        when(cardBatchRepository.insertAllIfAllowed(anyList(), eq(2), eq(500)))
+                .thenAnswer(invocation -> new ArrayList<Card>(invocation.getArgument(0)))
+                .thenReturn(List.of());
+        when(chunkRepository.countByJobIdAndCompletedFalse(JOB_ID)).thenReturn(0L);
+
+        // When
+        cardIssuanceService.startJob(request(List.of(1L)));
+
+        // Then
+        verify(panAllocator, times(2)).nextPans(1);
+        verify(jobRepository).recordChunk(eq(JOB_ID), eq(1L), eq(0L), eq(0L), any());
+    }
+
+    @Test
+    void startJob_RefusedForCardLimit_DoesNotRetry() {
+        // Given an account that gains its second card between the check and the insert
+        stubJobAndChunks();
+        when(chunkRepository.findPendingIds(JOB_ID)).thenReturn(List.of(100L));
+        when(chunkRepository.findById(100L)).thenAnswer(invocation -> Optional.of(chunk(100L)));
+        when(chunkRepository.lockPending(100L)).thenAnswer(invocation -> Optional.of(chunk(100L)));
+        when(restTemplate.postForObject(anyString(), any(ExistenceRequestDTO.class), eq(ExistenceDTO.class)))
+                .thenReturn(existence(new int[]{0}));
+        when(cardRepository.findIneligibleAccountIds(anyCollection(), eq(CardType.VIRTUAL), eq(2L)))
+                .thenReturn(List.of(), List.of(1L));
+        when(panAllocator.nextPans(1)).thenReturn(List.of("4000001234567899"));
+        when(cardBatchRepository.insertAllIfAllowed(anyList(), eq(2), eq(500)))
+                .thenAnswer(invocation -> new ArrayList<Card>(invocation.getArgument(0)));
+        when(chunkRepository.countByJobIdAndCompletedFalse(JOB_ID)).thenReturn(0L);
+
+        // When
+        cardIssuanceService.startJob(request(List.of(1L)));
+
+        // Then
+        verify(panAllocator, times(1)).nextPans(1);
+        verify(jobRepository).recordChunk(eq(JOB_ID), eq(0L), eq(0L), eq(1L), any());
+    }
+
+    @Test
+    void startJob_AccountServiceDown_LeavesChunkPendingAndFailsJob() {
+        // Given
+        stubJobAndChunks();
+        when(chunkRepository.findPendingIds(JOB_ID)).thenReturn(List.of(100L));
+        when(chunkRepository.findById(100L)).thenAnswer(invocation -> Optional.of(chunk(100L)));
+        when(restTemplate.postForObject(anyString(), any(ExistenceRequestDTO.class), eq(ExistenceDTO.class)))
+                .thenThrow(new RuntimeException("Connection refused"));
+        when(chunkRepository.countByJobIdAndCompletedFalse(JOB_ID)).thenReturn(1L);
+        when(chunkRepository.lockIdlePendingIds(JOB_ID)).thenReturn(List.of(100L));
+
+        // When
+        cardIssuanceService.startJob(request(List.of(1L)));
+
+        // Then
+        verify(chunkRepository, never()).lockPending(anyLong());
+        verify(jobRepository, never()).recordChunk(anyLong(), anyLong(), anyLong(), anyLong(), any());
+        verify(jobRepository).recordError(eq(JOB_ID), contains("Chunk 100"), any());
+        verify(jobRepository).markFailed(eq(JOB_ID), anyString(), any());
+    }
+
+    @Test
+    void startJob_ChunkLockedElsewhere_LeavesJobRunning() {
+        // Given a chunk another instance is issuing
+        stubJobAndChunks();
+        when(chunkRepository.findPendingIds(JOB_ID)).thenReturn(List.of(100L));
+        when(chunkRepository.findById(100L)).thenAnswer(invocation -> Optional.of(chunk(100L)));
+        when(restTemplate.postForObject(anyString(), any(ExistenceRequestDTO.class), eq(ExistenceDTO.class)))
+                .thenReturn(existence(new int[]{0}));
+        when(chunkRepository.lockPending(100L)).thenReturn(Optional.empty());
+        when(chunkRepository.countByJobIdAndCompletedFalse(JOB_ID)).thenReturn(1L);
+        when(chunkRepository.lockIdlePendingIds(JOB_ID)).thenReturn(List.of());
+
+        // When
+        cardIssuanceService.startJob(request(List.of(1L)));
+
+        // Then
+        verify(jobRepository, never()).recordError(anyLong(), anyString(), any());
+        verify(jobRepository, never()).updateStatus(anyLong(), any(), any(), any(), any());
+        verify(jobRepository, never()).markFailed(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void startJob_AccountRange_SplitsIntoRangeChunks() {
+        // Given a job whose workers never get to run
+        cardIssuanceService = issuanceService(task -> {
+        });
+        ReflectionTestUtils.setField(cardIssuanceService, "chunkSize", 2);
+        stubJobAndChunks();
+
+        // When
+        cardIssuanceService.startJob(CardIssuanceRequest.builder()
+                .fromAccountId(1L).toAccountId(5L).cardType("virtual").cardAlias("Launch").build());
+
+        // Then
+        assertEquals(3, savedChunks.size());
+        assertEquals(List.of(1L, 3L, 5L), savedChunks.stream().map(CardIssuanceChunk::getFromAccountId).toList());
+        assertEquals(List.of(2L, 4L, 5L), savedChunks.stream().map(CardIssuanceChunk::getToAccountId).toList());
+        assertTrue(savedChunks.stream().allMatch(chunk -> chunk.getAccountIds() == null));
+    }
+
+    @Test
+    void startJob_ListAndRange_ThrowsBadRequest() {
+        // Given
+        CardIssuanceRequest request = request(List.of(1L));
+        request.setFromAccountId(1L);
+        request.setToAccountId(2L);
+
+        // When & Then
+        assertThrows(BadRequestException.class, () -> cardIssuanceService.startJob(request));
+        verifyNoInteractions(jobRepository);
+    }
+
+    @Test
+    void resumeJob_Completed_ThrowsConflict() {
+        // Given
+        when(jobRepository.findById(JOB_ID)).thenReturn(Optional.of(CardIssuanceJob.builder()
+                .id(JOB_ID).cardType(CardType.VIRTUAL).status(CardIssuanceStatus.COMPLETED).build()));
+
+        // When & Then
+        assertThrows(ConflictException.class, () -> cardIssuanceService.resumeJob(JOB_ID));
+    }
+
+    private void stubJobAndChunks() {
+        when(jobRepository.save(any(CardIssuanceJob.class))).thenAnswer(invocation -> {
+            CardIssuanceJob job = invocation.getArgument(0);
+            job.setId(JOB_ID);
+            return job;
+        });
+        when(chunkRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<CardIssuanceChunk> chunks = invocation.getArgument(0);
+            for (CardIssuanceChunk chunk : chunks) {
+                chunk.setId(100L + savedChunks.size());
+                savedChunks.add(chunk);
+            }
+            return chunks;
+        });
+    }
+
+    private CardIssuanceChunk chunk(Long id) {
+        return savedChunks.get((int) (id - 100L));
+    }
+
+    private static ExistenceDTO existence(int[] existingIndexes) {
+        BitSet bits = new BitSet();
+        for (int index : existingIndexes)
+            bits.set(index);
+        return new ExistenceDTO(0, existingIndexes.length, Base64.getEncoder().encodeToString(bits.toByteArray()), null);
+    }
+
+    private static CardIssuanceRequest request(List<Long> accountIds) {
+        return CardIssuanceRequest.builder()
+                .accountIds(accountIds)
+                .cardType("virtual")
+                .cardAlias("Launch")
+                .build();
+    }
+
+    private CardIssuanceService issuanceService(Executor executor) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        CardIssuanceService service = new CardIssuanceService(jobRepository, chunkRepository, cardRepository,
+                cardBatchRepository, panAllocator, panHasher, cardNumberGenerator, restTemplate, transactionTemplate,
+                new BackgroundTasks(executor));
+        ReflectionTestUtils.setField(service, "accountServiceUrl", "http://account-service");
+        return service;
+    }
+}
@@ -1,29 +1,45 @@
 package dev.gavin.card_service.service;
 
 import dev.gavin.card_service.entity.Card;
+import dev.gavin.card_service.entity.CardEvent;
 import dev.gavin.card_service.enums.CardType;
+import dev.gavin.card_service.repository.CardBatchRepository;
+import dev.gavin.card_service.repository.CardEventRepository;
 import dev.gavin.card_service.repository.CardRepository;
 import dev.gavin.card_service.utils.CardNumberGenerator;
+import dev.gavin.card_service.utils.PanHasher;
 import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.dto.SliceDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.events.EventFeedSequencer;
 import dev.gavin.common.exception.BadRequestException;
 import dev.gavin.common.exception.InternalErrorException;
 import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.common.pagination.KeysetCursor;
+import jakarta.persistence.PreUpdate;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,11 +50,26 @@ class CardServiceTest {
     private CardRepository cardRepository;
 
     @Mock
-    private RestTemplate restTemplate;
+    private AccountExistenceCache accountExistenceCache;
 
     @Mock
     private CardNumberGenerator cardNumberGenerator;
 
+    @Mock
+    private PanAllocator panAllocator;
+
+    @Mock
+    private CardBatchRepository cardBatchRepository;
+
+    @Spy
+    private PanHasher panHasher = new PanHasher("test-key");
+
+    @Mock
+    private CardEventRepository cardEventRepository;
+
+    @Mock
+    private EventFeedSequencer cardEventSequencer;
+
     @InjectMocks
     private CardService cardService;
 
@@ -50,8 +81,6 @@ class CardServiceTest {
 
     @BeforeEach
     void setUp() {
-        ReflectionTestUtils.setField(cardService, "accountServiceUrl", "http://localhost:8080");
-
         testvirtualCard = new Card();
         testvirtualCard.setId(CARD_ID);
         testvirtualCard.setAccountId(ACCOUNT_ID);
@@ -139,8 +168,10 @@ class CardServiceTest {
         card.setCvv("123");
 
         Page<Card> cardPage = new org.springframework.data.domain.PageImpl<>(Collections.singletonList(card));
+        String panHash = panHasher.hash("1234567890123456");
         when(cardRepository.findWithFilters(
-                anyString(), anyString(), any(CardType.class), any(Long.class), any(Pageable.class)
+                eq("test alias"), eq("3456"), eq(panHash), any(CardType.class),
+                any(Long.class), any(Pageable.class)
         )).thenReturn(cardPage);
 
         // When
@@ -158,41 +189,107 @@ class CardServiceTest {
     }
 
     @Test
-    void testCreateCard_WithValidInput_ReturnsCreatedCardDTO() {
+    void testScrollCards_WithLast4_SearchesLast4Column() {
         // Given
-        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenReturn(true);
-        when(cardRepository.countByAccountId(ACCOUNT_ID)).thenReturn(0);
-        when(cardRepository.findByAccountIdAndCardType(ACCOUNT_ID, CardType.VIRTUAL)).thenReturn(Collections.emptyList());
-        when(cardNumberGenerator.generatePAN()).thenReturn("9999888877776666");
-        when(cardNumberGenerator.generateCVV()).thenReturn("999");
-        when(cardRepository.existsByPan(anyString())).thenReturn(false);
+        CardDTO filter = CardDTO.builder().pan(" 3456 ").build();
+        when(cardRepository.scrollWithFilters(isNull(), eq("3456"), isNull(), isNull(), isNull(), isNull(), any(Sort.class), eq(11)))
+                .thenReturn(List.of(testvirtualCard));
+
+        // When
+        SliceDTO<CardDTO> result = cardService.scrollCards(filter, false, "id", Sort.Direction.ASC, 10, null);
+
+        // Then
+        assertEquals(1, result.getContent().size());
+    }
+
+    @Test
+    void testFetchCards_WithPartialPan_ThrowsBadRequest() {
+        // Given
+        CardDTO filter = CardDTO.builder().pan("123456").build();
+
+        // When & Then
+        BadRequestException exception = assertThrows(BadRequestException.class,
+                () -> cardService.fetchCards(filter, false, org.springframework.data.domain.PageRequest.of(0, 10)));
+        assertEquals("PAN search takes the last 4 digits or the full card number", exception.getMessage());
+    }
+
+    @Test
+    void testScrollCards_WithMoreRows_ReturnsCursorForNextSlice() {
+        // Given
+        CardDTO filter = CardDTO.builder().accountId(ACCOUNT_ID).build();
+        when(cardRepository.scrollWithFilters(isNull(), isNull(), isNull(), isNull(), eq(ACCOUNT_ID), isNull(), any(Sort.class), eq(2)))
+                .thenReturn(List.of(testvirtualCard, testPhysicalCard));
 
-        Card savedCard = new Card();
-        savedCard.setId(3L);
-        savedCard.setAccountId(ACCOUNT_ID);
-        savedCard.setCardAlias("New Test Card");
-        savedCard.setCardType(CardType.VIRTUAL);
-        savedCard.setPan("9999888877776666");
-        savedCard.setCvv("999");
+        // When
+        SliceDTO<CardDTO> result = cardService.scrollCards(filter, false, "id", Sort.Direction.ASC, 1, null);
 
-        when(cardRepository.save(any(Card.class))).thenReturn(savedCard);
+        // Then
+        assertEquals(1, result.getContent().size());
+        assertTrue(result.isHasNext());
+        KeysetCursor cursor = KeysetCursor.decode(result.getNextCursor());
+        assertEquals(CARD_ID, cursor.getLastId());
+        assertTrue(cursor.isFor("id", Sort.Direction.ASC));
+    }
+
+    @Test
+    void testScrollCards_WithCursorForOtherSort_ThrowsBadRequest() {
+        // Given
+        String cursor = new KeysetCursor("id", Sort.Direction.ASC, CARD_ID, "1").encode();
+
+        // When & Then
+        assertThrows(BadRequestException.class,
+                () -> cardService.scrollCards(new CardDTO(), false, "id", Sort.Direction.DESC, 10, cursor));
+    }
+
+    @Test
+    void testCreateCard_WithValidInput_ReturnsCreatedCardDTO() {
+        // Given
+        when(accountExistenceCache.exists(ACCOUNT_ID)).thenReturn(true);
+        when(panAllocator.nextPan()).thenReturn("4000001234567899");
+        when(cardNumberGenerator.generateCVV()).thenReturn("999");
+        when(cardBatchRepository.insertIfAllowed(any(Card.class), eq(2))).thenAnswer(invocation -> {
+            invocation.getArgument(0, Card.class).setId(3L);
+            return true;
+        });
 
         // When
         CardDTO result = cardService.createCard(testCardDTO);
 
         // Then
         assertNotNull(result);
+        assertEquals(3L, result.getId());
         assertEquals("New Test Card", result.getCardAlias());
         assertEquals("Virtual", result.getCardType());
 
-        verify(cardRepository).save(any(Card.class));
+        // The insert is the only statement on the happy path
+        verify(cardBatchRepository).insertIfAllowed(argThat(card ->
+                card.getPan().equals("4000001234567899") && card.getCardType() == CardType.VIRTUAL), eq(2));
+        verify(cardRepository, never()).countByAccountId(anyLong());
+        verify(cardRepository, never()).save(any(Card.class));
+    }
+
+    @Test
+    void testCreateCard_WithPanClash_RetriesWithNewPan() {
+        // Given
+        when(accountExistenceCache.exists(ACCOUNT_ID)).thenReturn(true);
+        when(panAllocator.nextPan()).thenReturn("4000001234567899", "4000009876543217");
+        when(cardBatchRepository.insertIfAllowed(any(Card.class), eq(2))).thenReturn(false, true);
+        when(cardRepository.countByAccountId(ACCOUNT_ID)).thenReturn(1);
+        when(cardRepository.findByAccountIdAndCardType(ACCOUNT_ID, CardType.VIRTUAL)).thenReturn(Collections.emptyList());
+
+        // When
+        cardService.createCard(testCardDTO);
+
+        // Then
+        verify(panAllocator, times(2)).nextPan();
+        verify(cardBatchRepository, times(2)).insertIfAllowed(any(Card.class), eq(2));
     }
 
 
     @Test
     void testCreateCard_WithNonExistentAccount_ThrowsResourceNotFoundException() {
         // Given
-        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenReturn(false);
+        when(accountExistenceCache.exists(ACCOUNT_ID)).thenReturn(false);
 
         // When
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> cardService.createCard(testCardDTO));
@@ -204,7 +301,8 @@ class CardServiceTest {
     @Test
     void testCreateCard_WithAccountServiceFailure_ThrowsInternalErrorException() {
         // Given
-        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenThrow(new RuntimeException("Connection refused"));
+        when(accountExistenceCache.exists(ACCOUNT_ID))
+                .thenThrow(new InternalErrorException("Failed to verify account existence: Connection refused"));
 
         // When & Then
         assertThrows(InternalErrorException.class, () -> cardService.createCard(testCardDTO));
@@ -213,7 +311,9 @@ class CardServiceTest {
     @Test
     void testCreateCard_WithMaxCards_ThrowsBadRequestException() {
         // Given
-        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+        when(accountExistenceCache.exists(ACCOUNT_ID)).thenReturn(true);
+        when(panAllocator.nextPan()).thenReturn("4000001234567899");
+        when(cardBatchRepository.insertIfAllowed(any(Card.class), eq(2))).thenReturn(false);
         when(cardRepository.countByAccountId(ACCOUNT_ID)).thenReturn(2);
 
         // When
@@ -226,7 +326,9 @@ class CardServiceTest {
     @Test
     void testCreateCard_WithExistingCardType_ThrowsBadRequestException() {
         // Given
-        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+        when(accountExistenceCache.exists(ACCOUNT_ID)).thenReturn(true);
+        when(panAllocator.nextPan()).thenReturn("4000001234567899");
+        when(cardBatchRepository.insertIfAllowed(any(Card.class), eq(2))).thenReturn(false);
         when(cardRepository.countByAccountId(ACCOUNT_ID)).thenReturn(1);
         when(cardRepository.findByAccountIdAndCardType(ACCOUNT_ID, CardType.VIRTUAL)).thenReturn(Collections.singletonList(testvirtualCard));
 
@@ -266,7 +368,7 @@ class CardServiceTest {
         // Given
         String invalidCardType = "type c";
         testCardDTO.setCardType(invalidCardType);
-        when(restTemplate.getForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+        when(accountExistenceCache.exists(ACCOUNT_ID)).thenReturn(true);
 
         // Act & Assert
         BadRequestException exception = assertThrows(BadRequestException.class, () -> cardService.createCard(testCardDTO));
@@ -298,6 +400,50 @@ class CardServiceTest {
         assertNotNull(result);
         assertEquals(newAlias, result.getCardAlias());
         verify(cardRepository).save(any(Card.class));
+        verify(cardEventRepository).save(argThat(event -> event.getType() == ReferenceEventType.UPDATED));
+    }
+
+    @Test
+    void testFetchCards_EscapesLikeWildcardsInAlias() {
+        // Given
+        Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        when(cardRepository.findWithFilters(eq("50\\%\\_off"), isNull(), isNull(), isNull(), isNull(), any(Pageable.class)))
+                .thenReturn(Page.empty());
+
+        // When
+        Page<CardDTO> cards = cardService.fetchCards(CardDTO.builder().cardAlias(" 50%_OFF ").build(), false, pageable);
+
+        // Then
+        assertEquals(0, cards.getTotalElements());
+    }
+
+    @Test
+    void testUpdateCardAlias_ThenSearchByNewAlias_FindsRenamedCard() throws NoSuchMethodException {
+        // Given JPA refreshing the search column before it flushes the update, and a repository that matches the
+        // alias against that column
+        assertNotNull(Card.class.getMethod("normalizeSearchFields").getAnnotation(PreUpdate.class));
+        when(cardRepository.findByIdAndAccountId(CARD_ID, ACCOUNT_ID)).thenReturn(Optional.of(testvirtualCard));
+        when(cardRepository.save(testvirtualCard)).thenAnswer(invocation -> {
+            testvirtualCard.normalizeSearchFields();
+            return testvirtualCard;
+        });
+        when(cardRepository.findWithFilters(anyString(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    String alias = invocation.getArgument(0);
+                    List<Card> matches = testvirtualCard.getCardAliasSearch().contains(alias) ? List.of(testvirtualCard) : List.of();
+                    return new org.springframework.data.domain.PageImpl<>(matches);
+                });
+        Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+
+        // When
+        cardService.updateCardAlias(CARD_ID, ACCOUNT_ID, "Holiday Fund");
+        Page<CardDTO> byNewAlias = cardService.fetchCards(CardDTO.builder().cardAlias("HOLIDAY").build(), false, pageable);
+        Page<CardDTO> byOldAlias = cardService.fetchCards(CardDTO.builder().cardAlias("virtual").build(), false, pageable);
+
+        // Then
+        assertEquals(1, byNewAlias.getTotalElements());
+        assertEquals("Holiday Fund", byNewAlias.getContent().getFirst().getCardAlias());
+        assertEquals(0, byOldAlias.getTotalElements());
     }
 
     @Test
@@ -322,6 +468,74 @@ class CardServiceTest {
 
         // Then
         verify(cardRepository).delete(testvirtualCard);
+        verify(cardEventRepository).save(argThat(event ->
+                event.getType() == ReferenceEventType.DELETED && ACCOUNT_ID.equals(event.getAccountId())));
+    }
+
+    @Test
+    void testGetCardCountsByAccountIds_IncludesAccountsWithoutCards() {
+        // Given
+        when(cardRepository.countByAccountIds(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{ACCOUNT_ID, 2L}));
+
+        // When
+        Map<Long, Long> result = cardService.getCardCountsByAccountIds(List.of(ACCOUNT_ID, 5L));
+
+        // Then
+        assertEquals(2L, result.get(ACCOUNT_ID));
+        assertEquals(0L, result.get(5L));
+    }
+
+    @Test
+    void testGetCardsByAccountIds_QueriesPerChunkAndMasksCards() {
+        // Given
+        ReflectionTestUtils.setField(cardService, "accountChunkSize", 1);
+        when(cardRepository.findByAccountIdInOrderByAccountIdAscIdAsc(List.of(ACCOUNT_ID)))
+                .thenReturn(List.of(testvirtualCard, testPhysicalCard));
+        when(cardRepository.findByAccountIdInOrderByAccountIdAscIdAsc(List.of(5L))).thenReturn(List.of());
+
+        // When
+        Map<Long, List<CardDTO>> result = cardService.getCardsByAccountIds(List.of(ACCOUNT_ID, 5L, ACCOUNT_ID));
+
+        // Then
+        assertEquals(List.of(ACCOUNT_ID, 5L), List.copyOf(result.keySet()));
+        assertEquals(2, result.get(ACCOUNT_ID).size());
+        assertEquals("123456******3456", result.get(ACCOUNT_ID).get(0).getPan());
+        assertEquals("***", result.get(ACCOUNT_ID).get(0).getCvv());
+        assertTrue(result.get(5L).isEmpty());
+    }
+
+    @Test
+    void testGetCardsByAccountIds_TooManyAccounts_ThrowsBadRequestException() {
+        // Given
+        ReflectionTestUtils.setField(cardService, "maxAccountIds", 1);
+
+        // When & Then
+        assertThrows(BadRequestException.class, () -> cardService.getCardsByAccountIds(List.of(ACCOUNT_ID, 5L)));
+    }
+
+    @Test
+    void testGetEventsAfter_MapsEventsInOffsetOrder() {
+        // Given
+        CardEvent event = CardEvent.builder()
+                .id(3L)
+                .position(7L)
+                .accountId(ACCOUNT_ID)
+                .cardId(CARD_ID)
+                .type(ReferenceEventType.CREATED)
+                .createdAt(LocalDateTime.now())
+                .build();
+        when(cardEventRepository.findByPositionGreaterThanOrderByPositionAsc(eq(6L), any(Pageable.class))).thenReturn(List.of(event));
+
+        // When
+        List<ReferenceEventDTO> result = cardService.getEventsAfter(6L, 100);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals(7L, result.get(0).getOffset());
+        assertEquals(ACCOUNT_ID, result.get(0).getParentId());
+        assertEquals(CARD_ID, result.get(0).getChildId());
+        verify(cardEventSequencer).sequence();
     }
 
 
@@ -0,0 +1,75 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.card_service.repository.PanBlockRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// PAN issuance throughput with the block reservation answered in memory, so only the allocator is measured:
+//   nextPan           - one PAN per call, as createCard does, from 1 and 4 threads
+//   issueMillion      - a million PANs through nextPans, as a bulk issuance would
+//
+//   mvn -pl card-service -am test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=dev.gavin.card_service.service.PanAllocatorBenchmark
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PanAllocatorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int blockSize;
+
+    private PanAllocator panAllocator;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        AtomicLong blocks = new AtomicLong();
+        PanBlockRepository panBlockRepository = new PanBlockRepository(null) {
+            @Override
+            public PanBlock nextBlock() {
+                long end = blocks.addAndGet(blockSize);
+                return new PanBlock(end - blockSize, end);
+            }
+        };
+
+        panAllocator = new PanAllocator(panBlockRepository);
+        ReflectionTestUtils.setField(panAllocator, "bins", List.of("400000", "400001", "400002"));
+        ReflectionTestUtils.setField(panAllocator, "permutationKey", 42L);
+        panAllocator.init();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(1)
+    public String nextPan() {
+        return panAllocator.nextPan();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public String nextPanContended() {
+        return panAllocator.nextPan();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5, batchSize = 1)
+    public List<String> issueMillion() {
+        return panAllocator.nextPans(1_000_000);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PanAllocatorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
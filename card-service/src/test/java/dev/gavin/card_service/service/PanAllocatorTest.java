@@ -0,0 +1,121 @@
+package dev.gavin.card_service.service;
+
+import dev.gavin.card_service.repository.PanBlockRepository;
+import dev.gavin.card_service.repository.PanBlockRepository.PanBlock;
+import dev.gavin.card_service.utils.Luhn;
+import dev.gavin.common.exception.InternalErrorException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PanAllocatorTest {
+
+    @Mock
+    private PanBlockRepository panBlockRepository;
+
+    private PanAllocator panAllocator;
+
+    @BeforeEach
+    void setUp() {
+        panAllocator = new PanAllocator(panBlockRepository);
+    }
+
+    @Test
+    void nextPan_IssuesLuhnValidPansFromTheBin() {
+        // Given
+        configure(List.of("400000"), 16);
+        when(panBlockRepository.nextBlock()).thenReturn(new PanBlock(0L, 1000L));
+
+        // When
+        List<String> pans = panAllocator.nextPans(1000);
+
+        // Then
+        assertEquals(1000, new HashSet<>(pans).size());
+        for (String pan : pans) {
+            assertEquals(16, pan.length());
+            assertTrue(pan.startsWith("400000"));
+            assertTrue(Luhn.isValid(pan), pan);
+        }
+        // Consecutive positions do not give consecutive account numbers
+        long first = Long.parseLong(pans.get(0).substring(6, 15));
+        long second = Long.parseLong(pans.get(1).substring(6, 15));
+        assertNotEquals(1L, Math.abs(second - first));
+        verify(panBlockRepository, times(1)).nextBlock();
+    }
+
+    @Test
+    void nextPans_WholeRange_IsCollisionFree() {
+        // Given a 13 digit PAN behind an 8 digit BIN, which leaves 10^4 account numbers
+        configure(List.of("12345678"), 13);
+        when(panBlockRepository.nextBlock())
+                .thenReturn(new PanBlock(0L, 4000L))
+                .thenReturn(new PanBlock(4000L, 10000L));
+
+        // When
+        List<String> pans = panAllocator.nextPans(10000);
+
+        // Then
+        Set<String> distinct = new HashSet<>(pans);
+        assertEquals(10000, distinct.size());
+        assertTrue(distinct.stream().allMatch(Luhn::isValid));
+        verify(panBlockRepository, times(2)).nextBlock();
+    }
+
+    @Test
+    void nextPan_PastFirstRange_MovesToNextBin() {
+        // Given
+        configure(List.of("12345678", "87654321"), 13);
+        when(panBlockRepository.nextBlock()).thenReturn(new PanBlock(9999L, 10001L));
+
+        // When
+        String last = panAllocator.nextPan();
+        String first = panAllocator.nextPan();
+
+        // Then
+        assertTrue(last.startsWith("12345678"));
+        assertTrue(first.startsWith("87654321"));
+    }
+
+    @Test
+    void nextPan_AllRangesExhausted_ThrowsInternalError() {
+        // Given
+        configure(List.of("12345678"), 13);
+        when(panBlockRepository.nextBlock()).thenReturn(new PanBlock(10000L, 11000L));
+
+        // When & Then
+        assertThrows(InternalErrorException.class, () -> panAllocator.nextPan());
+    }
+
+    @Test
+    void init_InvalidBin_FailsFast() {
+        ReflectionTestUtils.setField(panAllocator, "bins", List.of("4000"));
+        ReflectionTestUtils.setField(panAllocator, "permutationKey", 42L);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> panAllocator.init());
+        assertTrue(exception.getMessage().startsWith("BIN must be"));
+    }
+
+    @Test
+    void init_WithoutPermutationKey_FailsFast() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> panAllocator.init());
+        assertTrue(exception.getMessage().contains("permutation-key"));
+    }
+
+    private void configure(List<String> bins, int panLength) {
+        ReflectionTestUtils.setField(panAllocator, "bins", bins);
+        ReflectionTestUtils.setField(panAllocator, "panLength", panLength);
+        ReflectionTestUtils.setField(panAllocator, "permutationKey", 42L);
+        panAllocator.init();
+    }
+}
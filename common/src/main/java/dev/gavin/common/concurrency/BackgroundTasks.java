@@ -0,0 +1,40 @@
+package dev.gavin.common.concurrency;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Threads for work no request waits on, such as issuance jobs, profile rebuilds and event deliveries. They are
+// kept apart from applicationTaskExecutor, whose concurrency limit is sized to the connection pool and shared by
+// streamed responses and request fan-out, so a long job never holds the permits requests are waiting for.
+// Not an Executor itself: an Executor bean would stop Boot from creating applicationTaskExecutor.
+public class BackgroundTasks implements AutoCloseable {
+
+    private final Executor executor;
+
+    public BackgroundTasks(Executor executor) {
+        this.executor = executor;
+    }
+
+    public static BackgroundTasks pool(int size, boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("background-", 0).factory()
+                : Thread.ofPlatform().name("background-", 0).factory();
+        return new BackgroundTasks(Executors.newFixedThreadPool(size, threadFactory));
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void close() {
+        if (executor instanceof ExecutorService executorService)
+            executorService.shutdown();
+    }
+}
@@ -0,0 +1,64 @@
+package dev.gavin.common.concurrency;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+// Logs virtual threads that stay pinned to their carrier longer than the threshold, typically blocking I/O
+// inside a synchronized block or a native frame. Reads the JDK's own jdk.VirtualThreadPinned JFR event.
+public class PinnedThreadMonitor implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PinnedThreadMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final int MAX_FRAMES = 10;
+
+    private final Duration threshold;
+
+    private RecordingStream stream;
+
+    public PinnedThreadMonitor(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::report);
+        stream.startAsync();
+        log.info("Reporting virtual threads pinned for more than {} ms", threshold.toMillis());
+    }
+
+    @Override
+    public void close() {
+        if (stream != null)
+            stream.close();
+    }
+
+    private void report(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        log.warn("Virtual thread {} pinned for {} ms at:\n\t{}",
+                thread != null ? thread.getJavaName() : "?", event.getDuration().toMillis(), format(event.getStackTrace()));
+    }
+
+    private String format(RecordedStackTrace stackTrace) {
+        if (stackTrace == null)
+            return "<no stack trace>";
+
+        return stackTrace.getFrames().stream()
+                .limit(MAX_FRAMES)
+                .map(this::format)
+                .collect(Collectors.joining("\n\t"));
+    }
+
+    private String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
@@ -22,4 +22,6 @@ public class CustomerDTO {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private List<AccountDTO> accounts;
+    // Set when enrichment ran out of time or a peer failed, so accounts or their cards may be missing
+    private Boolean partial;
 }
@@ -0,0 +1,21 @@
+package dev.gavin.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Customer ids created and deleted after a watermark. Ids are never reused, so applying the
+// created ids before the deleted ones is safe to repeat over overlapping windows.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerIdChangesDTO {
+    private List<Long> created;
+    private List<Long> deleted;
+    private LocalDateTime watermark;
+}
@@ -0,0 +1,22 @@
+package dev.gavin.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// Answer to a batch existence check. In the bitset form, bit i of the base64 little-endian bitset is set
+// when the i-th requested id exists, counting in request order for a list and from "from" for a range. In
+// the missing form, missing lists the ids that do not exist in ascending order.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExistenceDTO {
+    private int size;
+    private int existing;
+    private String bitset;
+    private List<Long> missing;
+}
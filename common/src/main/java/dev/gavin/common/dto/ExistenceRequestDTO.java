@@ -0,0 +1,21 @@
+package dev.gavin.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// Ids to check for existence: either an explicit list or an inclusive from..to range
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExistenceRequestDTO {
+    private List<Long> ids;
+    private Long from;
+    private Long to;
+}
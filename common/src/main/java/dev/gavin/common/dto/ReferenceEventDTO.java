@@ -0,0 +1,24 @@
+package dev.gavin.common.dto;
+
+import dev.gavin.common.enums.ReferenceEventType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// A child record (card, account) created, updated or deleted under a parent (account, customer). The offset is
+// the position in the owning service's event log, assigned in commit order, so an event never appears behind an
+// offset a consumer has already read past.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReferenceEventDTO {
+    private Long offset;
+    private ReferenceEventType type;
+    private Long parentId;
+    private Long childId;
+    private LocalDateTime occurredAt;
+}
@@ -0,0 +1,20 @@
+package dev.gavin.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// One slice of a cursor-paged listing. There is no total count; nextCursor is null on the last slice.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SliceDTO<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor;
+}
@@ -0,0 +1,7 @@
+package dev.gavin.common.enums;
+
+public enum ReferenceEventType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
@@ -16,6 +16,8 @@ import java.util.UUID;
 public class CustomerVerificationRequest implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    public static final String TOPIC = "customer.verification.request";
+
     private Long accountId;
     private Long customerId;
     private UUID requestId;
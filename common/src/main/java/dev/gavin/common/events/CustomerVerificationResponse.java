@@ -15,6 +15,8 @@ import java.util.UUID;
 public class CustomerVerificationResponse implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    public static final String TOPIC = "customer.verification.response";
+
     private Long accountId;
     private Long customerId;
     private UUID requestId;
@@ -0,0 +1,10 @@
+package dev.gavin.common.events;
+
+import java.util.function.Consumer;
+
+public interface EventBroker {
+
+    void publish(String topic, Object event);
+
+    <T> void subscribe(String topic, Class<T> eventType, Consumer<T> handler);
+}
@@ -0,0 +1,256 @@
+package dev.gavin.common.events;
+
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Keeps a count of children per parent from another service's reference events, so a guard on that count is a
+// local primary-key read. Events are applied in offset order and the offset is stored with the counters, which
+// makes redelivered events harmless. Counters are seeded by a full recount and a periodic reconciliation repairs
+// any drift.
+// Subclasses store the offset and the counters, and schedule pollEvents and reconcile.
+public abstract class EventCounterConsumer {
+    private static final int MAX_SETTLE_ROUNDS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final RestTemplate restTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final String consumer;
+
+    private volatile boolean tracking;
+
+    protected EventCounterConsumer(RestTemplate restTemplate, TransactionTemplate transactionTemplate, String consumer) {
+        this.restTemplate = restTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.consumer = consumer;
+    }
+
+    // Counters are only trusted once they have been seeded by a first full reconciliation
+    public boolean isTracking() {
+        if (!tracking)
+            tracking = isEnabled() && findOffset().isPresent();
+        return tracking;
+    }
+
+    public void pollEvents() {
+        if (!isEnabled())
+            return;
+
+        try {
+            Optional<Long> offset = findOffset();
+            if (offset.isEmpty()) {
+                seed();
+                return;
+            }
+
+            List<ReferenceEventDTO> events = fetchEvents(offset.get());
+            if (!events.isEmpty())
+                transactionTemplate.executeWithoutResult(status -> applyEvents(events));
+        } catch (Exception e) {
+            log.warn("Failed to poll events for {}: {}", consumer, e.getMessage());
+        }
+    }
+
+    public void reconcile() {
+        if (!isTracking())
+            return;
+
+        try {
+            int repaired = 0;
+            long after = 0L;
+            List<Long> parentIds;
+            while (!(parentIds = findParentIdsAfter(after, reconcileChunkSize())).isEmpty()) {
+                List<Long> chunk = parentIds;
+                Integer chunkRepaired = transactionTemplate.execute(status -> reconcileChunk(chunk));
+                repaired += chunkRepaired != null ? chunkRepaired : 0;
+                after = parentIds.get(parentIds.size() - 1);
+            }
+            if (repaired > 0)
+                log.warn("Repaired {} drifted counter(s) for {}", repaired, consumer);
+        } catch (Exception e) {
+            log.warn("Failed to reconcile counters for {}: {}", consumer, e.getMessage());
+        }
+    }
+
+    protected abstract boolean isEnabled();
+
+    // URL of the owning service's event feed, which also serves its head at /head
+    protected abstract String eventsUrl();
+
+    // URL that counts the children of the parent ids posted to it
+    protected abstract String countsUrl();
+
+    protected abstract int batchSize();
+
+    protected abstract int reconcileChunkSize();
+
+    protected abstract Optional<Long> findOffset();
+
+    // Locks the offset row until the transaction ends, so events and reconciliations apply one at a time
+    protected abstract Optional<Long> lockOffset();
+
+    protected abstract void saveOffset(long offset);
+
+    protected abstract List<Long> findParentIdsAfter(long after, int limit);
+
+    // Counts recorded for the given parents; parents without a counter are left out
+    protected abstract Map<Long, Long> findCounts(Collection<Long> parentIds);
+
+    protected abstract void saveCounts(Map<Long, Long> counts);
+
+    private void applyEvents(List<ReferenceEventDTO> events) {
+        long lastOffset = lockOffset()
+                .orElseThrow(() -> new IllegalStateException("Counters for " + consumer + " have not been seeded"));
+
+        long appliedOffset = lastOffset;
+        Map<Long, Long> deltas = new HashMap<>();
+        for (ReferenceEventDTO event : events) {
+            if (event.getOffset() <= appliedOffset)
+                continue;
+
+            appliedOffset = event.getOffset();
+            // Updates do not change how many children a parent has
+            if (event.getType() != ReferenceEventType.UPDATED)
+                deltas.merge(event.getParentId(), event.getType() == ReferenceEventType.CREATED ? 1L : -1L, Long::sum);
+        }
+        if (appliedOffset == lastOffset)
+            return;
+
+        Map<Long, Long> counts = findCounts(deltas.keySet());
+        Map<Long, Long> changed = new HashMap<>();
+        deltas.forEach((parentId, delta) -> changed.put(parentId, Math.max(0L, counts.getOrDefault(parentId, 0L) + delta)));
+        saveCounts(changed);
+        saveOffset(appliedOffset);
+    }
+
+    // The head offset is read before counting, so no event that lands while seeding is missed
+    private void seed() {
+        long head = fetchHead();
+        int seeded = 0;
+        long after = 0L;
+        List<Long> parentIds;
+        while (!(parentIds = findParentIdsAfter(after, reconcileChunkSize())).isEmpty()) {
+            Map<Long, Long> actualCounts = fetchCounts(parentIds);
+            List<Long> chunk = parentIds;
+            Integer chunkSeeded = transactionTemplate.execute(status -> repair(chunk, actualCounts, Set.of()));
+            seeded += chunkSeeded != null ? chunkSeeded : 0;
+            after = parentIds.get(parentIds.size() - 1);
+        }
+        long offset = settle(head);
+        saveOffset(offset);
+        log.info("Seeded {} counter(s) for {} at offset {}", seeded, consumer, offset);
+    }
+
+    // Events that landed while recounting may already be in the recount, and applying them as deltas would count
+    // a deleted child twice and let a delete guard through. The parents they touch are recounted instead, until
+    // the head stays put across a recount. Without that the offset is not stored and seeding starts over.
+    private long settle(long recountedFrom) {
+        long settled = recountedFrom;
+        for (int round = 0; round < MAX_SETTLE_ROUNDS; round++) {
+            long head = fetchHead();
+            if (head <= settled)
+                return settled;
+
+            List<Long> touched = new ArrayList<>(fetchParentIdsBetween(settled, head));
+            for (int start = 0; start < touched.size(); start += reconcileChunkSize()) {
+                List<Long> chunk = touched.subList(start, Math.min(start + reconcileChunkSize(), touched.size()));
+                Map<Long, Long> actualCounts = fetchCounts(chunk);
+                transactionTemplate.execute(status -> repair(chunk, actualCounts, Set.of()));
+            }
+            settled = head;
+        }
+        throw new IllegalStateException("Events for " + consumer + " kept arriving while seeding");
+    }
+
+    private Set<Long> fetchParentIdsBetween(long after, long upTo) {
+        Set<Long> parentIds = new HashSet<>();
+        long offset = after;
+        while (offset < upTo) {
+            List<ReferenceEventDTO> events = fetchEvents(offset);
+            if (events.isEmpty())
+                break;
+
+            for (ReferenceEventDTO event : events) {
+                if (event.getOffset() > upTo)
+                    return parentIds;
+                if (event.getType() != ReferenceEventType.UPDATED)
+                    parentIds.add(event.getParentId());
+            }
+            offset = events.get(events.size() - 1).getOffset();
+        }
+        return parentIds;
+    }
+
+    // Holds the offset lock so no events are applied meanwhile, which pins the counters to the stored offset.
+    // The actual counts may already include events past it, so parents with such events are left for the next
+    // run; when more events are pending than one batch, which parents they touch is unknown and nothing is
+    // repaired.
+    private int reconcileChunk(List<Long> parentIds) {
+        long offset = lockOffset()
+                .orElseThrow(() -> new IllegalStateException("Counters for " + consumer + " have not been seeded"));
+
+        Map<Long, Long> actualCounts = fetchCounts(parentIds);
+        List<ReferenceEventDTO> pending = fetchEvents(offset);
+        if (pending.size() >= batchSize())
+            return 0;
+
+        Set<Long> pendingParents = pending.stream().map(ReferenceEventDTO::getParentId).collect(Collectors.toSet());
+        return repair(parentIds, actualCounts, pendingParents);
+    }
+
+    private int repair(List<Long> parentIds, Map<Long, Long> actualCounts, Set<Long> skipped) {
+        Map<Long, Long> counts = findCounts(parentIds);
+        Map<Long, Long> changed = new HashMap<>();
+        for (Long parentId : parentIds) {
+            long actual = actualCounts.getOrDefault(parentId, 0L);
+            long current = counts.getOrDefault(parentId, 0L);
+            if (actual == current || skipped.contains(parentId))
+                continue;
+
+            log.debug("Counter for {} in {} drifted: {} recorded, {} actual", parentId, consumer, current, actual);
+            changed.put(parentId, actual);
+        }
+        if (!changed.isEmpty())
+            saveCounts(changed);
+        return changed.size();
+    }
+
+    private long fetchHead() {
+        Long head = restTemplate.getForObject(eventsUrl() + "/head", Long.class);
+        return head != null ? head : 0L;
+    }
+
+    private List<ReferenceEventDTO> fetchEvents(long offset) {
+        String url = eventsUrl() + "?after=" + offset + "&limit=" + batchSize();
+        ReferenceEventDTO[] events = restTemplate.getForObject(url, ReferenceEventDTO[].class);
+        return events != null ? Arrays.asList(events) : List.of();
+    }
+
+    private Map<Long, Long> fetchCounts(List<Long> parentIds) {
+        Map<Long, Long> counts = restTemplate.exchange(
+                countsUrl(), HttpMethod.POST, new HttpEntity<>(parentIds),
+                new ParameterizedTypeReference<Map<Long, Long>>() {
+                }).getBody();
+        return counts != null ? counts : Map.of();
+    }
+}
@@ -0,0 +1,84 @@
+package dev.gavin.common.events;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Gives outbox events their feed position in commit order. An IDENTITY id is taken when a row is inserted, so a
+// transaction that takes a low id and commits late would land behind an offset a consumer has already passed.
+// Positions are only handed out here, to committed rows and under a lock on the feed's sequence row, so a row
+// that becomes visible later always gets a higher position than every row already handed out.
+// The sequence table is not an entity of any service, so it is created here.
+public class EventFeedSequencer {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final String feed;
+
+    private final String table;
+
+    private final int batchSize;
+
+    public EventFeedSequencer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, String feed,
+                              String table, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.feed = feed;
+        this.table = table;
+        this.batchSize = batchSize;
+    }
+
+    public void createTable() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS event_sequences (
+                    feed          VARCHAR(255) PRIMARY KEY,
+                    last_position BIGINT       NOT NULL
+                )
+                """);
+    }
+
+    // Positions the next batch of committed events and returns how many were positioned
+    public int sequence() {
+        try {
+            Integer sequenced = transactionTemplate.execute(status -> sequenceBatch());
+            return sequenced != null ? sequenced : 0;
+        } catch (DuplicateKeyException e) {
+            // Another instance created the sequence row first; its positions are picked up on the next read
+            return 0;
+        }
+    }
+
+    private int sequenceBatch() {
+        long lastPosition = lockLastPosition();
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM " + table + " WHERE feed_position IS NULL ORDER BY id LIMIT ?", Long.class, batchSize);
+        if (ids.isEmpty())
+            return 0;
+
+        List<Object[]> positions = new ArrayList<>(ids.size());
+        for (Long id : ids)
+            positions.add(new Object[]{++lastPosition, id});
+        jdbcTemplate.batchUpdate("UPDATE " + table + " SET feed_position = ? WHERE id = ?", positions);
+        jdbcTemplate.update("UPDATE event_sequences SET last_position = ? WHERE feed = ?", lastPosition, feed);
+        return ids.size();
+    }
+
+    // The first run carries events that already exist over at their id, which is the offset consumers hold
+    private long lockLastPosition() {
+        List<Long> lastPosition = jdbcTemplate.queryForList(
+                "SELECT last_position FROM event_sequences WHERE feed = ? FOR UPDATE", Long.class, feed);
+        if (!lastPosition.isEmpty())
+            return lastPosition.get(0);
+
+        jdbcTemplate.update("UPDATE " + table + " SET feed_position = id WHERE feed_position IS NULL");
+        Long head = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(feed_position), 0) FROM " + table, Long.class);
+        long start = head != null ? head : 0L;
+        jdbcTemplate.update("INSERT INTO event_sequences (feed, last_position) VALUES (?, ?)", feed, start);
+        return start;
+    }
+}
@@ -0,0 +1,52 @@
+package dev.gavin.common.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+public class InProcessEventBroker implements EventBroker {
+    private static final Logger log = LoggerFactory.getLogger(InProcessEventBroker.class);
+
+    private final Map<String, List<Subscription<?>>> subscriptions = new ConcurrentHashMap<>();
+
+    private final Executor executor;
+
+    public InProcessEventBroker(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void publish(String topic, Object event) {
+        for (Subscription<?> subscription : subscriptions.getOrDefault(topic, List.of())) {
+            if (!subscription.eventType().isInstance(event)) {
+                log.warn("Dropping {} published to {}: subscriber expects {}",
+                        event.getClass().getSimpleName(), topic, subscription.eventType().getSimpleName());
+                continue;
+            }
+            executor.execute(() -> subscription.deliver(topic, event));
+        }
+    }
+
+    @Override
+    public <T> void subscribe(String topic, Class<T> eventType, Consumer<T> handler) {
+        subscriptions.computeIfAbsent(topic, key -> new CopyOnWriteArrayList<>())
+                .add(new Subscription<>(eventType, handler));
+    }
+
+    private record Subscription<T>(Class<T> eventType, Consumer<T> handler) {
+
+        void deliver(String topic, Object event) {
+            try {
+                handler.accept(eventType.cast(event));
+            } catch (Exception e) {
+                log.error("Failed to handle {} on {}: {}", event, topic, e.getMessage(), e);
+            }
+        }
+    }
+}
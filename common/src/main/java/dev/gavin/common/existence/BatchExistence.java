@@ -0,0 +1,99 @@
+package dev.gavin.common.existence;
+
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.exception.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongPredicate;
+
+// Answers a batch existence check with set-based queries: IN queries of up to QUERY_CHUNK_SIZE ids for a list,
+// one BETWEEN query for a range. Ids the filter rules out are not sent to the database at all.
+public final class BatchExistence {
+
+    public static final int MAX_IDS = 100_000;
+
+    // Each id is one bind parameter, and the Postgres protocol allows at most 65,535 per statement
+    public static final int QUERY_CHUNK_SIZE = 10_000;
+
+    private BatchExistence() {
+    }
+
+    public static ExistenceDTO check(ExistenceRequestDTO request, ExistenceFormat format,
+                                     Function<Collection<Long>, Collection<Long>> findExistingIds,
+                                     BiFunction<Long, Long, Collection<Long>> findExistingIdsBetween,
+                                     LongPredicate definitelyMissing) {
+        if (request == null)
+            throw new BadRequestException("Either ids or a from/to range is required");
+
+        if (request.getIds() != null) {
+            List<Long> ids = request.getIds();
+            if (ids.isEmpty() || ids.size() > MAX_IDS)
+                throw new BadRequestException("Between 1 and " + MAX_IDS + " ids can be checked at once");
+            if (ids.stream().anyMatch(Objects::isNull))
+                throw new BadRequestException("Ids must not be null");
+
+            Set<Long> candidates = new LinkedHashSet<>();
+            for (Long id : ids) {
+                if (!definitelyMissing.test(id))
+                    candidates.add(id);
+            }
+            Set<Long> existing = findExisting(candidates, findExistingIds);
+            return answer(ids.size(), i -> existing.contains(ids.get(i)), i -> ids.get(i), format);
+        }
+
+        Long from = request.getFrom();
+        Long to = request.getTo();
+        if (from == null || to == null || to < from)
+            throw new BadRequestException("Either ids or a from/to range with from <= to is required");
+        if (to - from >= MAX_IDS)
+            throw new BadRequestException("A range can span at most " + MAX_IDS + " ids");
+
+        Set<Long> existing = new HashSet<>(findExistingIdsBetween.apply(from, to));
+        return answer((int) (to - from + 1), i -> existing.contains(from + i), i -> from + i, format);
+    }
+
+    // Looks ids up in chunks that stay within the bind parameter limit
+    public static Set<Long> findExisting(Collection<Long> ids, Function<Collection<Long>, Collection<Long>> findExistingIds) {
+        Set<Long> existing = new HashSet<>();
+        List<Long> chunk = new ArrayList<>(Math.min(ids.size(), QUERY_CHUNK_SIZE));
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == QUERY_CHUNK_SIZE) {
+                existing.addAll(findExistingIds.apply(chunk));
+                chunk = new ArrayList<>(QUERY_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty())
+            existing.addAll(findExistingIds.apply(chunk));
+        return existing;
+    }
+
+    private static ExistenceDTO answer(int size, IntPredicate exists, IntToLongFunction idAt, ExistenceFormat format) {
+        BitSet bits = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (exists.test(i))
+                bits.set(i);
+        }
+
+        if (format == ExistenceFormat.BITSET)
+            return new ExistenceDTO(size, bits.cardinality(), Base64.getEncoder().encodeToString(bits.toByteArray()), null);
+
+        List<Long> missing = new ArrayList<>(size - bits.cardinality());
+        for (int i = bits.nextClearBit(0); i < size; i = bits.nextClearBit(i + 1))
+            missing.add(idAt.applyAsLong(i));
+        return new ExistenceDTO(size, bits.cardinality(), null, missing.stream().distinct().sorted().toList());
+    }
+}
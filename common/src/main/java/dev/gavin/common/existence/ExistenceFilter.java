@@ -0,0 +1,37 @@
+package dev.gavin.common.existence;
+
+import java.util.stream.Stream;
+
+// Fast negatives for batch existence checks. The Bloom filter holds every id that existed up to the
+// watermark when it was built, so an id at or below the watermark that the filter rules out is known not
+// to exist. Ids above the watermark may have been created since and are always left to the database.
+public final class ExistenceFilter {
+
+    private final IdBloomFilter bloom;
+
+    private final long watermark;
+
+    private ExistenceFilter(IdBloomFilter bloom, long watermark) {
+        this.bloom = bloom;
+        this.watermark = watermark;
+    }
+
+    // Ids are IDENTITY generated and dense, so the watermark doubles as the expected number of ids
+    public static ExistenceFilter build(long watermark, Stream<Long> ids, double falsePositiveRate) {
+        IdBloomFilter bloom = new IdBloomFilter(watermark, falsePositiveRate);
+        ids.forEach(bloom::put);
+        return new ExistenceFilter(bloom, watermark);
+    }
+
+    public boolean isDefinitelyMissing(long id) {
+        return id <= watermark && !bloom.mightContain(id);
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public long sizeInBytes() {
+        return bloom.sizeInBytes();
+    }
+}
@@ -0,0 +1,18 @@
+package dev.gavin.common.existence;
+
+import dev.gavin.common.exception.BadRequestException;
+
+import java.util.Locale;
+
+public enum ExistenceFormat {
+    BITSET,
+    MISSING;
+
+    public static ExistenceFormat from(String format) {
+        try {
+            return valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unsupported existence format " + format + ", expected bitset or missing");
+        }
+    }
+}
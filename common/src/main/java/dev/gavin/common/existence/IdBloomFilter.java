@@ -0,0 +1,56 @@
+package dev.gavin.common.existence;
+
+// Bloom filter over long ids, sized for an expected number of ids and false positive rate. Positions come
+// from double hashing of a SplitMix64 mix of the id, which spreads dense sequential ids evenly.
+public final class IdBloomFilter {
+
+    private final long[] words;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    public IdBloomFilter(long expectedIds, double falsePositiveRate) {
+        long n = Math.max(1, expectedIds);
+        double ln2 = Math.log(2);
+        long bits = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        long wordCount = (bits + 63) >>> 6;
+        if (wordCount > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Bloom filter for " + expectedIds + " ids is too large");
+
+        this.words = new long[(int) wordCount];
+        this.bitCount = wordCount << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bits / n * ln2));
+    }
+
+    public void put(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    private static long mix(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
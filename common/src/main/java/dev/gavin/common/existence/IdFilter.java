@@ -0,0 +1,76 @@
+package dev.gavin.common.existence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Bloom filter in front of a batch existence check, rebuilt from one table's ids on a schedule. A transaction
+// that took an id before the rebuild may still commit after it, so the newest trailing-ids ids below the highest
+// committed one are left out of the filter and always checked against the database.
+public class IdFilter {
+    private static final Logger log = LoggerFactory.getLogger(IdFilter.class);
+
+    private final String name;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Supplier<Long> findMaxId;
+
+    private final LongFunction<Stream<Long>> streamIdsUpTo;
+
+    private final boolean enabled;
+
+    private final double falsePositiveRate;
+
+    private final long trailingIds;
+
+    private volatile ExistenceFilter filter;
+
+    public IdFilter(String name, TransactionTemplate transactionTemplate, Supplier<Long> findMaxId,
+                    LongFunction<Stream<Long>> streamIdsUpTo, boolean enabled, double falsePositiveRate,
+                    long trailingIds) {
+        this.name = name;
+        this.transactionTemplate = transactionTemplate;
+        this.findMaxId = findMaxId;
+        this.streamIdsUpTo = streamIdsUpTo;
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.trailingIds = trailingIds;
+    }
+
+    public boolean isDefinitelyMissing(long id) {
+        ExistenceFilter current = filter;
+        return current != null && current.isDefinitelyMissing(id);
+    }
+
+    @Scheduled(fixedDelayString = "${id-filter.rebuild-interval:PT10M}")
+    public void rebuild() {
+        if (!enabled)
+            return;
+
+        try {
+            ExistenceFilter rebuilt = transactionTemplate.execute(status -> {
+                Long maxId = findMaxId.get();
+                if (maxId == null || maxId <= trailingIds)
+                    return null;
+
+                long watermark = maxId - trailingIds;
+                try (Stream<Long> ids = streamIdsUpTo.apply(watermark)) {
+                    return ExistenceFilter.build(watermark, ids, falsePositiveRate);
+                }
+            });
+            if (rebuilt == null)
+                return;
+
+            filter = rebuilt;
+            log.info("Rebuilt {} id filter up to id {} in {} bytes", name, rebuilt.getWatermark(), rebuilt.sizeInBytes());
+        } catch (Exception e) {
+            log.warn("Failed to rebuild {} id filter, keeping the previous one: {}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.gavin.common.http;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.time.Duration;
+
+// Lets one streaming endpoint outlive the async request timeout every other endpoint keeps. Called from the
+// handler method, after the async request has been prepared and before the body starts streaming.
+public final class AsyncRequestTimeout {
+
+    private AsyncRequestTimeout() {
+    }
+
+    public static void extend(HttpServletRequest request, Duration timeout) {
+        AsyncWebRequest asyncWebRequest = WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest();
+        if (asyncWebRequest != null)
+            asyncWebRequest.setTimeout(timeout.toMillis());
+    }
+}
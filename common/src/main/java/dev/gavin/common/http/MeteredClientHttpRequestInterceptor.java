@@ -0,0 +1,71 @@
+package dev.gavin.common.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// Records a latency histogram per destination, route, method and status, and a gauge of calls in flight per
+// destination. Numeric path segments are collapsed to {id} so the route tag stays bounded.
+// Latency is measured up to the response headers; reading the body is not included.
+public class MeteredClientHttpRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    static final String REQUESTS_METRIC = "service.client.requests";
+
+    static final String IN_FLIGHT_METRIC = "service.client.in.flight";
+
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public MeteredClientHttpRequestInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String destination = destination(request.getURI());
+        AtomicInteger calls = inFlight.computeIfAbsent(destination, key ->
+                meterRegistry.gauge(IN_FLIGHT_METRIC, Tags.of("destination", key), new AtomicInteger()));
+
+        String status = "IO_ERROR";
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            status = String.valueOf(response.getStatusCode().value());
+            return response;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            calls.decrementAndGet();
+            Timer.builder(REQUESTS_METRIC)
+                    .tags("destination", destination, "uri", route(request.getURI()),
+                            "method", request.getMethod().name(), "status", status)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String route(URI uri) {
+        return uri.getRawPath() != null ? ID_SEGMENT.matcher(uri.getRawPath()).replaceAll("/{id}") : "";
+    }
+
+    private String destination(URI uri) {
+        return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+}
@@ -0,0 +1,35 @@
+package dev.gavin.common.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class IdempotencyConfiguration {
+
+    @Value("${idempotency.ttl:PT24H}")
+    private Duration ttl = Duration.ofHours(24);
+
+    @Value("${idempotency.max-keys:100000}")
+    private int maxKeys = 100_000;
+
+    @Value("${idempotency.wait-timeout:PT10S}")
+    private Duration waitTimeout = Duration.ofSeconds(10);
+
+    @Bean(initMethod = "createTable")
+    @ConditionalOnProperty(name = "idempotency.persistent", havingValue = "true")
+    public JdbcIdempotencyRepository idempotencyRepository(JdbcTemplate jdbcTemplate) {
+        return new JdbcIdempotencyRepository(jdbcTemplate);
+    }
+
+    @Bean
+    public IdempotencyStore idempotencyStore(ObjectMapper objectMapper, ObjectProvider<IdempotencyRepository> repository) {
+        return new IdempotencyStore(objectMapper, repository.getIfAvailable(), ttl, maxKeys, waitTimeout);
+    }
+}
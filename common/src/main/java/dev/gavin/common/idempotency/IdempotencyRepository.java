@@ -0,0 +1,11 @@
+package dev.gavin.common.idempotency;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface IdempotencyRepository {
+
+    Optional<IdempotentResponse> find(String key);
+
+    void save(String key, IdempotentResponse response, Instant expiresAt);
+}
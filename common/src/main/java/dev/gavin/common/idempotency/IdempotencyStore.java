@@ -0,0 +1,197 @@
+package dev.gavin.common.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.common.exception.ConflictException;
+import dev.gavin.common.exception.InternalErrorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Runs a create at most once per Idempotency-Key. The first request for a key runs the action and records its
+// response; replays get the recorded response without running it again, and duplicates that arrive while the
+// first is still running wait for its outcome. Failed actions are not recorded, so a retry after an error runs again.
+// Keys live in memory for the TTL, bounded to maxKeys (oldest first), and optionally in an IdempotencyRepository.
+public class IdempotencyStore {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final ObjectMapper objectMapper;
+
+    private final IdempotencyRepository repository;
+
+    private final Duration ttl;
+
+    private final int maxKeys;
+
+    private final Duration waitTimeout;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<QueuedKey> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    public IdempotencyStore(ObjectMapper objectMapper, IdempotencyRepository repository, Duration ttl, int maxKeys,
+                            Duration waitTimeout) {
+        this.objectMapper = objectMapper;
+        this.repository = repository;
+        this.ttl = ttl;
+        this.maxKeys = maxKeys;
+        this.waitTimeout = waitTimeout;
+    }
+
+    public <T> ResponseEntity<T> execute(String scope, String key, Object request, Class<T> bodyType,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (key == null || key.isBlank())
+            return action.get();
+        if (key.length() > MAX_KEY_LENGTH)
+            throw new BadRequestException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+
+        String storeKey = scope + ":" + key;
+        String fingerprint = fingerprint(request);
+        Instant now = Instant.now();
+
+        Entry entry = new Entry(fingerprint, new CompletableFuture<>(), now.plus(ttl));
+        Entry existing = entries.putIfAbsent(storeKey, entry);
+        if (existing != null && existing.isExpired(now) && entries.replace(storeKey, existing, entry))
+            existing = null;
+        if (existing != null)
+            return replay(existing, fingerprint, bodyType);
+
+        insertionOrder.add(new QueuedKey(storeKey, entry));
+        evict(now);
+
+        try {
+            Optional<IdempotentResponse> persisted = findPersisted(storeKey);
+            if (persisted.isPresent()) {
+                entry.response().complete(persisted.get());
+                return toResponseEntity(persisted.get(), fingerprint, bodyType);
+            }
+
+            ResponseEntity<T> result = action.get();
+            IdempotentResponse response = new IdempotentResponse(fingerprint, result.getStatusCode().value(), write(result.getBody()));
+            entry.response().complete(response);
+            persist(storeKey, response, entry.expiresAt());
+            return result;
+        } catch (RuntimeException e) {
+            entries.remove(storeKey, entry);
+            entry.response().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private <T> ResponseEntity<T> replay(Entry entry, String fingerprint, Class<T> bodyType) {
+        if (!entry.fingerprint().equals(fingerprint))
+            throw new BadRequestException(HEADER + " has already been used for a different request");
+
+        IdempotentResponse response;
+        try {
+            response = entry.response().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ConflictException("A request with this " + HEADER + " is still in progress");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new InternalErrorException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException(e);
+        }
+        return toResponseEntity(response, fingerprint, bodyType);
+    }
+
+    private <T> ResponseEntity<T> toResponseEntity(IdempotentResponse response, String fingerprint, Class<T> bodyType) {
+        if (!response.fingerprint().equals(fingerprint))
+            throw new BadRequestException(HEADER + " has already been used for a different request");
+
+        try {
+            T body = response.body() != null ? objectMapper.readValue(response.body(), bodyType) : null;
+            return ResponseEntity.status(response.status())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(body);
+        } catch (JsonProcessingException e) {
+            throw new InternalErrorException("Failed to read recorded response", e);
+        }
+    }
+
+    // Keys share one TTL, so insertion order is also expiry order
+    private void evict(Instant now) {
+        QueuedKey oldest;
+        while ((oldest = insertionOrder.peek()) != null) {
+            if (!oldest.entry().isExpired(now) && entries.size() <= maxKeys)
+                return;
+            if (insertionOrder.remove(oldest))
+                entries.remove(oldest.key(), oldest.entry());
+        }
+    }
+
+    private Optional<IdempotentResponse> findPersisted(String storeKey) {
+        if (repository == null)
+            return Optional.empty();
+        try {
+            return repository.find(storeKey);
+        } catch (Exception e) {
+            log.warn("Failed to look up idempotency key {}: {}", storeKey, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void persist(String storeKey, IdempotentResponse response, Instant expiresAt) {
+        if (repository == null)
+            return;
+        try {
+            repository.save(storeKey, response, expiresAt);
+        } catch (Exception e) {
+            log.warn("Failed to persist idempotency key {}: {}", storeKey, e.getMessage());
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new InternalErrorException("Failed to fingerprint request", e);
+        }
+    }
+
+    private String write(Object body) {
+        try {
+            return body != null ? objectMapper.writeValueAsString(body) : null;
+        } catch (JsonProcessingException e) {
+            throw new InternalErrorException("Failed to record response", e);
+        }
+    }
+
+    private record Entry(String fingerprint, CompletableFuture<IdempotentResponse> response, Instant expiresAt) {
+
+        boolean isExpired(Instant now) {
+            return !expiresAt.isAfter(now);
+        }
+    }
+
+    private record QueuedKey(String key, Entry entry) {
+    }
+}
@@ -0,0 +1,5 @@
+package dev.gavin.common.idempotency;
+
+// Response recorded for an idempotency key, with a fingerprint of the request that produced it
+public record IdempotentResponse(String fingerprint, int status, String body) {
+}
@@ -0,0 +1,58 @@
+package dev.gavin.common.idempotency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+
+// Keeps idempotent responses in the service's own database so replays are recognised after a restart or
+// by another instance. The table is not an entity of any service, so it is created here.
+public class JdbcIdempotencyRepository implements IdempotencyRepository {
+    private static final Logger log = LoggerFactory.getLogger(JdbcIdempotencyRepository.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcIdempotencyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void createTable() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS idempotency_keys (
+                    idempotency_key VARCHAR(512) PRIMARY KEY,
+                    fingerprint     VARCHAR(64)  NOT NULL,
+                    status          INTEGER      NOT NULL,
+                    body            TEXT,
+                    expires_at      TIMESTAMP    NOT NULL
+                )
+                """);
+    }
+
+    @Override
+    public Optional<IdempotentResponse> find(String key) {
+        return jdbcTemplate.query(
+                "SELECT fingerprint, status, body FROM idempotency_keys WHERE idempotency_key = ? AND expires_at > ?",
+                (rs, rowNum) -> new IdempotentResponse(rs.getString("fingerprint"), rs.getInt("status"), rs.getString("body")),
+                key, Timestamp.from(Instant.now())).stream().findFirst();
+    }
+
+    @Override
+    public void save(String key, IdempotentResponse response, Instant expiresAt) {
+        jdbcTemplate.update("""
+                INSERT INTO idempotency_keys (idempotency_key, fingerprint, status, body, expires_at)
+                    VALUES (?, ?, ?, ?, ?)
+                    ON CONFLICT (idempotency_key) DO NOTHING
+                """, key, response.fingerprint(), response.status(), response.body(), Timestamp.from(expiresAt));
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval:PT1H}")
+    public void purgeExpired() {
+        int purged = jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at <= ?", Timestamp.from(Instant.now()));
+        if (purged > 0)
+            log.info("Purged {} expired idempotency key(s)", purged);
+    }
+}
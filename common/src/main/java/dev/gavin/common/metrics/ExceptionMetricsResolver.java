@@ -0,0 +1,41 @@
+package dev.gavin.common.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+// Counts exceptions thrown by controllers, tagged by exception type and route. It never resolves the
+// exception itself, so the usual @ResponseStatus handling still decides the response.
+public class ExceptionMetricsResolver implements HandlerExceptionResolver, Ordered {
+
+    static final String ERRORS_METRIC = "http.server.errors";
+
+    private final MeterRegistry meterRegistry;
+
+    public ExceptionMetricsResolver(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                         Exception ex) {
+        Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Counter.builder(ERRORS_METRIC)
+                .tags("exception", ex.getClass().getSimpleName(),
+                        "method", request.getMethod(),
+                        "uri", route != null ? route.toString() : "UNKNOWN")
+                .register(meterRegistry)
+                .increment();
+        return null;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
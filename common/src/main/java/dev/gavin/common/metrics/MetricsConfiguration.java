@@ -0,0 +1,23 @@
+package dev.gavin.common.metrics;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Routes, repository queries and Hikari acquire times are timed by Boot itself; this adds the @Timed
+// service methods and the per-exception error counter. Histograms are switched on per metric in
+// management.metrics.distribution.percentiles-histogram.
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public ExceptionMetricsResolver exceptionMetricsResolver(MeterRegistry meterRegistry) {
+        return new ExceptionMetricsResolver(meterRegistry);
+    }
+}
@@ -0,0 +1,103 @@
+package dev.gavin.common.pagination;
+
+import dev.gavin.common.dto.SliceDTO;
+import dev.gavin.common.exception.BadRequestException;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Keyset (seek) pagination helpers. Rows are ordered by the sort column with the id as tie-breaker, and
+// each slice starts strictly after the last row of the previous one, so no rows are skipped with
+// OFFSET and no COUNT is run however deep a client pages. A sort column may hold NULLs, which are ordered the
+// PostgreSQL way: as larger than any value, so last when ascending and first when descending.
+public final class Keyset {
+
+    public static final String ID = "id";
+
+    public static final int MAX_SIZE = 1000;
+
+    private Keyset() {
+    }
+
+    public static <T> KeysetField<T> field(Map<String, KeysetField<T>> fields, String sortBy) {
+        KeysetField<T> field = fields.get(sortBy);
+        if (field == null)
+            throw new BadRequestException("Cannot page by " + sortBy + ", expected one of " + fields.keySet());
+        return field;
+    }
+
+    public static void validateSize(int size) {
+        if (size < 1 || size > MAX_SIZE)
+            throw new BadRequestException("Size must be between 1 and " + MAX_SIZE);
+    }
+
+    public static Sort sort(String sortBy, Sort.Direction direction) {
+        Sort sort = Sort.by(direction, sortBy);
+        return ID.equals(sortBy) ? sort : sort.and(Sort.by(direction, ID));
+    }
+
+    // Returns null for the first slice, which Specification composition treats as no restriction.
+    public static <T> Specification<T> after(String cursor, String sortBy, Sort.Direction direction, KeysetField<T> field) {
+        if (cursor == null || cursor.isBlank())
+            return null;
+
+        KeysetCursor keysetCursor = KeysetCursor.decode(cursor);
+        if (!keysetCursor.isFor(sortBy, direction))
+            throw new BadRequestException("Cursor was issued for a different sort order");
+
+        Comparable<?> lastValue = null;
+        try {
+            if (keysetCursor.getLastValue() != null)
+                lastValue = field.parse(keysetCursor.getLastValue());
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        return after(sortBy, direction, lastValue, keysetCursor.getLastId());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Specification<T> after(String sortBy, Sort.Direction direction, Comparable lastValue, Long lastId) {
+        return (root, query, criteriaBuilder) -> {
+            Path<Long> id = root.get(ID);
+            Predicate idAfter = direction.isAscending()
+                    ? criteriaBuilder.greaterThan(id, lastId)
+                    : criteriaBuilder.lessThan(id, lastId);
+            if (ID.equals(sortBy))
+                return idAfter;
+
+            Path<Comparable> key = root.get(sortBy);
+            if (lastValue == null) {
+                // Past the NULLs there is nothing left when ascending and every non-null key when descending
+                Predicate nullAfter = criteriaBuilder.and(criteriaBuilder.isNull(key), idAfter);
+                return direction.isAscending() ? nullAfter : criteriaBuilder.or(nullAfter, criteriaBuilder.isNotNull(key));
+            }
+
+            Predicate keyAfter = direction.isAscending()
+                    ? criteriaBuilder.or(criteriaBuilder.greaterThan(key, lastValue), criteriaBuilder.isNull(key))
+                    : criteriaBuilder.lessThan(key, lastValue);
+            return criteriaBuilder.or(keyAfter, criteriaBuilder.and(criteriaBuilder.equal(key, lastValue), idAfter));
+        };
+    }
+
+    // Expects up to size + 1 rows; the extra row only signals that another slice follows.
+    public static <T, R> SliceDTO<R> slice(List<T> rows, int size, String sortBy, Sort.Direction direction,
+                                           KeysetField<T> field, Function<T, Long> idOf, Function<T, R> mapper) {
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+
+        String nextCursor = null;
+        if (hasNext) {
+            T last = content.get(content.size() - 1);
+            Comparable<?> lastValue = field.valueOf(last);
+            nextCursor = new KeysetCursor(sortBy, direction, idOf.apply(last),
+                    lastValue != null ? String.valueOf(lastValue) : null).encode();
+        }
+
+        return new SliceDTO<>(content.stream().map(mapper).toList(), content.size(), hasNext, nextCursor);
+    }
+}
@@ -0,0 +1,48 @@
+package dev.gavin.common.pagination;
+
+import dev.gavin.common.exception.BadRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Opaque continuation token holding the sort key and id of the last row a client has seen. A null sort key is
+// encoded by leaving the value part out, so it cannot be confused with a key that reads "null".
+@Getter
+@AllArgsConstructor
+public class KeysetCursor {
+    private static final String SEPARATOR = "|";
+
+    private final String sortBy;
+    private final Sort.Direction direction;
+    private final Long lastId;
+    private final String lastValue;
+
+    public String encode() {
+        String raw = String.join(SEPARATOR, sortBy, direction.name(), String.valueOf(lastId));
+        if (lastValue != null)
+            raw += SEPARATOR + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // The sort value goes last so that it may contain the separator itself
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length < 3)
+                throw new IllegalArgumentException("Expected 3 or 4 cursor parts but got " + parts.length);
+
+            return new KeysetCursor(parts[0], Sort.Direction.valueOf(parts[1]), Long.valueOf(parts[2]),
+                    parts.length == 4 ? parts[3] : null);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public boolean isFor(String sortBy, Sort.Direction direction) {
+        return this.sortBy.equals(sortBy) && this.direction == direction;
+    }
+}
@@ -0,0 +1,28 @@
+package dev.gavin.common.pagination;
+
+import java.util.function.Function;
+
+// A column that cursor-paged listings may be sorted by: how to read it from a row and how to turn the
+// value stored in a cursor back into something comparable with it.
+public class KeysetField<T> {
+    private final Function<T, ? extends Comparable<?>> extractor;
+    private final Function<String, ? extends Comparable<?>> parser;
+
+    private KeysetField(Function<T, ? extends Comparable<?>> extractor, Function<String, ? extends Comparable<?>> parser) {
+        this.extractor = extractor;
+        this.parser = parser;
+    }
+
+    public static <T> KeysetField<T> of(Function<T, ? extends Comparable<?>> extractor,
+                                        Function<String, ? extends Comparable<?>> parser) {
+        return new KeysetField<>(extractor, parser);
+    }
+
+    public Comparable<?> valueOf(T row) {
+        return extractor.apply(row);
+    }
+
+    public Comparable<?> parse(String value) {
+        return parser.apply(value);
+    }
+}
@@ -0,0 +1,31 @@
+package dev.gavin.common.schema;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Hibernate adds a check constraint listing the event types when an event table is first created and never
+// widens it on schema update, so tables created before UPDATED existed would reject those rows. The enum
+// mapping already guards the column, so the constraint is dropped rather than recreated.
+public class EventSchemaInitializer implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final SchemaTasks schemaTasks;
+
+    private final String table;
+
+    public EventSchemaInitializer(JdbcTemplate jdbcTemplate, SchemaTasks schemaTasks, String table) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaTasks = schemaTasks;
+        this.table = table;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!schemaTasks.isPostgres())
+            return;
+
+        jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + table + "_type_check");
+    }
+}
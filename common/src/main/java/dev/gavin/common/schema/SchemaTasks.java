@@ -0,0 +1,52 @@
+package dev.gavin.common.schema;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+// Shared by the startup initializers that do what Hibernate's schema update cannot: tells them which database
+// they run against and remembers which one-off tasks, such as backfills, have completed so a restart does not
+// rescan whole tables. The task table is not an entity of any service, so it is created here.
+public class SchemaTasks {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean postgres;
+
+    public SchemaTasks(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void createTable() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS schema_tasks (
+                    task         VARCHAR(255) PRIMARY KEY,
+                    completed_at TIMESTAMP    NOT NULL
+                )
+                """);
+    }
+
+    public boolean isPostgres() {
+        if (postgres == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            postgres = "PostgreSQL".equalsIgnoreCase(product);
+        }
+        return postgres;
+    }
+
+    // Runs the task unless an earlier start completed it and returns whether it ran. Instances starting
+    // together may both run it, so tasks must be safe to repeat.
+    public boolean runOnce(String task, Runnable work) {
+        Integer completed = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_tasks WHERE task = ?", Integer.class, task);
+        if (completed != null && completed > 0)
+            return false;
+
+        work.run();
+        jdbcTemplate.update("INSERT INTO schema_tasks (task, completed_at) VALUES (?, ?) ON CONFLICT (task) DO NOTHING",
+                task, Timestamp.from(Instant.now()));
+        return true;
+    }
+}
@@ -0,0 +1,269 @@
+package dev.gavin.common.events;
+
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventCounterConsumerTest {
+
+    private static final String EVENTS_URL = "http://owner/api/children/events";
+
+    private static final String COUNTS_URL = "http://owner/api/children/count/parents";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private InMemoryCounterConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        consumer = new InMemoryCounterConsumer(restTemplate, transactionTemplate);
+    }
+
+    @Test
+    void pollEvents_Redelivered_AppliesEventsOnceAndAdvancesOffset() {
+        // Given the same batch delivered twice, the second time after its offset was stored
+        consumer.offset = 5L;
+        consumer.counts.put(1L, 1L);
+        when(restTemplate.getForObject(EVENTS_URL + "?after=5&limit=1000", ReferenceEventDTO[].class))
+                .thenReturn(new ReferenceEventDTO[]{
+                        event(5L, ReferenceEventType.CREATED, 1L),
+                        event(6L, ReferenceEventType.CREATED, 1L),
+                        event(7L, ReferenceEventType.CREATED, 2L),
+                        event(8L, ReferenceEventType.DELETED, 2L),
+                        event(9L, ReferenceEventType.CREATED, 2L),
+                        event(10L, ReferenceEventType.UPDATED, 2L)});
+        when(restTemplate.getForObject(EVENTS_URL + "?after=10&limit=1000", ReferenceEventDTO[].class))
+                .thenReturn(new ReferenceEventDTO[]{event(10L, ReferenceEventType.UPDATED, 2L)});
+
+        // When
+        consumer.pollEvents();
+        consumer.pollEvents();
+
+        // Then
+        assertEquals(Map.of(1L, 2L, 2L, 1L), consumer.counts);
+        assertEquals(10L, consumer.offset);
+    }
+
+    @Test
+    void pollEvents_WhenOwnerIsDown_KeepsOffset() {
+        // Given
+        consumer.offset = 5L;
+        when(restTemplate.getForObject(anyString(), eq(ReferenceEventDTO[].class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        // When
+        consumer.pollEvents();
+
+        // Then
+        assertEquals(5L, consumer.offset);
+        assertTrue(consumer.counts.isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_WithoutOffset_SeedsCountersAtHead() {
+        // Given
+        consumer.parentIds.addAll(List.of(1L, 2L));
+        when(restTemplate.getForObject(EVENTS_URL + "/head", Long.class)).thenReturn(42L);
+        when(restTemplate.exchange(eq(COUNTS_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, 2L, 2L, 0L)));
+
+        // When
+        consumer.pollEvents();
+
+        // Then
+        assertEquals(Map.of(1L, 2L), consumer.counts);
+        assertEquals(42L, consumer.offset);
+        assertTrue(consumer.isTracking());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_ChildDeletedWhileSeeding_IsNotCountedTwice() {
+        // Given parent 1 with two children, one of which is deleted after the head was read but before the recount
+        consumer.parentIds.add(1L);
+        when(restTemplate.getForObject(EVENTS_URL + "/head", Long.class)).thenReturn(42L, 43L, 43L);
+        when(restTemplate.exchange(eq(COUNTS_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, 1L)));
+        when(restTemplate.getForObject(EVENTS_URL + "?after=42&limit=1000", ReferenceEventDTO[].class))
+                .thenReturn(new ReferenceEventDTO[]{event(43L, ReferenceEventType.DELETED, 1L)});
+
+        // When the counters are seeded and the feed is polled again
+        consumer.pollEvents();
+        consumer.pollEvents();
+
+        // Then the delete is in the recount only
+        assertEquals(Map.of(1L, 1L), consumer.counts);
+        assertEquals(43L, consumer.offset);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_EventsKeepArrivingWhileSeeding_DoesNotStoreOffset() {
+        // Given
+        consumer.parentIds.add(1L);
+        when(restTemplate.getForObject(EVENTS_URL + "/head", Long.class)).thenReturn(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        when(restTemplate.exchange(eq(COUNTS_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, 1L)));
+        when(restTemplate.getForObject(startsWith(EVENTS_URL + "?after="), eq(ReferenceEventDTO[].class)))
+                .thenReturn(new ReferenceEventDTO[0]);
+
+        // When
+        consumer.pollEvents();
+
+        // Then
+        assertNull(consumer.offset);
+        assertFalse(consumer.isTracking());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reconcile_UnderOffsetLock_SkipsParentsWithPendingEvents() {
+        // Given parent 1 with an event past the stored offset, which its actual count may already include
+        consumer.offset = 5L;
+        consumer.parentIds.addAll(List.of(1L, 2L));
+        when(restTemplate.exchange(eq(COUNTS_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, 3L, 2L, 1L)));
+        when(restTemplate.getForObject(EVENTS_URL + "?after=5&limit=1000", ReferenceEventDTO[].class))
+                .thenReturn(new ReferenceEventDTO[]{event(6L, ReferenceEventType.CREATED, 1L)});
+
+        // When
+        consumer.reconcile();
+
+        // Then
+        assertEquals(Map.of(2L, 1L), consumer.counts);
+        assertEquals(1, consumer.locks);
+        assertEquals(5L, consumer.offset);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reconcile_MorePendingEventsThanOneBatch_RepairsNothing() {
+        // Given
+        consumer.batchSize = 1;
+        consumer.offset = 5L;
+        consumer.parentIds.addAll(List.of(1L, 2L));
+        when(restTemplate.exchange(eq(COUNTS_URL), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, 3L, 2L, 1L)));
+        when(restTemplate.getForObject(EVENTS_URL + "?after=5&limit=1", ReferenceEventDTO[].class))
+                .thenReturn(new ReferenceEventDTO[]{event(6L, ReferenceEventType.CREATED, 1L)});
+
+        // When
+        consumer.reconcile();
+
+        // Then
+        assertTrue(consumer.counts.isEmpty());
+    }
+
+    private ReferenceEventDTO event(long offset, ReferenceEventType type, long parentId) {
+        return new ReferenceEventDTO(offset, type, parentId, offset * 10, LocalDateTime.now());
+    }
+
+    private static class InMemoryCounterConsumer extends EventCounterConsumer {
+
+        private final TreeSet<Long> parentIds = new TreeSet<>();
+
+        private final Map<Long, Long> counts = new HashMap<>();
+
+        private Long offset;
+
+        private int locks;
+
+        private int batchSize = 1000;
+
+        InMemoryCounterConsumer(RestTemplate restTemplate, TransactionTemplate transactionTemplate) {
+            super(restTemplate, transactionTemplate, "owner.child-events");
+        }
+
+        @Override
+        protected boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        protected String eventsUrl() {
+            return EVENTS_URL;
+        }
+
+        @Override
+        protected String countsUrl() {
+            return COUNTS_URL;
+        }
+
+        @Override
+        protected int batchSize() {
+            return batchSize;
+        }
+
+        @Override
+        protected int reconcileChunkSize() {
+            return 1000;
+        }
+
+        @Override
+        protected Optional<Long> findOffset() {
+            return Optional.ofNullable(offset);
+        }
+
+        @Override
+        protected Optional<Long> lockOffset() {
+            locks++;
+            return Optional.ofNullable(offset);
+        }
+
+        @Override
+        protected void saveOffset(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        protected List<Long> findParentIdsAfter(long after, int limit) {
+            return parentIds.tailSet(after, false).stream().limit(limit).toList();
+        }
+
+        @Override
+        protected Map<Long, Long> findCounts(Collection<Long> parentIds) {
+            return parentIds.stream()
+                    .filter(counts::containsKey)
+                    .collect(Collectors.toMap(parentId -> parentId, counts::get));
+        }
+
+        @Override
+        protected void saveCounts(Map<Long, Long> counts) {
+            this.counts.putAll(counts);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package dev.gavin.common.metrics;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of the instrumentation against the plain call path, on a Prometheus registry with histograms on:
+//   plainCall / timedAspectCall  - a service method without and with the @Timed proxy
+//   timerRecord                  - a pre-registered histogram timer, as Boot uses for routes and queries
+//   timerLookupAndRecord         - builder lookup per call, as the client interceptor does
+//   errorCounter                 - the per-exception counter
+//
+//   mvn -pl common -am test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=dev.gavin.common.metrics.MetricsOverheadBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    private Service plainService;
+
+    private Service timedService;
+
+    private PrometheusMeterRegistry registry;
+
+    private Timer timer;
+
+    @Setup
+    public void setUp() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        timer = Timer.builder("bench.timer").publishPercentileHistogram().register(registry);
+
+        plainService = new Service();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new Service());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new TimedAspect(registry));
+        timedService = proxyFactory.getProxy();
+    }
+
+    @Benchmark
+    public long plainCall() {
+        return plainService.work();
+    }
+
+    @Benchmark
+    public long timedAspectCall() {
+        return timedService.work();
+    }
+
+    @Benchmark
+    public long timerRecord() {
+        return timer.record(plainService::work);
+    }
+
+    @Benchmark
+    public void timerLookupAndRecord(Blackhole blackhole) {
+        long start = System.nanoTime();
+        blackhole.consume(plainService.work());
+        Timer.builder("bench.client")
+                .tags("destination", "account-service:8082", "uri", "/api/accounts/exists/{id}", "method", "GET", "status", "200")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public void errorCounter() {
+        Counter.builder("bench.errors")
+                .tags("exception", "BadRequestException", "method", "POST", "uri", "/api/accounts")
+                .register(registry)
+                .increment();
+    }
+
+    @Timed(value = "bench.service", histogram = true)
+    public static class Service {
+
+        public long work() {
+            Blackhole.consumeCPU(64);
+            return 42L;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MetricsOverheadBenchmark.class.getSimpleName()).build()).run();
+    }
+}
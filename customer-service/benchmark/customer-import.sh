@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# Bulk customer import throughput.
+#
+# Generates ROWS synthetic customers as gzipped CSV and uploads them to POST /api/customers/import, then
+# prints the summary line of the streamed report, which carries rows/second as measured by the service.
+# Watch the heap of customer-service (jvm.memory.used on /actuator/metrics) while it runs; it should stay
+# flat whatever ROWS is.
+#
+#   ROWS=5000000 ./customer-import.sh
+set -euo pipefail
+
+ROWS=${ROWS:-1000000}
+CUSTOMER_URL=${CUSTOMER_URL:-http://localhost:8081}
+FILE=${FILE:-/tmp/customers-${ROWS}.csv.gz}
+
+if [ ! -f "$FILE" ]; then
+  awk -v rows="$ROWS" 'BEGIN {
+    print "firstName,lastName,otherName"
+    for (i = 1; i <= rows; i++) printf "First%d,Last%d,%s\n", i % 5000, i % 20011, (i % 3 == 0 ? "Other" (i % 97) : "")
+  }' | gzip -1 > "$FILE"
+fi
+
+time curl -sS --fail -X POST "$CUSTOMER_URL/api/customers/import?format=csv" \
+  -H 'Content-Type: text/csv' -H 'Content-Encoding: gzip' \
+  --data-binary @"$FILE" | tail -n 1
+echo
@@ -0,0 +1,63 @@
+-- Customer name search benchmark for CustomerRepository.searchByName.
+--
+-- Loads :rows synthetic customers into a scratch table shaped like customers and times the old
+-- three-column LOWER(...) LIKE scan against the trigram-indexed name_search query, with and without the
+-- created_at filter. Run against a throwaway database:
+--
+--   psql -d customer_bench -v rows=20000000 -f customer-name-search.sql
+--
+-- Compare the "Execution Time" lines; repeat each query a few times to read warm-cache timings.
+
+\timing on
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP TABLE IF EXISTS customers_bench;
+CREATE TABLE customers_bench (
+    id          BIGSERIAL PRIMARY KEY,
+    first_name  VARCHAR(255) NOT NULL,
+    last_name   VARCHAR(255) NOT NULL,
+    other_name  VARCHAR(255),
+    name_search VARCHAR(255),
+    created_at  TIMESTAMP    NOT NULL,
+    deleted     BOOLEAN      NOT NULL DEFAULT false
+);
+
+INSERT INTO customers_bench (first_name, last_name, other_name, name_search, created_at)
+SELECT first_name, last_name, other_name, LOWER(CONCAT_WS(' ', first_name, last_name, other_name)), created_at
+FROM (SELECT (ARRAY ['John', 'Mary', 'Wanjiku', 'Otieno', 'Amina', 'Kamau', 'Zoe', 'Peter'])[1 + n % 8] ||
+             (n % 5000)::text                                                             AS first_name,
+             (ARRAY ['Smith', 'Mwangi', 'Odhiambo', 'Njoroge', 'Achieng', 'Muller'])[1 + n % 6] ||
+             (n % 20011)::text                                                            AS last_name,
+             CASE WHEN n % 3 = 0 THEN 'Other' || (n % 97)::text END                       AS other_name,
+             TIMESTAMP '2015-01-01' + (n % 3650) * INTERVAL '1 day'                       AS created_at
+      FROM generate_series(1, :rows) AS n) generated;
+ANALYZE customers_bench;
+
+-- Before: sequential scan over three lowered columns
+EXPLAIN ANALYZE
+SELECT * FROM customers_bench c
+WHERE c.deleted = false AND (LOWER(c.first_name) LIKE '%mwangi1234%' OR LOWER(c.last_name) LIKE '%mwangi1234%' OR
+                             LOWER(c.other_name) LIKE '%mwangi1234%')
+ORDER BY c.id DESC LIMIT 10;
+
+CREATE INDEX idx_customers_bench_name_search_trgm ON customers_bench USING gin (name_search gin_trgm_ops) WHERE deleted = false;
+CREATE INDEX idx_customers_bench_created_at ON customers_bench (created_at);
+ANALYZE customers_bench;
+
+-- After: trigram index, ranked
+EXPLAIN ANALYZE
+SELECT * FROM customers_bench c
+WHERE c.deleted = false AND c.name_search LIKE '%mwangi1234%'
+ORDER BY similarity(c.name_search, 'mwangi1234') DESC, c.id DESC LIMIT 10;
+
+EXPLAIN ANALYZE
+SELECT * FROM customers_bench c
+WHERE c.deleted = false AND c.name_search LIKE '%john42 mwangi%'
+ORDER BY similarity(c.name_search, 'john42 mwangi') DESC, c.id DESC LIMIT 10;
+
+-- After, combined with the created_at filter
+EXPLAIN ANALYZE
+SELECT * FROM customers_bench c
+WHERE c.deleted = false AND c.name_search LIKE '%mwangi1234%' AND
+      c.created_at >= TIMESTAMP '2020-01-01' AND c.created_at <= TIMESTAMP '2020-12-31 23:59:59'
+ORDER BY similarity(c.name_search, 'mwangi1234') DESC, c.id DESC LIMIT 10;
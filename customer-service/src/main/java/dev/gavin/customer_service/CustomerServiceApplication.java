@@ -1,20 +1,88 @@
 package dev.gavin.customer_service;
 
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.concurrency.ConcurrencyLimitFilter;
+import dev.gavin.common.concurrency.PinnedThreadMonitor;
+import dev.gavin.common.existence.IdFilter;
+import dev.gavin.common.http.MeteredClientHttpRequestInterceptor;
+import dev.gavin.common.http.ServiceClientConfiguration;
+import dev.gavin.common.idempotency.IdempotencyConfiguration;
+import dev.gavin.common.metrics.MetricsConfiguration;
+import dev.gavin.common.schema.SchemaTasks;
+import dev.gavin.customer_service.repository.CustomerRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+
 @SpringBootApplication
+@EnableScheduling
+@Import({ServiceClientConfiguration.class, IdempotencyConfiguration.class, MetricsConfiguration.class})
 public class CustomerServiceApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(CustomerServiceApplication.class, args);
     }
 
+    // Sized against the connection pool so virtual threads queue here rather than on Hikari
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+            @Value("${virtual-threads.requests-per-connection:4}") int requestsPerConnection,
+            @Value("${virtual-threads.max-wait:PT2S}") Duration maxWait) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(poolSize * requestsPerConnection, maxWait));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public PinnedThreadMonitor pinnedThreadMonitor(@Value("${virtual-threads.pinned-threshold:PT0.02S}") Duration threshold) {
+        return new PinnedThreadMonitor(threshold);
+    }
+
+    // Profile rebuilds run here, off the request-sized applicationTaskExecutor
+    @Bean(destroyMethod = "close")
+    public BackgroundTasks backgroundTasks(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${background-tasks.pool-size:8}") int poolSize) {
+        return BackgroundTasks.pool(poolSize, virtualThreads);
+    }
+
+    // Enrichment calls stop reading at the enrichment deadline instead of running on after the request gave up
+    @Bean
+    public RestTemplate enrichmentRestTemplate(ServiceClientConfiguration serviceClients,
+            RestTemplateBuilder restTemplateBuilder, MeteredClientHttpRequestInterceptor meteredInterceptor,
+            @Value("${customer.enrichment.timeout:PT2S}") Duration timeout) {
+        return serviceClients.restTemplateWithReadTimeout(restTemplateBuilder, meteredInterceptor, timeout);
+    }
+
+    @Bean(initMethod = "createTable")
+    public SchemaTasks schemaTasks(JdbcTemplate jdbcTemplate) {
+        return new SchemaTasks(jdbcTemplate);
+    }
+
+    // Bloom filter answering fast negatives for POST /api/customers/exists/batch
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public IdFilter customerIdFilter(CustomerRepository customerRepository, TransactionTemplate transactionTemplate,
+            @Value("${id-filter.enabled:false}") boolean enabled,
+            @Value("${id-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${id-filter.trailing-ids:10000}") long trailingIds) {
+        return new IdFilter("customer", transactionTemplate, customerRepository::findMaxId,
+                customerRepository::streamIdsUpTo, enabled, falsePositiveRate, trailingIds);
     }
 
 }
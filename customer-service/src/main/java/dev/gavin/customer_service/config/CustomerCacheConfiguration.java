@@ -0,0 +1,52 @@
+package dev.gavin.customer_service.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+
+// Local Caffeine-backed JCache for Hibernate's second-level cache. Every region is created here with a size
+// bound and a TTL; Hibernate is set to fail rather than create an unbounded region for anything else.
+@Configuration
+public class CustomerCacheConfiguration {
+
+    public static final String CUSTOMERS_REGION = "customers";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager customerCacheManager(@Value("${customer.cache.max-entries:100000}") long maxEntries,
+                                             @Value("${customer.cache.ttl:PT10M}") Duration ttl) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        CaffeineConfiguration<Object, Object> customers = new CaffeineConfiguration<>();
+        customers.setMaximumSize(OptionalLong.of(maxEntries));
+        customers.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        // Feeds the cache.gets/puts/evictions meters bound below
+        customers.setStatisticsEnabled(true);
+        cacheManager.createCache(CUSTOMERS_REGION, customers);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer customerCacheHibernateProperties(CacheManager customerCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, customerCacheManager);
+    }
+
+    @Bean
+    public JCacheMetrics<Object, Object, Cache<Object, Object>> customerCacheMetrics(CacheManager customerCacheManager) {
+        return new JCacheMetrics<>(customerCacheManager.getCache(CUSTOMERS_REGION), List.of(Tag.of("region", CUSTOMERS_REGION)));
+    }
+}
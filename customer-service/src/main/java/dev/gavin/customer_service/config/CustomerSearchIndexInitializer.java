@@ -0,0 +1,94 @@
+package dev.gavin.customer_service.config;
+
+import dev.gavin.common.schema.SchemaTasks;
+import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.utils.NameSearch;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+
+// Hibernate's schema update cannot create extensions or GIN indexes, so the trigram index behind the name
+// search is created here once the table exists. Keys are backfilled first, once, in chunks; they are computed
+// with NameSearch, as for new rows and search terms, since no SQL folding agrees with it on letters like ø or ß.
+@Component
+public class CustomerSearchIndexInitializer implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(CustomerSearchIndexInitializer.class);
+
+    private static final String BACKFILL_TASK = "customers.name-search-backfill";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final SchemaTasks schemaTasks;
+
+    @Value("${customer.search.create-indexes:true}")
+    private boolean createIndexes = true;
+
+    @Value("${customer.search.backfill-chunk-size:1000}")
+    private int backfillChunkSize = 1000;
+
+    public CustomerSearchIndexInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                                          SchemaTasks schemaTasks) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.schemaTasks = schemaTasks;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!createIndexes || !schemaTasks.isPostgres())
+            return;
+
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        schemaTasks.runOnce(BACKFILL_TASK, this::backfill);
+        jdbcTemplate.execute("""
+                CREATE INDEX IF NOT EXISTS idx_customers_name_search_trgm ON customers
+                    USING gin (name_search gin_trgm_ops) WHERE deleted = false
+                """);
+    }
+
+    // Rows keyed by an earlier SQL backfill are rekeyed too, so every stored key matches what NameSearch makes
+    private void backfill() {
+        int backfilled = 0;
+        long after = 0L;
+        List<KeyedRow> chunk;
+        while (!(chunk = findRowsAfter(after)).isEmpty()) {
+            List<Object[]> changed = chunk.stream()
+                    .filter(row -> !Objects.equals(row.key(), row.storedKey()))
+                    .map(row -> new Object[]{row.key(), row.id()})
+                    .toList();
+            if (!changed.isEmpty())
+                jdbcTemplate.batchUpdate("UPDATE customers SET name_search = ? WHERE id = ?", changed);
+            backfilled += changed.size();
+            after = chunk.get(chunk.size() - 1).id();
+        }
+        if (backfilled > 0) {
+            log.info("Backfilled name search keys for {} customer(s)", backfilled);
+            // The update bypassed Hibernate, so cached customers would still have the old key
+            entityManagerFactory.getCache().evict(Customer.class);
+        }
+    }
+
+    private List<KeyedRow> findRowsAfter(long after) {
+        return jdbcTemplate.query("""
+                        SELECT id, first_name, last_name, other_name, name_search FROM customers
+                            WHERE id > ? ORDER BY id LIMIT ?
+                        """,
+                (rs, rowNum) -> new KeyedRow(rs.getLong("id"),
+                        NameSearch.key(rs.getString("first_name"), rs.getString("last_name"), rs.getString("other_name")),
+                        rs.getString("name_search")),
+                after, backfillChunkSize);
+    }
+
+    private record KeyedRow(long id, String key, String storedKey) {
+    }
+}
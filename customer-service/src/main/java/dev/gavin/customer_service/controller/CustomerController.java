@@ -1,30 +1,90 @@
 package dev.gavin.customer_service.controller;
 
 import dev.gavin.common.dto.CustomerDTO;
+import dev.gavin.common.dto.CustomerIdChangesDTO;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
+import dev.gavin.common.existence.ExistenceFormat;
+import dev.gavin.common.http.AsyncRequestTimeout;
+import dev.gavin.common.idempotency.IdempotencyStore;
+import dev.gavin.customer_service.dto.CustomerIdSnapshot;
+import dev.gavin.customer_service.dto.CustomerPageDTO;
 import dev.gavin.customer_service.dto.CustomerSearchCriteria;
+import dev.gavin.customer_service.dto.ImportFormat;
+import dev.gavin.customer_service.dto.TotalMode;
+import dev.gavin.customer_service.service.CustomerImportService;
+import dev.gavin.customer_service.service.CustomerProfileService;
 import dev.gavin.customer_service.service.CustomerService;
-import org.springframework.data.domain.Page;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/customers")
 public class CustomerController {
 
+    private static final String WATERMARK_HEADER = "X-Customer-Ids-Watermark";
+
+    private static final String NEXT_HEADER = "X-Customer-Ids-Next-After";
+
     private final CustomerService customerService;
 
-    public CustomerController(CustomerService customerService) {
+    private final IdempotencyStore idempotencyStore;
+
+    private final CustomerImportService customerImportService;
+
+    private final CustomerProfileService customerProfileService;
+
+    @Value("${customer.import.request-timeout:PT2H}")
+    private Duration importTimeout = Duration.ofHours(2);
+
+    public CustomerController(CustomerService customerService, IdempotencyStore idempotencyStore,
+                              CustomerImportService customerImportService,
+                              CustomerProfileService customerProfileService) {
         this.customerService = customerService;
+        this.idempotencyStore = idempotencyStore;
+        this.customerImportService = customerImportService;
+        this.customerProfileService = customerProfileService;
     }
 
     @PostMapping
-    public ResponseEntity<CustomerDTO> createCustomer(@RequestBody CustomerDTO customerDTO) {
-        CustomerDTO createdCustomer = customerService.createCustomer(customerDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdCustomer);
+    public ResponseEntity<CustomerDTO> createCustomer(
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody CustomerDTO customerDTO) {
+        return idempotencyStore.execute("customers.create", idempotencyKey, customerDTO, CustomerDTO.class, () -> {
+            CustomerDTO createdCustomer = customerService.createCustomer(customerDTO);
+            return ResponseEntity.status(HttpStatus.CREATED).body(createdCustomer);
+        });
+    }
+
+    // The body is read while the report is written, so a file of any size is imported in one request. The
+    // report streams for as long as the upload takes, so this request alone gets the longer import timeout.
+    @PostMapping(value = "/import", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importCustomers(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            InputStream customers, HttpServletRequest request) {
+        AsyncRequestTimeout.extend(request, importTimeout);
+        ImportFormat importFormat = ImportFormat.from(format);
+        boolean gzip = "gzip".equalsIgnoreCase(contentEncoding);
+        StreamingResponseBody report = out -> customerImportService.importCustomers(importFormat, gzip, customers, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(report);
     }
 
     @GetMapping("/{id}")
@@ -33,11 +93,28 @@ public class CustomerController {
         return ResponseEntity.ok(customer);
     }
 
+    // The customer with all accounts and cards, served from the locally maintained read model
+    @GetMapping(value = "/{id}/profile", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getCustomerProfile(@PathVariable Long id) {
+        String profile = customerProfileService.getProfile(id);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(profile);
+    }
+
+    @PostMapping("/profiles/rebuild")
+    public ResponseEntity<Void> rebuildCustomerProfiles() {
+        customerProfileService.startRebuild();
+        return ResponseEntity.accepted().build();
+    }
+
+    // total=exact runs a COUNT(*) and total=estimate reads the planner's estimate; by default no total is computed
     @GetMapping
-    public ResponseEntity<Page<CustomerDTO>> fetchCustomers(
+    public ResponseEntity<CustomerPageDTO> fetchCustomers(
             CustomerSearchCriteria criteria,
+            @RequestParam(defaultValue = "none") String total,
             @PageableDefault(size = 10, sort = "id", direction = Sort.Direction.DESC) Pageable pageable) {
-        Page<CustomerDTO> customers = customerService.fetchCustomers(criteria, pageable);
+        CustomerPageDTO customers = customerService.listCustomers(criteria, pageable, TotalMode.from(total));
         return ResponseEntity.ok(customers);
     }
 
@@ -60,4 +137,39 @@ public class CustomerController {
         boolean exists = customerService.existsById(id);
         return ResponseEntity.ok(exists);
     }
+
+    @PostMapping("/exists")
+    public ResponseEntity<List<Long>> findExistingCustomerIds(@RequestBody List<Long> ids) {
+        List<Long> existingIds = customerService.findExistingIds(ids);
+        return ResponseEntity.ok(existingIds);
+    }
+
+    // format=bitset answers with one bit per requested id, format=missing with the sorted ids that do not exist
+    @PostMapping("/exists/batch")
+    public ResponseEntity<ExistenceDTO> checkCustomersExist(
+            @RequestParam(defaultValue = "bitset") String format,
+            @RequestBody ExistenceRequestDTO request) {
+        ExistenceDTO existence = customerService.checkExistence(request, ExistenceFormat.from(format));
+        return ResponseEntity.ok(existence);
+    }
+
+    // Paged by id: NEXT_HEADER carries the after value of the next page and is left out on the last one
+    @GetMapping(value = "/ids/snapshot", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> snapshotCustomerIds(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(required = false) Integer limit) {
+        CustomerIdSnapshot snapshot = customerService.snapshotCustomerIds(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(WATERMARK_HEADER, snapshot.getWatermark().toString());
+        if (snapshot.getNextAfter() != null)
+            response.header(NEXT_HEADER, snapshot.getNextAfter().toString());
+        return response.body(snapshot.getBitmap());
+    }
+
+    @GetMapping("/ids/changes")
+    public ResponseEntity<CustomerIdChangesDTO> findCustomerIdChanges(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+        CustomerIdChangesDTO changes = customerService.findCustomerIdChanges(since);
+        return ResponseEntity.ok(changes);
+    }
 }
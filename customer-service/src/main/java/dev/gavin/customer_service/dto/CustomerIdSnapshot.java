@@ -0,0 +1,16 @@
+package dev.gavin.customer_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class CustomerIdSnapshot {
+    // Roaring64NavigableMap serialization of one page of the live customer ids
+    private byte[] bitmap;
+    private LocalDateTime watermark;
+    // Id to ask the next page after; null on the last page
+    private Long nextAfter;
+}
@@ -0,0 +1,24 @@
+package dev.gavin.customer_service.dto;
+
+import dev.gavin.common.dto.CustomerDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+// One page of customers. totalElements is only filled in when a total was asked for, and is an
+// approximation when total is ESTIMATE.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerPageDTO {
+    private List<CustomerDTO> content;
+    private int page;
+    private int size;
+    private boolean hasNext;
+    private TotalMode total;
+    private Long totalElements;
+}
@@ -20,4 +20,6 @@ public class CustomerSearchCriteria {
 
     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
     private LocalDate endDate;
+
+    private boolean includeAccounts;
 }
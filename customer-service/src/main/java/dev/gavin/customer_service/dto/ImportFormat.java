@@ -0,0 +1,18 @@
+package dev.gavin.customer_service.dto;
+
+import dev.gavin.common.exception.BadRequestException;
+
+import java.util.Locale;
+
+public enum ImportFormat {
+    NDJSON,
+    CSV;
+
+    public static ImportFormat from(String format) {
+        try {
+            return valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unsupported import format " + format + ", expected ndjson or csv");
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dev.gavin.customer_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ImportRowErrorDTO {
+    // 1-based line number in the uploaded file
+    private long row;
+    private String error;
+}
@@ -0,0 +1,13 @@
+package dev.gavin.customer_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ImportSummaryDTO {
+    private long rows;
+    private long imported;
+    private long rejected;
+    private long rowsPerSecond;
+}
@@ -0,0 +1,20 @@
+package dev.gavin.customer_service.dto;
+
+import dev.gavin.common.exception.BadRequestException;
+
+import java.util.Locale;
+
+// How a listing reports its total: not at all, with an exact COUNT(*), or with the planner's row estimate
+public enum TotalMode {
+    NONE,
+    EXACT,
+    ESTIMATE;
+
+    public static TotalMode from(String mode) {
+        try {
+            return valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unsupported total " + mode + ", expected none, exact or estimate");
+        }
+    }
+}
@@ -1,16 +1,28 @@
 package dev.gavin.customer_service.entity;
 
 import dev.gavin.common.entity.BaseEntity;
+import dev.gavin.customer_service.config.CustomerCacheConfiguration;
+import dev.gavin.customer_service.utils.NameSearch;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
-@Table(name = "customers")
+@Table(name = "customers", indexes = {
+        @Index(name = "idx_customers_created_at", columnList = "created_at")
+})
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CustomerCacheConfiguration.CUSTOMERS_REGION)
 @Getter
 @Setter
 @AllArgsConstructor
@@ -26,4 +38,13 @@ public class Customer extends BaseEntity {
     @Column
     private String otherName;
 
+    // Normalized "first last other" name, backed by a trigram index for name search
+    @Column(name = "name_search")
+    private String nameSearch;
+
+    @PrePersist
+    @PreUpdate
+    void normalizeNameSearch() {
+        this.nameSearch = NameSearch.key(getFirstName(), getLastName(), getOtherName());
+    }
 }
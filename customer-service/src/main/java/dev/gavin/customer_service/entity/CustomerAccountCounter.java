@@ -0,0 +1,31 @@
+package dev.gavin.customer_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Number of accounts account-service holds for a customer, maintained from account-service's account events
+@Table(name = "customer_account_counters")
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerAccountCounter {
+
+    @Id
+    private Long customerId;
+
+    @Column(nullable = false)
+    private long accountCount;
+
+    @Column
+    private LocalDateTime updatedAt;
+}
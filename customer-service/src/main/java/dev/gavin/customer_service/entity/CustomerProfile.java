@@ -0,0 +1,32 @@
+package dev.gavin.customer_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// A customer with their accounts and cards, stored as the JSON GET /api/customers/{id}/profile returns so
+// a read is one primary-key lookup. Maintained from account-service's and card-service's events.
+@Table(name = "customer_profiles")
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerProfile {
+
+    @Id
+    private Long customerId;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String profile;
+
+    @Column
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,30 @@
+package dev.gavin.customer_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Which customer profile an account is part of. Card events only carry the account, so this is how they
+// find the profile to refresh.
+@Table(name = "customer_profile_accounts", indexes = {
+        @Index(name = "idx_customer_profile_accounts_customer_id", columnList = "customerId")
+})
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerProfileAccount {
+
+    @Id
+    private Long accountId;
+
+    @Column(nullable = false)
+    private Long customerId;
+}
@@ -0,0 +1,31 @@
+package dev.gavin.customer_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Last event offset a consumer has applied, updated in the same transaction as the effects of the events
+@Table(name = "event_offsets")
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class EventOffset {
+
+    @Id
+    private String consumer;
+
+    @Column(nullable = false)
+    private long lastOffset;
+
+    @Column
+    private LocalDateTime updatedAt;
+}
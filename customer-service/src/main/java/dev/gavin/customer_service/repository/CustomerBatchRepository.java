@@ -0,0 +1,40 @@
+package dev.gavin.customer_service.repository;
+
+import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.utils.NameSearch;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+// Customer ids are IDENTITY generated, which stops Hibernate from batching inserts, so bulk loads go
+// through JDBC batches instead. created_at is stamped by the database as each row is inserted.
+@Repository
+public class CustomerBatchRepository {
+
+    private static final String INSERT_CUSTOMER = """
+            INSERT INTO customers (first_name, last_name, other_name, name_search, created_at, deleted, version)
+            VALUES (?, ?, ?, ?, CAST(clock_timestamp() AS timestamp), false, 0)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CustomerBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public void insertAll(List<Customer> customers) {
+        jdbcTemplate.batchUpdate(INSERT_CUSTOMER, customers, customers.size(), CustomerBatchRepository::bind);
+    }
+
+    private static void bind(PreparedStatement ps, Customer customer) throws SQLException {
+        ps.setString(1, customer.getFirstName());
+        ps.setString(2, customer.getLastName());
+        ps.setString(3, customer.getOtherName());
+        ps.setString(4, NameSearch.key(customer.getFirstName(), customer.getLastName(), customer.getOtherName()));
+    }
+}
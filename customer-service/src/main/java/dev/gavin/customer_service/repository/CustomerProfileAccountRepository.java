@@ -0,0 +1,18 @@
+package dev.gavin.customer_service.repository;
+
+import dev.gavin.customer_service.entity.CustomerProfileAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+@Repository
+public interface CustomerProfileAccountRepository extends JpaRepository<CustomerProfileAccount, Long> {
+
+    @Modifying
+    @Query("DELETE FROM CustomerProfileAccount a WHERE a.customerId IN :customerIds")
+    int deleteByCustomerIds(@Param("customerIds") Collection<Long> customerIds);
+}
@@ -0,0 +1,9 @@
+package dev.gavin.customer_service.repository;
+
+import dev.gavin.customer_service.entity.CustomerProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CustomerProfileRepository extends JpaRepository<CustomerProfile, Long> {
+}
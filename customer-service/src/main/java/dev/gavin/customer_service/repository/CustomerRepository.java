@@ -1,35 +1,114 @@
 package dev.gavin.customer_service.repository;
 
 import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.utils.NameSearch;
+import jakarta.persistence.QueryHint;
 import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long>, JpaSpecificationExecutor<Customer> {
 
+    @Query("SELECT c.id FROM Customer c WHERE c.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT c.id FROM Customer c WHERE c.id BETWEEN :from AND :to")
+    List<Long> findExistingIdsBetween(@Param("from") Long from, @Param("to") Long to);
+
+    @Query("SELECT MAX(c.id) FROM Customer c")
+    Long findMaxId();
+
+    @Query("SELECT c.id FROM Customer c WHERE c.id <= :watermark")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "10000"))
+    Stream<Long> streamIdsUpTo(@Param("watermark") Long watermark);
+
+    @Query("SELECT c.id FROM Customer c WHERE c.id > :after ORDER BY c.id")
+    List<Long> findIdsAfter(@Param("after") Long after, Pageable pageable);
+
+    // The database clock. It stamps created_at and deleted_at as well, so watermarks and the rows compared
+    // against them do not depend on any one instance's clock.
+    @Query(value = "SELECT LOCALTIMESTAMP", nativeQuery = true)
+    LocalDateTime findDatabaseTime();
+
+    @Query("SELECT c.id FROM Customer c WHERE c.createdAt > :since")
+    List<Long> findIdsCreatedAfter(@Param("since") LocalDateTime since);
+
+    // Native so that the soft-delete restriction on Customer does not hide the deleted rows.
+    @Query(value = "SELECT id FROM customers WHERE deleted = true AND deleted_at > :since", nativeQuery = true)
+    List<Long> findIdsDeletedAfter(@Param("since") LocalDateTime since);
+
+    // Expects a term normalized with NameSearch, and the same term escaped by NameSearch.likePattern as pattern.
+    // The LIKE is served by the trigram index created by CustomerSearchIndexInitializer and matches are ranked by
+    // trigram similarity to the term.
+    @Query(value = """
+            SELECT * FROM customers c
+                WHERE c.deleted = false AND c.name_search LIKE CONCAT('%', :pattern, '%') ESCAPE '\\' AND
+                (CAST(:startDate AS timestamp) IS NULL OR c.created_at >= :startDate) AND
+                (CAST(:endDate AS timestamp) IS NULL OR c.created_at <= :endDate)
+                ORDER BY similarity(c.name_search, :term) DESC, c.id DESC
+            """, countQuery = """
+            SELECT COUNT(*) FROM customers c
+                WHERE c.deleted = false AND c.name_search LIKE CONCAT('%', :pattern, '%') ESCAPE '\\' AND
+                (CAST(:startDate AS timestamp) IS NULL OR c.created_at >= :startDate) AND
+                (CAST(:endDate AS timestamp) IS NULL OR c.created_at <= :endDate)
+            """, nativeQuery = true)
+    Page<Customer> searchByName(@Param("term") String term, @Param("pattern") String pattern,
+                                @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate,
+                                Pageable pageable);
 
+    // Slice variants run no count query; Spring Data reads one extra row to tell whether another page follows
+    @Query(value = """
+            SELECT * FROM customers c
+                WHERE c.deleted = false AND c.name_search LIKE CONCAT('%', :pattern, '%') ESCAPE '\\' AND
+                (CAST(:startDate AS timestamp) IS NULL OR c.created_at >= :startDate) AND
+                (CAST(:endDate AS timestamp) IS NULL OR c.created_at <= :endDate)
+                ORDER BY similarity(c.name_search, :term) DESC, c.id DESC
+            """, nativeQuery = true)
+    Slice<Customer> sliceByName(@Param("term") String term, @Param("pattern") String pattern,
+                                @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate,
+                                Pageable pageable);
+
+    @Query("""
+            SELECT c FROM Customer c
+                WHERE (:startDate IS NULL OR c.createdAt >= :startDate) AND (:endDate IS NULL OR c.createdAt <= :endDate)
+            """)
+    Slice<Customer> sliceByCreatedAt(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate,
+                                     Pageable pageable);
+
+    default Slice<Customer> sliceCustomers(String name, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
+        if (name != null && !name.isEmpty())
+            return sliceByName(name, NameSearch.likePattern(name), startDate, endDate,
+                    PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+        return sliceByCreatedAt(startDate, endDate, pageable);
+    }
+
+    // A name search is ranked by relevance, so the requested sort only applies to date-only listings
     default Page<Customer> fetchCustomers(String name, LocalDateTime startDate, LocalDateTime endDate, Pageable pageable) {
+        if (name != null && !name.isEmpty())
+            return searchByName(name, NameSearch.likePattern(name), startDate, endDate,
+                    PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+
         return findAll((Specification<Customer>) (root, query, criteriaBuilder) -> {
             List<Predicate> predicates = new ArrayList<>();
 
-            if (name != null && !name.isEmpty()) {
-                String searchTerm = "%" + name.toLowerCase() + "%";
-                predicates.add(criteriaBuilder.or(
-                        criteriaBuilder.like(criteriaBuilder.lower(root.get("firstName")), searchTerm),
-                        criteriaBuilder.like(criteriaBuilder.lower(root.get("lastName")), searchTerm),
-                        criteriaBuilder.like(criteriaBuilder.lower(root.get("otherName")), searchTerm)
-                ));
-            }
-
             // Add startDate filter if provided
             if (startDate != null) {
                 predicates.add(criteriaBuilder.greaterThanOrEqualTo(
@@ -0,0 +1,40 @@
+package dev.gavin.customer_service.repository;
+
+import dev.gavin.customer_service.entity.EventOffset;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface EventOffsetRepository extends JpaRepository<EventOffset, String> {
+
+    // Serializes consumers across instances so a batch of events is only applied once
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM EventOffset o WHERE o.consumer = :consumer")
+    Optional<EventOffset> lockByConsumer(@Param("consumer") String consumer);
+
+    // Marks the consumer's offset as being rebuilt and returns 1 when the claim went through: when there is no
+    // offset yet, when an earlier rebuild stopped renewing its claim, or on request when no rebuild is running.
+    // The row stays locked until the transaction ends, so instances racing for it take turns.
+    @Modifying
+    @Query(value = """
+            INSERT INTO event_offsets (consumer, last_offset, updated_at) VALUES (:consumer, -1, :now)
+            ON CONFLICT (consumer) DO UPDATE SET last_offset = -1, updated_at = :now
+                WHERE (event_offsets.last_offset = -1 AND event_offsets.updated_at < :staleBefore)
+                   OR (:requested AND event_offsets.last_offset <> -1)
+            """, nativeQuery = true)
+    int claimRebuild(@Param("consumer") String consumer, @Param("now") LocalDateTime now,
+                     @Param("staleBefore") LocalDateTime staleBefore, @Param("requested") boolean requested);
+
+    @Modifying
+    @Query("UPDATE EventOffset o SET o.updatedAt = :now WHERE o.consumer IN :consumers AND o.lastOffset = -1")
+    void renewRebuildClaim(@Param("consumers") Collection<String> consumers, @Param("now") LocalDateTime now);
+}
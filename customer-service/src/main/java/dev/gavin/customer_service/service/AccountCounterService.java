@@ -0,0 +1,138 @@
+package dev.gavin.customer_service.service;
+
+import dev.gavin.common.events.EventCounterConsumer;
+import dev.gavin.customer_service.entity.CustomerAccountCounter;
+import dev.gavin.customer_service.entity.EventOffset;
+import dev.gavin.customer_service.repository.CustomerAccountCounterRepository;
+import dev.gavin.customer_service.repository.CustomerRepository;
+import dev.gavin.customer_service.repository.EventOffsetRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Keeps an account count per customer from account-service's account events, so the customer delete
+// guard is a local primary-key read.
+@Service
+public class AccountCounterService extends EventCounterConsumer {
+
+    static final String CONSUMER = "account-service.account-events";
+
+    private final CustomerAccountCounterRepository counterRepository;
+
+    private final EventOffsetRepository offsetRepository;
+
+    private final CustomerRepository customerRepository;
+
+    @Value("${account-service.url}")
+    private String accountServiceUrl;
+
+    @Value("${customer.account-counters.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${customer.account-counters.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${customer.account-counters.reconcile-chunk-size:1000}")
+    private int reconcileChunkSize = 1000;
+
+    public AccountCounterService(CustomerAccountCounterRepository counterRepository, EventOffsetRepository offsetRepository,
+                                 CustomerRepository customerRepository, RestTemplate restTemplate,
+                                 TransactionTemplate transactionTemplate) {
+        super(restTemplate, transactionTemplate, CONSUMER);
+        this.counterRepository = counterRepository;
+        this.offsetRepository = offsetRepository;
+        this.customerRepository = customerRepository;
+    }
+
+    public long countAccounts(Long customerId) {
+        return counterRepository.findById(customerId)
+                .map(CustomerAccountCounter::getAccountCount)
+                .orElse(0L);
+    }
+
+    public void removeCounter(Long customerId) {
+        counterRepository.deleteById(customerId);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${customer.account-counters.poll-interval:PT1S}")
+    public void pollEvents() {
+        super.pollEvents();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${customer.account-counters.reconcile-interval:PT1H}",
+            initialDelayString = "${customer.account-counters.reconcile-interval:PT1H}")
+    public void reconcile() {
+        super.reconcile();
+    }
+
+    @Override
+    protected boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    protected String eventsUrl() {
+        return accountServiceUrl + "/api/accounts/events";
+    }
+
+    @Override
+    protected String countsUrl() {
+        return accountServiceUrl + "/api/accounts/count/customers";
+    }
+
+    @Override
+    protected int batchSize() {
+        return batchSize;
+    }
+
+    @Override
+    protected int reconcileChunkSize() {
+        return reconcileChunkSize;
+    }
+
+    @Override
+    protected Optional<Long> findOffset() {
+        return offsetRepository.findById(CONSUMER).map(EventOffset::getLastOffset);
+    }
+
+    @Override
+    protected Optional<Long> lockOffset() {
+        return offsetRepository.lockByConsumer(CONSUMER).map(EventOffset::getLastOffset);
+    }
+
+    @Override
+    protected void saveOffset(long offset) {
+        offsetRepository.save(new EventOffset(CONSUMER, offset, LocalDateTime.now()));
+    }
+
+    @Override
+    protected List<Long> findParentIdsAfter(long after, int limit) {
+        return customerRepository.findIdsAfter(after, PageRequest.of(0, limit));
+    }
+
+    @Override
+    protected Map<Long, Long> findCounts(Collection<Long> customerIds) {
+        return counterRepository.findAllById(customerIds).stream()
+                .collect(Collectors.toMap(CustomerAccountCounter::getCustomerId, CustomerAccountCounter::getAccountCount));
+    }
+
+    @Override
+    protected void saveCounts(Map<Long, Long> counts) {
+        LocalDateTime now = LocalDateTime.now();
+        counterRepository.saveAll(counts.entrySet().stream()
+                .map(count -> new CustomerAccountCounter(count.getKey(), count.getValue(), now))
+                .toList());
+    }
+}
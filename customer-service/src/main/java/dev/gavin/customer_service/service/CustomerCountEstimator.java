@@ -0,0 +1,54 @@
+package dev.gavin.customer_service.service;
+
+import dev.gavin.common.schema.SchemaTasks;
+import dev.gavin.customer_service.utils.NameSearch;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Approximate listing totals read from the planner's row estimate for the same filter, so that no rows are
+// counted. The estimate is only as fresh as the table statistics autovacuum keeps.
+@Component
+public class CustomerCountEstimator {
+    private static final Pattern ROWS = Pattern.compile("rows=(\\d+)");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final SchemaTasks schemaTasks;
+
+    public CustomerCountEstimator(JdbcTemplate jdbcTemplate, SchemaTasks schemaTasks) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaTasks = schemaTasks;
+    }
+
+    // Null when the database cannot explain the query; an exact count is never run in its place
+    public Long estimate(String name, LocalDateTime startDate, LocalDateTime endDate) {
+        if (!schemaTasks.isPostgres())
+            return null;
+
+        StringBuilder sql = new StringBuilder("EXPLAIN SELECT 1 FROM customers c WHERE c.deleted = false");
+        List<Object> args = new ArrayList<>();
+        if (name != null && !name.isEmpty()) {
+            sql.append(" AND c.name_search LIKE CONCAT('%', ?, '%') ESCAPE '\\'");
+            args.add(NameSearch.likePattern(name));
+        }
+        if (startDate != null) {
+            sql.append(" AND c.created_at >= ?");
+            args.add(startDate);
+        }
+        if (endDate != null) {
+            sql.append(" AND c.created_at <= ?");
+            args.add(endDate);
+        }
+
+        // The first plan line is the top node, whose row estimate is the estimate for the whole query
+        List<String> plan = jdbcTemplate.queryForList(sql.toString(), String.class, args.toArray());
+        Matcher matcher = plan.isEmpty() ? null : ROWS.matcher(plan.get(0));
+        return matcher != null && matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+    }
+}
@@ -0,0 +1,201 @@
+package dev.gavin.customer_service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import dev.gavin.common.dto.CustomerDTO;
+import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.customer_service.dto.ImportFormat;
+import dev.gavin.customer_service.dto.ImportRowErrorDTO;
+import dev.gavin.customer_service.dto.ImportSummaryDTO;
+import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.repository.CustomerBatchRepository;
+import dev.gavin.customer_service.utils.CsvRecords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+// Imports customers from an uploaded file one chunk at a time: a chunk of lines is parsed, validated in
+// parallel with the rules createCustomer applies, and inserted with a single JDBC batch in its own
+// transaction. Only one chunk is held in memory and rejected rows are streamed back as they are found,
+// so heap use does not grow with the size of the file.
+@Service
+public class CustomerImportService {
+    private static final Logger log = LoggerFactory.getLogger(CustomerImportService.class);
+
+    private final CustomerBatchRepository customerBatchRepository;
+
+    private final ObjectMapper objectMapper;
+
+    // Validation runs on a pool of its own rather than the shared task executor: the import already holds one of
+    // that executor's threads while it waits, so enough concurrent imports could take every thread and block on
+    // validation work that never gets one
+    private final ForkJoinPool validationPool;
+
+    @Value("${customer.import.batch-size:5000}")
+    private int batchSize = 5000;
+
+    public CustomerImportService(CustomerBatchRepository customerBatchRepository, ObjectMapper objectMapper,
+                                 @Value("${customer.import.validation-parallelism:4}") int validationParallelism) {
+        this.customerBatchRepository = customerBatchRepository;
+        this.objectMapper = objectMapper;
+        this.validationPool = new ForkJoinPool(validationParallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        validationPool.shutdown();
+    }
+
+    // Writes one {"row", "error"} line per rejected row and ends with a summary line
+    public ImportSummaryDTO importCustomers(ImportFormat format, boolean gzip, InputStream in, OutputStream out)
+            throws IOException {
+        long started = System.nanoTime();
+        InputStream source = gzip ? new GZIPInputStream(in, 64 * 1024) : in;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(source, StandardCharsets.UTF_8), 64 * 1024);
+
+        long line = 0;
+        Function<String, CustomerDTO> parser = this::parseJson;
+        if (format == ImportFormat.CSV) {
+            parser = csvParser(reader.readLine());
+            line++;
+        }
+
+        long rows = 0;
+        long imported = 0;
+        try (SequenceWriter report = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+            List<ImportRow> chunk = new ArrayList<>(batchSize);
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank())
+                    continue;
+
+                chunk.add(parse(parser, line, text));
+                if (chunk.size() == batchSize) {
+                    rows += chunk.size();
+                    imported += importChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+            rows += chunk.size();
+            imported += importChunk(chunk, report);
+
+            long elapsedNanos = Math.max(System.nanoTime() - started, 1);
+            ImportSummaryDTO summary = new ImportSummaryDTO(rows, imported, rows - imported, rows * 1_000_000_000L / elapsedNanos);
+            report.write(summary);
+            log.info("Imported {} of {} customer(s) in {} ms ({} rows/s)",
+                    imported, rows, elapsedNanos / 1_000_000, summary.getRowsPerSecond());
+            return summary;
+        }
+    }
+
+    private Function<String, CustomerDTO> csvParser(String header) {
+        List<String> columns = header == null ? List.of() : CsvRecords.parse(header).stream().map(String::trim).toList();
+        int firstName = columns.indexOf("firstName");
+        int lastName = columns.indexOf("lastName");
+        int otherName = columns.indexOf("otherName");
+        if (firstName < 0 || lastName < 0)
+            throw new BadRequestException("CSV header must name the firstName and lastName columns");
+
+        return text -> {
+            List<String> fields = CsvRecords.parse(text);
+            CustomerDTO customer = new CustomerDTO();
+            customer.setFirstName(field(fields, firstName));
+            customer.setLastName(field(fields, lastName));
+            customer.setOtherName(field(fields, otherName));
+            return customer;
+        };
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size() || fields.get(index).isEmpty())
+            return null;
+        return fields.get(index);
+    }
+
+    private CustomerDTO parseJson(String text) {
+        try {
+            return objectMapper.readValue(text, CustomerDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private static ImportRow parse(Function<String, CustomerDTO> parser, long line, String text) {
+        try {
+            CustomerDTO customer = parser.apply(text);
+            return customer != null ? new ImportRow(line, customer, null) : new ImportRow(line, null, "Empty row");
+        } catch (IllegalArgumentException e) {
+            return new ImportRow(line, null, e.getMessage());
+        }
+    }
+
+    private long importChunk(List<ImportRow> chunk, SequenceWriter report) throws IOException {
+        if (chunk.isEmpty())
+            return 0;
+
+        List<ImportRow> validated = validate(chunk);
+        List<ImportRow> valid = validated.stream().filter(row -> row.error() == null).toList();
+        String batchError = insert(valid);
+
+        for (ImportRow row : validated) {
+            if (row.error() != null)
+                report.write(new ImportRowErrorDTO(row.line(), row.error()));
+            else if (batchError != null)
+                report.write(new ImportRowErrorDTO(row.line(), batchError));
+        }
+        report.flush();
+        return batchError == null ? valid.size() : 0;
+    }
+
+    // A parallel stream started inside the pool splits its work across that pool's workers and keeps the rows in
+    // file order
+    private List<ImportRow> validate(List<ImportRow> chunk) {
+        return validationPool.submit(() -> chunk.parallelStream().map(CustomerImportService::validate).toList()).join();
+    }
+
+    private static ImportRow validate(ImportRow row) {
+        if (row.error() != null)
+            return row;
+        try {
+            CustomerService.validateDTO(row.customer());
+            return row;
+        } catch (BadRequestException e) {
+            return new ImportRow(row.line(), null, e.getMessage());
+        }
+    }
+
+    // A chunk is inserted all or nothing, so a database error rejects every valid row of it
+    private String insert(List<ImportRow> rows) {
+        if (rows.isEmpty())
+            return null;
+
+        List<Customer> customers = rows.stream().map(row -> CustomerService.toEntity(null, row.customer())).toList();
+        try {
+            customerBatchRepository.insertAll(customers);
+            return null;
+        } catch (DataAccessException e) {
+            log.error("Failed to import a batch of {} customer(s): {}", rows.size(), e.getMostSpecificCause().getMessage());
+            return "Batch rejected by the database: " + e.getMostSpecificCause().getMessage();
+        }
+    }
+
+    private record ImportRow(long line, CustomerDTO customer, String error) {
+    }
+}
@@ -0,0 +1,426 @@
+package dev.gavin.customer_service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.CustomerDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.exception.ConflictException;
+import dev.gavin.common.exception.InternalErrorException;
+import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.entity.CustomerProfile;
+import dev.gavin.customer_service.entity.CustomerProfileAccount;
+import dev.gavin.customer_service.entity.EventOffset;
+import dev.gavin.customer_service.repository.CustomerProfileAccountRepository;
+import dev.gavin.customer_service.repository.CustomerProfileRepository;
+import dev.gavin.customer_service.repository.CustomerRepository;
+import dev.gavin.customer_service.repository.EventOffsetRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// Keeps a customer 360 profile (the customer with its accounts and their cards) per customer, so the full
+// profile is one primary-key read instead of a fan-out to account-service and card-service. Account and card
+// events only tell which customers changed; those profiles are then reloaded from the owning services, which
+// makes applying an event idempotent and independent of the order the two event streams are read in. Each
+// stream's offset is stored in the same transaction as the profiles it produced.
+// A full rebuild runs when the profiles have never been built, when one that was started stopped renewing its
+// claim, or on request. It is claimed on the offset rows, so only one instance rebuilds at a time.
+@Service
+public class CustomerProfileService {
+    private static final Logger log = LoggerFactory.getLogger(CustomerProfileService.class);
+
+    static final String ACCOUNT_CONSUMER = "customer-profiles.account-events";
+
+    static final String CARD_CONSUMER = "customer-profiles.card-events";
+
+    static final String LAG_METRIC = "customer.profile.lag";
+
+    // Offset stored while a rebuild holds the claim
+    static final long REBUILDING = -1L;
+
+    private final CustomerProfileRepository profileRepository;
+
+    private final CustomerProfileAccountRepository profileAccountRepository;
+
+    private final EventOffsetRepository offsetRepository;
+
+    private final CustomerRepository customerRepository;
+
+    private final RestTemplate restTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    private final BackgroundTasks backgroundTasks;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    @Value("${account-service.url}")
+    private String accountServiceUrl;
+
+    @Value("${card-service.url}")
+    private String cardServiceUrl;
+
+    @Value("${customer.profiles.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${customer.profiles.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${customer.profiles.refresh-chunk-size:500}")
+    private int refreshChunkSize = 500;
+
+    @Value("${customer.profiles.card-batch-size:1000}")
+    private int cardBatchSize = 1000;
+
+    @Value("${customer.profiles.rebuild-timeout:PT30M}")
+    private Duration rebuildTimeout = Duration.ofMinutes(30);
+
+    public CustomerProfileService(CustomerProfileRepository profileRepository,
+                                  CustomerProfileAccountRepository profileAccountRepository,
+                                  EventOffsetRepository offsetRepository, CustomerRepository customerRepository,
+                                  RestTemplate restTemplate, TransactionTemplate transactionTemplate,
+                                  ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                  BackgroundTasks backgroundTasks) {
+        this.profileRepository = profileRepository;
+        this.profileAccountRepository = profileAccountRepository;
+        this.offsetRepository = offsetRepository;
+        this.customerRepository = customerRepository;
+        this.restTemplate = restTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.backgroundTasks = backgroundTasks;
+    }
+
+    // Returns the stored JSON as is. A profile that is not there yet, e.g. while a rebuild runs, is built
+    // on the spot and kept.
+    public String getProfile(Long customerId) {
+        if (enabled) {
+            Optional<CustomerProfile> profile = profileRepository.findById(customerId);
+            if (profile.isPresent())
+                return profile.get().getProfile();
+        }
+
+        ProfileBatch batch = load(List.of(customerId));
+        if (batch.profiles().isEmpty())
+            throw new ResourceNotFoundException("Customer", "id", String.valueOf(customerId));
+        if (enabled)
+            transactionTemplate.executeWithoutResult(status -> store(batch));
+        return batch.profiles().get(0).getProfile();
+    }
+
+    // Called in the transaction that created the customer, who cannot have accounts yet
+    public void customerCreated(Customer customer) {
+        if (!enabled)
+            return;
+
+        CustomerDTO profile = toDTO(customer, new ArrayList<>());
+        profileRepository.save(new CustomerProfile(customer.getId(), write(profile), LocalDateTime.now()));
+    }
+
+    // Called in the transaction that updated the customer; only the customer's own fields change
+    public void customerUpdated(Customer customer) {
+        if (!enabled)
+            return;
+
+        profileRepository.findById(customer.getId()).ifPresent(stored -> {
+            CustomerDTO profile = read(stored.getProfile());
+            profile.setFirstName(customer.getFirstName());
+            profile.setLastName(customer.getLastName());
+            profile.setOtherName(customer.getOtherName());
+            profile.setUpdatedAt(customer.getUpdatedAt());
+            stored.setProfile(write(profile));
+            stored.setUpdatedAt(LocalDateTime.now());
+            profileRepository.save(stored);
+        });
+    }
+
+    public void removeProfile(Long customerId) {
+        profileAccountRepository.deleteByCustomerIds(List.of(customerId));
+        profileRepository.deleteById(customerId);
+    }
+
+    // Runs the rebuild on the task executor once it is claimed
+    public void startRebuild() {
+        if (!rebuilding.compareAndSet(false, true))
+            throw new ConflictException("A customer profile rebuild is already running");
+
+        try {
+            if (!claimRebuild(true))
+                throw new ConflictException("A customer profile rebuild is already running on another instance");
+
+            backgroundTasks.execute(() -> {
+                try {
+                    rebuildAll();
+                } catch (Exception e) {
+                    log.error("Failed to rebuild customer profiles: {}", e.getMessage());
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            rebuilding.set(false);
+            throw e;
+        }
+    }
+
+    // Another instance may be rebuilding, in which case this one waits for its offsets
+    private void rebuildIfUnbuilt() {
+        if (!rebuilding.compareAndSet(false, true))
+            return;
+
+        try {
+            if (claimRebuild(false))
+                rebuildAll();
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private boolean claimRebuild(boolean requested) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minus(rebuildTimeout);
+        Boolean claimed = transactionTemplate.execute(status -> {
+            if (offsetRepository.claimRebuild(ACCOUNT_CONSUMER, now, staleBefore, requested) == 0)
+                return false;
+            // Both offsets are claimed or neither is
+            if (offsetRepository.claimRebuild(CARD_CONSUMER, now, staleBefore, requested) == 0) {
+                status.setRollbackOnly();
+                return false;
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(claimed);
+    }
+
+    @Scheduled(fixedDelayString = "${customer.profiles.poll-interval:PT1S}")
+    public void pollEvents() {
+        if (!enabled || rebuilding.get())
+            return;
+
+        try {
+            Optional<EventOffset> accountOffset = offsetRepository.findById(ACCOUNT_CONSUMER);
+            Optional<EventOffset> cardOffset = offsetRepository.findById(CARD_CONSUMER);
+            if (accountOffset.isEmpty() || cardOffset.isEmpty()
+                    || accountOffset.get().getLastOffset() == REBUILDING || cardOffset.get().getLastOffset() == REBUILDING) {
+                rebuildIfUnbuilt();
+                return;
+            }
+
+            List<ReferenceEventDTO> accountEvents = fetchEvents(
+                    accountServiceUrl + "/api/accounts/events", accountOffset.get().getLastOffset());
+            if (!accountEvents.isEmpty())
+                applyEvents(ACCOUNT_CONSUMER, "accounts", accountEvents, parentIds(accountEvents));
+
+            List<ReferenceEventDTO> cardEvents = fetchEvents(
+                    cardServiceUrl + "/api/cards/events", cardOffset.get().getLastOffset());
+            if (!cardEvents.isEmpty())
+                applyEvents(CARD_CONSUMER, "cards", cardEvents, customersOfAccounts(parentIds(cardEvents)));
+        } catch (Exception e) {
+            log.warn("Failed to poll events for customer profiles: {}", e.getMessage());
+        }
+    }
+
+    // The profiles are loaded before the offset is locked so that no connection is held during the peer calls
+    void applyEvents(String consumer, String source, List<ReferenceEventDTO> events, Set<Long> customerIds) {
+        List<ProfileBatch> batches = new ArrayList<>();
+        List<Long> ids = new ArrayList<>(customerIds);
+        for (int from = 0; from < ids.size(); from += refreshChunkSize)
+            batches.add(load(ids.subList(from, Math.min(from + refreshChunkSize, ids.size()))));
+
+        long lastOffset = events.stream().mapToLong(ReferenceEventDTO::getOffset).max().orElseThrow();
+        Boolean applied = transactionTemplate.execute(status -> {
+            EventOffset offset = offsetRepository.lockByConsumer(consumer)
+                    .orElseThrow(() -> new IllegalStateException("Customer profiles have not been built"));
+            // Another instance applied this batch first, or a rebuild started meanwhile
+            if (offset.getLastOffset() == REBUILDING || offset.getLastOffset() >= lastOffset)
+                return false;
+
+            batches.forEach(this::store);
+            offset.setLastOffset(lastOffset);
+            offset.setUpdatedAt(LocalDateTime.now());
+            offsetRepository.save(offset);
+            return true;
+        });
+
+        if (Boolean.TRUE.equals(applied))
+            recordLag(source, events);
+    }
+
+    // The heads are read before any customer is loaded, so events that land while rebuilding are applied
+    // afterwards. Reloading a profile that already reflects them is harmless.
+    private void rebuildAll() {
+        long started = System.nanoTime();
+        Long accountHead = restTemplate.getForObject(accountServiceUrl + "/api/accounts/events/head", Long.class);
+        Long cardHead = restTemplate.getForObject(cardServiceUrl + "/api/cards/events/head", Long.class);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            profileAccountRepository.deleteAllInBatch();
+            profileRepository.deleteAllInBatch();
+        });
+
+        int rebuilt = 0;
+        long after = 0L;
+        List<Long> customerIds;
+        while (!(customerIds = customerRepository.findIdsAfter(after, PageRequest.of(0, refreshChunkSize))).isEmpty()) {
+            ProfileBatch batch = load(customerIds);
+            transactionTemplate.executeWithoutResult(status -> {
+                store(batch);
+                offsetRepository.renewRebuildClaim(List.of(ACCOUNT_CONSUMER, CARD_CONSUMER), LocalDateTime.now());
+            });
+            rebuilt += batch.profiles().size();
+            after = customerIds.get(customerIds.size() - 1);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> offsetRepository.saveAll(List.of(
+                new EventOffset(ACCOUNT_CONSUMER, accountHead != null ? accountHead : 0L, now),
+                new EventOffset(CARD_CONSUMER, cardHead != null ? cardHead : 0L, now))));
+        log.info("Rebuilt {} customer profile(s) in {} ms at account offset {} and card offset {}", rebuilt,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), accountHead, cardHead);
+    }
+
+    // Customers that no longer exist are returned as missing so their profiles are dropped
+    private ProfileBatch load(List<Long> customerIds) {
+        List<Customer> customers = customerRepository.findAllById(customerIds);
+        Set<Long> missing = new HashSet<>(customerIds);
+        customers.forEach(customer -> missing.remove(customer.getId()));
+        if (customers.isEmpty())
+            return new ProfileBatch(customerIds, List.of(), List.of(), missing);
+
+        Map<Long, List<AccountDTO>> accountsByCustomer = fetchAccounts(customers.stream().map(Customer::getId).toList());
+        Map<Long, List<CardDTO>> cardsByAccount = fetchCards(accountsByCustomer.values().stream()
+                .flatMap(List::stream)
+                .map(AccountDTO::getId)
+                .toList());
+        LocalDateTime now = LocalDateTime.now();
+        List<CustomerProfile> profiles = new ArrayList<>();
+        List<CustomerProfileAccount> accounts = new ArrayList<>();
+        for (Customer customer : customers) {
+            List<AccountDTO> customerAccounts = accountsByCustomer.getOrDefault(customer.getId(), new ArrayList<>());
+            for (AccountDTO account : customerAccounts) {
+                account.setCards(cardsByAccount.getOrDefault(account.getId(), List.of()));
+                accounts.add(new CustomerProfileAccount(account.getId(), customer.getId()));
+            }
+            profiles.add(new CustomerProfile(customer.getId(), write(toDTO(customer, customerAccounts)), now));
+        }
+        return new ProfileBatch(customerIds, profiles, accounts, missing);
+    }
+
+    private void store(ProfileBatch batch) {
+        profileAccountRepository.deleteByCustomerIds(batch.customerIds());
+        profileAccountRepository.saveAll(batch.accounts());
+        profileRepository.saveAll(batch.profiles());
+        if (!batch.missing().isEmpty())
+            profileRepository.deleteAllByIdInBatch(batch.missing());
+    }
+
+    private List<ReferenceEventDTO> fetchEvents(String eventsUrl, long after) {
+        ReferenceEventDTO[] events = restTemplate.getForObject(eventsUrl + "?after=" + after + "&limit=" + batchSize,
+                ReferenceEventDTO[].class);
+        return events != null ? Arrays.asList(events) : List.of();
+    }
+
+    // Accounts whose profile is not known yet are skipped: their account event reloads the cards as well
+    private Set<Long> customersOfAccounts(Set<Long> accountIds) {
+        return profileAccountRepository.findAllById(accountIds).stream()
+                .map(CustomerProfileAccount::getCustomerId)
+                .collect(Collectors.toSet());
+    }
+
+    private Map<Long, List<AccountDTO>> fetchAccounts(List<Long> customerIds) {
+        Map<Long, List<AccountDTO>> accounts = restTemplate.exchange(
+                accountServiceUrl + "/api/accounts/by-customers", HttpMethod.POST, new HttpEntity<>(customerIds),
+                new ParameterizedTypeReference<Map<Long, List<AccountDTO>>>() {
+                }).getBody();
+        return accounts != null ? accounts : Map.of();
+    }
+
+    // Every card of the accounts, with one card-service call per cardBatchSize accounts
+    private Map<Long, List<CardDTO>> fetchCards(List<Long> accountIds) {
+        Map<Long, List<CardDTO>> cards = new HashMap<>();
+        for (int from = 0; from < accountIds.size(); from += cardBatchSize) {
+            Map<Long, List<CardDTO>> chunk = restTemplate.exchange(
+                    cardServiceUrl + "/api/cards/by-accounts", HttpMethod.POST,
+                    new HttpEntity<>(accountIds.subList(from, Math.min(from + cardBatchSize, accountIds.size()))),
+                    new ParameterizedTypeReference<Map<Long, List<CardDTO>>>() {
+                    }).getBody();
+            if (chunk != null)
+                cards.putAll(chunk);
+        }
+        return cards;
+    }
+
+    private void recordLag(String source, List<ReferenceEventDTO> events) {
+        Timer lag = Timer.builder(LAG_METRIC)
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        LocalDateTime now = LocalDateTime.now();
+        for (ReferenceEventDTO event : events) {
+            if (event.getOccurredAt() != null)
+                lag.record(Duration.between(event.getOccurredAt(), now));
+        }
+    }
+
+    private static Set<Long> parentIds(List<ReferenceEventDTO> events) {
+        return events.stream().map(ReferenceEventDTO::getParentId).collect(Collectors.toSet());
+    }
+
+    private static CustomerDTO toDTO(Customer customer, List<AccountDTO> accounts) {
+        CustomerDTO customerDTO = new CustomerDTO();
+        customerDTO.setId(customer.getId());
+        customerDTO.setFirstName(customer.getFirstName());
+        customerDTO.setLastName(customer.getLastName());
+        customerDTO.setOtherName(customer.getOtherName());
+        customerDTO.setCreatedAt(customer.getCreatedAt());
+        customerDTO.setUpdatedAt(customer.getUpdatedAt());
+        customerDTO.setAccounts(accounts);
+        return customerDTO;
+    }
+
+    private String write(CustomerDTO profile) {
+        try {
+            return objectMapper.writeValueAsString(profile);
+        } catch (JsonProcessingException e) {
+            throw new InternalErrorException("Failed to serialize customer profile", e);
+        }
+    }
+
+    private CustomerDTO read(String profile) {
+        try {
+            return objectMapper.readValue(profile, CustomerDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new InternalErrorException("Failed to read customer profile", e);
+        }
+    }
+
+    private record ProfileBatch(List<Long> customerIds, List<CustomerProfile> profiles,
+                                List<CustomerProfileAccount> accounts, Set<Long> missing) {
+    }
+}
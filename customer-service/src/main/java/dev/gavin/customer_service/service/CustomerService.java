@@ -1,39 +1,104 @@
 package dev.gavin.customer_service.service;
 
 import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.CardDTO;
 import dev.gavin.common.dto.CustomerDTO;
+import dev.gavin.common.dto.CustomerIdChangesDTO;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
 import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.common.existence.BatchExistence;
+import dev.gavin.common.existence.IdFilter;
+import dev.gavin.common.existence.ExistenceFormat;
 import dev.gavin.common.exception.InternalErrorException;
 import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.customer_service.dto.CustomerIdSnapshot;
+import dev.gavin.customer_service.dto.CustomerPageDTO;
 import dev.gavin.customer_service.dto.CustomerSearchCriteria;
+import dev.gavin.customer_service.dto.TotalMode;
 import dev.gavin.customer_service.entity.Customer;
 import dev.gavin.customer_service.repository.CustomerRepository;
+import dev.gavin.customer_service.utils.NameSearch;
+import io.micrometer.core.annotation.Timed;
 import jakarta.transaction.Transactional;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
+@Timed(value = "service.method", histogram = true)
 public class CustomerService {
     private static final Logger log = LoggerFactory.getLogger(CustomerService.class);
     private final CustomerRepository customerRepository;
 
     private final RestTemplate restTemplate;
 
+    // Read timeout set to the enrichment timeout
+    private final RestTemplate enrichmentRestTemplate;
+
+    private final AccountCounterService accountCounterService;
+
+    private final TaskExecutor taskExecutor;
+
+    private final CustomerCountEstimator customerCountEstimator;
+
+    private final IdFilter customerIdFilter;
+
+    private final CustomerProfileService customerProfileService;
+
     @Value("${account-service.url}")
     private String accountServiceUrl;
 
-    public CustomerService(CustomerRepository customerRepository, RestTemplate restTemplate) {
+    @Value("${card-service.url}")
+    private String cardServiceUrl;
+
+    @Value("${customer.id-snapshot.page-size:100000}")
+    private int snapshotPageSize = 100_000;
+
+    @Value("${customer.enrichment.timeout:PT2S}")
+    private Duration enrichmentTimeout = Duration.ofSeconds(2);
+
+    public CustomerService(CustomerRepository customerRepository, RestTemplate restTemplate,
+                           @Qualifier("enrichmentRestTemplate") RestTemplate enrichmentRestTemplate,
+                           AccountCounterService accountCounterService,
+                           @Qualifier("applicationTaskExecutor") TaskExecutor taskExecutor,
+                           CustomerCountEstimator customerCountEstimator, IdFilter customerIdFilter,
+                           CustomerProfileService customerProfileService) {
         this.customerRepository = customerRepository;
         this.restTemplate = restTemplate;
+        this.enrichmentRestTemplate = enrichmentRestTemplate;
+        this.accountCounterService = accountCounterService;
+        this.taskExecutor = taskExecutor;
+        this.customerCountEstimator = customerCountEstimator;
+        this.customerIdFilter = customerIdFilter;
+        this.customerProfileService = customerProfileService;
     }
 
     public static Customer toEntity(Customer customer, CustomerDTO customerDTO) {
@@ -50,51 +115,142 @@ public class CustomerService {
         validateDTO(customerRequest);
 
         Customer customer = toEntity(null, customerRequest);
-        customer.setCreatedAt(LocalDateTime.now());
+        customer.setCreatedAt(customerRepository.findDatabaseTime());
         Customer savedCustomer = customerRepository.save(customer);
+        customerProfileService.customerCreated(savedCustomer);
         return this.fromEntity(savedCustomer);
     }
 
-    @Transactional
+    // Not transactional: the connection is back in the pool before the peer calls start. The accounts are
+    // fetched first, then the cards of all of them in one batch call, both under one deadline. Whatever has not
+    // arrived by then is left out and the customer is flagged partial; the calls themselves are cut off by the
+    // enrichment client's read timeout, since cancelling their futures does not interrupt them.
     public CustomerDTO getCustomerById(Long id) {
-        Customer customer = this.findCustomerById(id);
-        CustomerDTO customerDTO = fromEntity(customer);
+        CustomerDTO customerDTO = fromEntity(this.findCustomerById(id));
+        long deadline = System.nanoTime() + enrichmentTimeout.toNanos();
 
-        try {
-            String url = accountServiceUrl + "/api/accounts/customer/" + id;
-            AccountDTO[] accountDTOs = restTemplate.getForObject(url, AccountDTO[].class);
-            if (accountDTOs != null)
-                customerDTO.setAccounts(List.of(accountDTOs));
-        } catch (Exception e) {
-            log.error("Failed to get accounts for customer: {}", e.getMessage());
+        List<AccountDTO> accounts = await(CompletableFuture.supplyAsync(() -> fetchAccounts(id), taskExecutor), deadline);
+        if (accounts == null) {
+            customerDTO.setPartial(true);
+            return customerDTO;
+        }
+
+        customerDTO.setAccounts(accounts);
+        if (accounts.isEmpty())
+            return customerDTO;
+
+        List<Long> accountIds = accounts.stream().map(AccountDTO::getId).toList();
+        Map<Long, List<CardDTO>> cards = await(CompletableFuture.supplyAsync(() -> fetchCards(accountIds), taskExecutor), deadline);
+        if (cards == null) {
+            customerDTO.setPartial(true);
+            return customerDTO;
         }
 
-        return this.fromEntity(customer);
+        accounts.forEach(account -> account.setCards(cards.getOrDefault(account.getId(), List.of())));
+        return customerDTO;
+    }
+
+    private List<AccountDTO> fetchAccounts(Long customerId) {
+        String url = accountServiceUrl + "/api/accounts/customer/" + customerId;
+        AccountDTO[] accountDTOs = enrichmentRestTemplate.getForObject(url, AccountDTO[].class);
+        return accountDTOs != null ? new ArrayList<>(List.of(accountDTOs)) : new ArrayList<>();
+    }
+
+    private Map<Long, List<CardDTO>> fetchCards(List<Long> accountIds) {
+        Map<Long, List<CardDTO>> cards = enrichmentRestTemplate.exchange(
+                cardServiceUrl + "/api/cards/by-accounts", HttpMethod.POST, new HttpEntity<>(accountIds),
+                new ParameterizedTypeReference<Map<Long, List<CardDTO>>>() {
+                }).getBody();
+        return cards != null ? cards : Map.of();
+    }
+
+    // Returns null when the call failed or the deadline passed
+    private <T> T await(CompletableFuture<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Customer enrichment exceeded its {} ms deadline", enrichmentTimeout.toMillis());
+        } catch (ExecutionException e) {
+            log.error("Failed to enrich customer: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
     }
 
     @Transactional
     public Page<CustomerDTO> fetchCustomers(CustomerSearchCriteria criteria, Pageable pageable) {
-        LocalDateTime startDateTime = criteria.getStartDate() != null ?
-                criteria.getStartDate().atStartOfDay() : null;
+        Page<CustomerDTO> customers = customerRepository.fetchCustomers(
+                NameSearch.normalize(criteria.getName()),
+                startOf(criteria),
+                endOf(criteria),
+                pageable
+        ).map(this::fromEntity);
 
-        LocalDateTime endDateTime = criteria.getEndDate() != null ?
-                LocalDateTime.of(criteria.getEndDate(), LocalTime.MAX) : null;
+        if (criteria.isIncludeAccounts())
+            attachAccounts(customers.getContent());
+        return customers;
+    }
 
-        return customerRepository.fetchCustomers(
-                criteria.getName() != null ? criteria.getName().trim().toLowerCase() : null,
-                startDateTime,
-                endDateTime,
-                pageable
-        ).map(customer -> {
-            CustomerDTO customerDTO = new CustomerDTO();
-            customerDTO.setId(customer.getId());
-            customerDTO.setFirstName(customer.getFirstName());
-            customerDTO.setLastName(customer.getLastName());
-            customerDTO.setOtherName(customer.getOtherName());
-            customerDTO.setCreatedAt(customer.getCreatedAt());
-            customerDTO.setUpdatedAt(customer.getUpdatedAt());
-            return customerDTO;
-        });
+    // Only EXACT runs a COUNT(*); the default listing just reads one row past the page to fill hasNext
+    @Transactional
+    public CustomerPageDTO listCustomers(CustomerSearchCriteria criteria, Pageable pageable, TotalMode total) {
+        if (total == TotalMode.EXACT) {
+            Page<CustomerDTO> customers = fetchCustomers(criteria, pageable);
+            return new CustomerPageDTO(customers.getContent(), customers.getNumber(), customers.getSize(),
+                    customers.hasNext(), total, customers.getTotalElements());
+        }
+
+        String name = NameSearch.normalize(criteria.getName());
+        LocalDateTime startDateTime = startOf(criteria);
+        LocalDateTime endDateTime = endOf(criteria);
+        Slice<CustomerDTO> customers = customerRepository.sliceCustomers(name, startDateTime, endDateTime, pageable)
+                .map(this::fromEntity);
+        if (criteria.isIncludeAccounts())
+            attachAccounts(customers.getContent());
+
+        Long totalElements = null;
+        if (total == TotalMode.ESTIMATE) {
+            // The last page already tells the exact total; before it, the estimate is at least what has been seen
+            long seen = (long) customers.getNumber() * customers.getSize() + customers.getNumberOfElements();
+            Long estimate = customers.hasNext() ? customerCountEstimator.estimate(name, startDateTime, endDateTime) : null;
+            if (!customers.hasNext())
+                totalElements = seen;
+            else if (estimate != null)
+                totalElements = Math.max(estimate, seen + 1);
+        }
+        return new CustomerPageDTO(customers.getContent(), customers.getNumber(), customers.getSize(),
+                customers.hasNext(), total, totalElements);
+    }
+
+    private static LocalDateTime startOf(CustomerSearchCriteria criteria) {
+        return criteria.getStartDate() != null ? criteria.getStartDate().atStartOfDay() : null;
+    }
+
+    private static LocalDateTime endOf(CustomerSearchCriteria criteria) {
+        return criteria.getEndDate() != null ? LocalDateTime.of(criteria.getEndDate(), LocalTime.MAX) : null;
+    }
+
+    // One call to account-service for the whole page instead of one per customer
+    private void attachAccounts(List<CustomerDTO> customers) {
+        if (customers.isEmpty())
+            return;
+
+        List<Long> customerIds = customers.stream().map(CustomerDTO::getId).toList();
+        try {
+            String url = accountServiceUrl + "/api/accounts/by-customers";
+            Map<Long, List<AccountDTO>> accountsByCustomer = restTemplate.exchange(
+                    url, HttpMethod.POST, new HttpEntity<>(customerIds),
+                    new ParameterizedTypeReference<Map<Long, List<AccountDTO>>>() {
+                    }).getBody();
+            if (accountsByCustomer == null)
+                return;
+
+            customers.forEach(customer -> customer.setAccounts(accountsByCustomer.getOrDefault(customer.getId(), List.of())));
+        } catch (Exception e) {
+            log.error("Failed to get accounts for {} customer(s): {}", customerIds.size(), e.getMessage());
+        }
     }
 
     @Transactional
@@ -106,6 +262,7 @@ public class CustomerService {
 
         customer.setUpdatedAt(LocalDateTime.now());
         Customer updatedCustomer = customerRepository.save(customer);
+        customerProfileService.customerUpdated(updatedCustomer);
         return this.fromEntity(updatedCustomer);
     }
 
@@ -115,25 +272,82 @@ public class CustomerService {
             throw new ResourceNotFoundException("Customer", "id", String.valueOf(id));
         }
 
-        long accounts;
+        // Answered from the locally maintained counter once it is seeded; account-service is only asked before that
+        long accounts = accountCounterService.isTracking() ? accountCounterService.countAccounts(id) : fetchAccountCount(id);
+        if (accounts > 0L) {
+            throw new BadRequestException(String.format("Customer has %d account%s and cannot be deleted", accounts, accounts > 1 ? "s" : ""));
+        }
+
+        customerRepository.deleteById(id);
+        accountCounterService.removeCounter(id);
+        customerProfileService.removeProfile(id);
+    }
+
+    private long fetchAccountCount(Long id) {
         try {
             String url = accountServiceUrl + "/api/accounts/count/customer/" + id;
             Long response = restTemplate.getForObject(url, Long.class);
-            accounts = response != null ? response : 0L;
+            return response != null ? response : 0L;
         } catch (Exception e) {
             log.error("Error fetching account details: {}", e.getMessage());
             throw new InternalErrorException("Error fetching account details", e);
         }
+    }
 
-        if (accounts > 0L) {
-            throw new BadRequestException(String.format("Customer has %d account%s and cannot be deleted", accounts, accounts > 1 ? "s" : ""));
+    // Loaded by id rather than counted so that repeat lookups are answered from the second-level cache. The
+    // deleted check covers an entry cached before a soft delete, which @SQLRestriction cannot filter.
+    public boolean existsById(Long id) {
+        return customerRepository.findById(id).filter(customer -> !customer.isDeleted()).isPresent();
+    }
+
+    public ExistenceDTO checkExistence(ExistenceRequestDTO request, ExistenceFormat format) {
+        return BatchExistence.check(request, format, customerRepository::findExistingIds,
+                customerRepository::findExistingIdsBetween, customerIdFilter::isDefinitelyMissing);
+    }
+
+    public List<Long> findExistingIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty())
+            return List.of();
+
+        return new ArrayList<>(BatchExistence.findExisting(new HashSet<>(ids), customerRepository::findExistingIds));
+    }
+
+    // One page of the live customer ids above after, so that no more than a page is read or held at once. The
+    // replica keeps the watermark of its first page: customers created or deleted while it reads the rest are
+    // picked up by the next changes request.
+    @Transactional
+    public CustomerIdSnapshot snapshotCustomerIds(long after, Integer limit) {
+        if (limit != null && limit < 1)
+            throw new BadRequestException("limit must be positive");
+        int pageSize = limit == null ? snapshotPageSize : Math.min(limit, snapshotPageSize);
+
+        LocalDateTime watermark = customerRepository.findDatabaseTime();
+        List<Long> ids = customerRepository.findIdsAfter(after, PageRequest.of(0, pageSize));
+
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        ids.forEach(bitmap::addLong);
+        bitmap.runOptimize();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            bitmap.serialize(data);
+        } catch (IOException e) {
+            throw new InternalErrorException("Failed to serialize customer id snapshot", e);
         }
 
-        customerRepository.deleteById(id);
+        Long nextAfter = ids.size() == pageSize ? ids.get(ids.size() - 1) : null;
+        log.debug("Built customer id snapshot page after {} with {} id(s) in {} bytes", after, ids.size(), out.size());
+        return new CustomerIdSnapshot(out.toByteArray(), watermark, nextAfter);
     }
 
-    public boolean existsById(Long id) {
-        return customerRepository.existsById(id);
+    public CustomerIdChangesDTO findCustomerIdChanges(LocalDateTime since) {
+        if (since == null)
+            throw new BadRequestException("since is required");
+
+        LocalDateTime watermark = customerRepository.findDatabaseTime();
+        List<Long> created = customerRepository.findIdsCreatedAfter(since);
+        List<Long> deleted = customerRepository.findIdsDeletedAfter(since);
+        return new CustomerIdChangesDTO(created, deleted, watermark);
     }
 
     private Customer findCustomerById(Long id) {
@@ -141,7 +355,8 @@ public class CustomerService {
                 .orElseThrow(() -> new ResourceNotFoundException("Customer", "id", String.valueOf(id)));
     }
 
-    private void validateDTO(CustomerDTO customerDTO) {
+    // Also applied to every row of a bulk import
+    static void validateDTO(CustomerDTO customerDTO) {
         if (customerDTO.getFirstName() == null || customerDTO.getFirstName().isBlank())
             throw new BadRequestException("First name is required");
         if (customerDTO.getLastName() == null || customerDTO.getLastName().isBlank())
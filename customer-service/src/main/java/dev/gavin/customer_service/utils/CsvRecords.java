@@ -0,0 +1,42 @@
+package dev.gavin.customer_service.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits one CSV record into fields. Quoted fields may contain commas and doubled quotes but not line
+// breaks, since records are read a line at a time.
+public final class CsvRecords {
+
+    private CsvRecords() {
+    }
+
+    public static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"')
+                    field.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+                    field.append(line.charAt(++i));
+                else
+                    quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+
+        if (quoted)
+            throw new IllegalArgumentException("Unterminated quoted field");
+        fields.add(field.toString());
+        return fields;
+    }
+}
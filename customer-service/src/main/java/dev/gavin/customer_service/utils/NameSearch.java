@@ -0,0 +1,42 @@
+package dev.gavin.customer_service.utils;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public final class NameSearch {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private NameSearch() {
+    }
+
+    // Stored and searched forms of names are lowercase, accent-folded and single-spaced, so "ZOË  Müller"
+    // matches "zoe muller".
+    public static String normalize(String value) {
+        if (value == null)
+            return null;
+
+        String folded = MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        String normalized = WHITESPACE.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    // A normalized term as a LIKE pattern that matches it literally, for use with ESCAPE '\'. Without this a
+    // "%" or "_" typed into the search would act as a wildcard.
+    public static String likePattern(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // First and last name come first so that "john smith" also finds customers with an other name
+    public static String key(String firstName, String lastName, String otherName) {
+        String key = Arrays.stream(new String[]{firstName, lastName, otherName})
+                .map(NameSearch::normalize)
+                .filter(Objects::nonNull)
+                .collect(Collectors.joining(" "));
+        return key.isEmpty() ? null : key;
+    }
+}
@@ -1,26 +1,56 @@
 package dev.gavin.customer_service;
 
 import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.CardDTO;
 import dev.gavin.common.dto.CustomerDTO;
+import dev.gavin.common.dto.CustomerIdChangesDTO;
+import dev.gavin.common.dto.ExistenceDTO;
+import dev.gavin.common.dto.ExistenceRequestDTO;
 import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.common.existence.ExistenceFormat;
+import dev.gavin.common.existence.IdFilter;
 import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.customer_service.dto.CustomerIdSnapshot;
+import dev.gavin.customer_service.dto.CustomerPageDTO;
 import dev.gavin.customer_service.dto.CustomerSearchCriteria;
+import dev.gavin.customer_service.dto.TotalMode;
 import dev.gavin.customer_service.entity.Customer;
 import dev.gavin.customer_service.repository.CustomerRepository;
+import dev.gavin.customer_service.service.AccountCounterService;
+import dev.gavin.customer_service.service.CustomerCountEstimator;
+import dev.gavin.customer_service.service.CustomerProfileService;
 import dev.gavin.customer_service.service.CustomerService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -36,6 +66,21 @@ public class CustomerServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private AccountCounterService accountCounterService;
+
+    @Mock
+    private CustomerCountEstimator customerCountEstimator;
+
+    @Mock
+    private IdFilter customerIdFilter;
+
+    @Mock
+    private CustomerProfileService customerProfileService;
+
+    @Spy
+    private TaskExecutor taskExecutor = new SyncTaskExecutor();
+
     @InjectMocks
     private CustomerService customerService;
 
@@ -55,11 +100,14 @@ public class CustomerServiceTest {
         customerDTO.setLastName("Doe");
 
         ReflectionTestUtils.setField(customerService, "accountServiceUrl", "http://account-service");
+        ReflectionTestUtils.setField(customerService, "cardServiceUrl", "http://card-service");
     }
 
     @Test
     void createCustomer_Success() {
         // Given
+        LocalDateTime databaseTime = LocalDateTime.of(2025, 1, 1, 12, 0);
+        when(customerRepository.findDatabaseTime()).thenReturn(databaseTime);
         when(customerRepository.save(any(Customer.class))).thenReturn(customer);
 
         // When
@@ -69,7 +117,8 @@ public class CustomerServiceTest {
         assertNotNull(result);
         assertEquals(customerDTO.getFirstName(), result.getFirstName());
         assertEquals(customerDTO.getLastName(), result.getLastName());
-        verify(customerRepository, times(1)).save(any(Customer.class));
+        verify(customerRepository, times(1)).save(argThat(saved -> databaseTime.equals(saved.getCreatedAt())));
+        verify(customerProfileService).customerCreated(customer);
     }
 
     @Test
@@ -89,6 +138,68 @@ public class CustomerServiceTest {
         verify(restTemplate, times(1)).getForObject(anyString(), eq(AccountDTO[].class));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void getCustomerById_WithAccounts_AttachesAccountsAndCardsFromOneBatchCall() {
+        // Given
+        when(customerRepository.findById(anyLong())).thenReturn(Optional.of(customer));
+        AccountDTO account = AccountDTO.builder().id(10L).customerId(1L).build();
+        AccountDTO emptyAccount = AccountDTO.builder().id(11L).customerId(1L).build();
+        when(restTemplate.getForObject("http://account-service/api/accounts/customer/1", AccountDTO[].class))
+                .thenReturn(new AccountDTO[]{account, emptyAccount});
+        CardDTO card = CardDTO.builder().id(100L).accountId(10L).build();
+        when(restTemplate.exchange(eq("http://card-service/api/cards/by-accounts"), eq(HttpMethod.POST),
+                eq(new HttpEntity<>(List.of(10L, 11L))), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(10L, List.of(card))));
+
+        // When
+        CustomerDTO result = customerService.getCustomerById(1L);
+
+        // Then
+        assertEquals(2, result.getAccounts().size());
+        assertEquals(100L, result.getAccounts().get(0).getCards().get(0).getId());
+        assertTrue(result.getAccounts().get(1).getCards().isEmpty());
+        assertNull(result.getPartial());
+        verify(restTemplate, times(1)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getCustomerById_WhenCardServiceFails_ReturnsPartialResult() {
+        // Given
+        when(customerRepository.findById(anyLong())).thenReturn(Optional.of(customer));
+        AccountDTO account = AccountDTO.builder().id(10L).customerId(1L).build();
+        when(restTemplate.getForObject(anyString(), eq(AccountDTO[].class))).thenReturn(new AccountDTO[]{account});
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class),
+                any(ParameterizedTypeReference.class)))
+                .thenThrow(new ResourceAccessException("Read timed out"));
+
+        // When
+        CustomerDTO result = customerService.getCustomerById(1L);
+
+        // Then
+        assertEquals(1, result.getAccounts().size());
+        assertNull(result.getAccounts().get(0).getCards());
+        assertTrue(result.getPartial());
+    }
+
+    @Test
+    void getCustomerById_WhenAccountServiceFails_ReturnsCustomerFlaggedPartial() {
+        // Given
+        when(customerRepository.findById(anyLong())).thenReturn(Optional.of(customer));
+        when(restTemplate.getForObject(anyString(), eq(AccountDTO[].class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        // When
+        CustomerDTO result = customerService.getCustomerById(1L);
+
+        // Then
+        assertEquals("John", result.getFirstName());
+        assertNull(result.getAccounts());
+        assertTrue(result.getPartial());
+    }
+
     @Test
     void getCustomerById_NotFound_ThrowsException() {
         // Given
@@ -150,6 +261,92 @@ public class CustomerServiceTest {
         );
     }
 
+    @Test
+    void fetchCustomers_NormalizesNameSearchTerm() {
+        // Given
+        CustomerSearchCriteria criteria = CustomerSearchCriteria.builder().name("  ZOË   Müller ").build();
+        Pageable pageable = PageRequest.of(0, 10);
+        when(customerRepository.fetchCustomers(eq("zoe muller"), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(customer)));
+
+        // When
+        Page<CustomerDTO> result = customerService.fetchCustomers(criteria, pageable);
+
+        // Then
+        assertEquals(1, result.getContent().size());
+        verify(customerRepository, times(1)).fetchCustomers(eq("zoe muller"), isNull(), isNull(), eq(pageable));
+    }
+
+    @Test
+    void listCustomers_ByDefault_ReturnsSliceWithoutCounting() {
+        // Given
+        CustomerSearchCriteria criteria = new CustomerSearchCriteria();
+        Pageable pageable = PageRequest.of(0, 1);
+        when(customerRepository.sliceCustomers(isNull(), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new SliceImpl<>(List.of(customer), pageable, true));
+
+        // When
+        CustomerPageDTO result = customerService.listCustomers(criteria, pageable, TotalMode.NONE);
+
+        // Then
+        assertEquals(1, result.getContent().size());
+        assertTrue(result.isHasNext());
+        assertNull(result.getTotalElements());
+        verify(customerRepository, never()).fetchCustomers(any(), any(), any(), any());
+        verifyNoInteractions(customerCountEstimator);
+    }
+
+    @Test
+    void listCustomers_WithEstimate_UsesPlannerEstimate() {
+        // Given
+        CustomerSearchCriteria criteria = CustomerSearchCriteria.builder().name("Doe").build();
+        Pageable pageable = PageRequest.of(2, 1);
+        when(customerRepository.sliceCustomers(eq("doe"), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new SliceImpl<>(List.of(customer), pageable, true));
+        when(customerCountEstimator.estimate("doe", null, null)).thenReturn(1_000L);
+
+        // When
+        CustomerPageDTO result = customerService.listCustomers(criteria, pageable, TotalMode.ESTIMATE);
+
+        // Then
+        assertEquals(TotalMode.ESTIMATE, result.getTotal());
+        assertEquals(1_000L, result.getTotalElements());
+        verify(customerRepository, never()).fetchCustomers(any(), any(), any(), any());
+    }
+
+    @Test
+    void listCustomers_WithEstimateOnLastPage_ReturnsSeenTotal() {
+        // Given
+        CustomerSearchCriteria criteria = new CustomerSearchCriteria();
+        Pageable pageable = PageRequest.of(3, 10);
+        when(customerRepository.sliceCustomers(isNull(), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new SliceImpl<>(List.of(customer), pageable, false));
+
+        // When
+        CustomerPageDTO result = customerService.listCustomers(criteria, pageable, TotalMode.ESTIMATE);
+
+        // Then
+        assertEquals(31L, result.getTotalElements());
+        verifyNoInteractions(customerCountEstimator);
+    }
+
+    @Test
+    void listCustomers_WithExactTotal_Counts() {
+        // Given
+        CustomerSearchCriteria criteria = new CustomerSearchCriteria();
+        Pageable pageable = PageRequest.of(0, 1);
+        when(customerRepository.fetchCustomers(isNull(), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(customer), pageable, 5));
+
+        // When
+        CustomerPageDTO result = customerService.listCustomers(criteria, pageable, TotalMode.EXACT);
+
+        // Then
+        assertEquals(5L, result.getTotalElements());
+        assertTrue(result.isHasNext());
+        verify(customerRepository, never()).sliceCustomers(any(), any(), any(), any());
+    }
+
     @Test
     void deleteCustomer_Success() {
         // Given
@@ -165,6 +362,34 @@ public class CustomerServiceTest {
         verify(customerRepository, times(1)).existsById(1L);
         verify(restTemplate, times(1)).getForObject(anyString(), eq(Long.class));
         verify(customerRepository, times(1)).deleteById(1L);
+        verify(customerProfileService).removeProfile(1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fetchCustomers_WithIncludeAccounts_FetchesAccountsForPageInOneCall() {
+        // Given
+        CustomerSearchCriteria criteria = CustomerSearchCriteria.builder().includeAccounts(true).build();
+        Pageable pageable = PageRequest.of(0, 10);
+        Customer customer2 = new Customer();
+        customer2.setId(2L);
+        customer2.setFirstName("Jane");
+        customer2.setLastName("Doe");
+        when(customerRepository.fetchCustomers(isNull(), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(customer, customer2)));
+
+        AccountDTO account = AccountDTO.builder().id(10L).customerId(1L).build();
+        when(restTemplate.exchange(eq("http://account-service/api/accounts/by-customers"), eq(HttpMethod.POST),
+                any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, List.of(account), 2L, List.of())));
+
+        // When
+        Page<CustomerDTO> result = customerService.fetchCustomers(criteria, pageable);
+
+        // Then
+        assertEquals(1, result.getContent().get(0).getAccounts().size());
+        assertTrue(result.getContent().get(1).getAccounts().isEmpty());
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class));
     }
 
     @Test
@@ -196,4 +421,148 @@ public class CustomerServiceTest {
         verify(restTemplate, times(1)).getForObject(anyString(), eq(Long.class));
         verify(customerRepository, never()).deleteById(anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    void existsById_LoadsCustomerById() {
+        // Given
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+
+        // When / Then
+        assertTrue(customerService.existsById(1L));
+        verify(customerRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    void existsById_WithSoftDeletedCachedCustomer_ReturnsFalse() {
+        // Given
+        customer.markAsDeleted(null);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer));
+
+        // When / Then
+        assertFalse(customerService.existsById(1L));
+    }
+
+    @Test
+    void checkExistence_WithIds_AnswersBitsetInRequestOrderFromOneQuery() {
+        // Given
+        ExistenceRequestDTO request = ExistenceRequestDTO.builder().ids(List.of(5L, 3L, 9L, 5L)).build();
+        when(customerRepository.findExistingIds(anyCollection())).thenReturn(List.of(5L, 9L));
+
+        // When
+        ExistenceDTO result = customerService.checkExistence(request, ExistenceFormat.BITSET);
+
+        // Then
+        BitSet bits = BitSet.valueOf(Base64.getDecoder().decode(result.getBitset()));
+        assertEquals(4, result.getSize());
+        assertEquals(3, result.getExisting());
+        assertTrue(bits.get(0) && !bits.get(1) && bits.get(2) && bits.get(3));
+        assertNull(result.getMissing());
+        verify(customerRepository, times(1)).findExistingIds(anyCollection());
+    }
+
+    @Test
+    void checkExistence_WithFilteredIds_OnlyQueriesTheRest() {
+        // Given
+        ExistenceRequestDTO request = ExistenceRequestDTO.builder().ids(List.of(7L, 2L, 4L)).build();
+        when(customerIdFilter.isDefinitelyMissing(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) == 2L);
+        when(customerRepository.findExistingIds(List.of(7L, 4L))).thenReturn(List.of(7L));
+
+        // When
+        ExistenceDTO result = customerService.checkExistence(request, ExistenceFormat.MISSING);
+
+        // Then
+        assertEquals(List.of(2L, 4L), result.getMissing());
+        assertNull(result.getBitset());
+    }
+
+    @Test
+    void checkExistence_WithRange_UsesBetweenQuery() {
+        // Given
+        ExistenceRequestDTO request = ExistenceRequestDTO.builder().from(10L).to(14L).build();
+        when(customerRepository.findExistingIdsBetween(10L, 14L)).thenReturn(List.of(10L, 12L));
+
+        // When
+        ExistenceDTO result = customerService.checkExistence(request, ExistenceFormat.MISSING);
+
+        // Then
+        assertEquals(5, result.getSize());
+        assertEquals(List.of(11L, 13L, 14L), result.getMissing());
+        verify(customerRepository, never()).findExistingIds(anyCollection());
+    }
+
+    @Test
+    void checkExistence_WithTooWideRange_ThrowsBadRequest() {
+        // Given
+        ExistenceRequestDTO request = ExistenceRequestDTO.builder().from(1L).to(1_000_000L).build();
+
+        // When / Then
+        assertThrows(BadRequestException.class, () -> customerService.checkExistence(request, ExistenceFormat.BITSET));
+        verifyNoInteractions(customerRepository);
+    }
+
+    @Test
+    void deleteCustomer_WithTrackedAccounts_UsesLocalCounter() {
+        // Given
+        when(customerRepository.existsById(anyLong())).thenReturn(true);
+        when(accountCounterService.isTracking()).thenReturn(true);
+        when(accountCounterService.countAccounts(1L)).thenReturn(1L);
+
+        // When
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> customerService.deleteCustomer(1L));
+
+        // Then
+        assertEquals("Customer has 1 account and cannot be deleted", exception.getMessage());
+        verify(restTemplate, never()).getForObject(anyString(), any());
+        verify(customerRepository, never()).deleteById(anyLong());
+    }
+
+    @Test
+    void snapshotCustomerIds_FullPage_SerializesIdsAndPointsAtNextPage() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(customerService, "snapshotPageSize", 3);
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        when(customerRepository.findDatabaseTime()).thenReturn(now);
+        when(customerRepository.findIdsAfter(0L, PageRequest.of(0, 3))).thenReturn(List.of(1L, 2L, 5L));
+
+        // When
+        CustomerIdSnapshot snapshot = customerService.snapshotCustomerIds(0L, null);
+
+        // Then
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        bitmap.deserialize(new DataInputStream(new ByteArrayInputStream(snapshot.getBitmap())));
+        assertEquals(3L, bitmap.getLongCardinality());
+        assertTrue(bitmap.contains(5L));
+        assertEquals(now, snapshot.getWatermark());
+        assertEquals(5L, snapshot.getNextAfter());
+    }
+
+    @Test
+    void snapshotCustomerIds_LastPage_HasNoNextPage() {
+        // Given
+        when(customerRepository.findDatabaseTime()).thenReturn(LocalDateTime.now());
+        when(customerRepository.findIdsAfter(5L, PageRequest.of(0, 2))).thenReturn(List.of(7L));
+
+        // When
+        CustomerIdSnapshot snapshot = customerService.snapshotCustomerIds(5L, 2);
+
+        // Then
+        assertNull(snapshot.getNextAfter());
+    }
+
+    @Test
+    void findCustomerIdChanges_ReturnsCreatedAndDeletedIds() {
+        // Given
+        LocalDateTime since = LocalDateTime.now().minusMinutes(1);
+        when(customerRepository.findDatabaseTime()).thenReturn(since.plusMinutes(1));
+        when(customerRepository.findIdsCreatedAfter(since)).thenReturn(List.of(3L));
+        when(customerRepository.findIdsDeletedAfter(since)).thenReturn(List.of(2L));
+
+        // When
+        CustomerIdChangesDTO changes = customerService.findCustomerIdChanges(since);
+
+        // Then
+        assertEquals(List.of(3L), changes.getCreated());
+        assertEquals(List.of(2L), changes.getDeleted());
+        assertTrue(changes.getWatermark().isAfter(since));
+    }
+}
@@ -0,0 +1,135 @@
+package dev.gavin.customer_service.service;
+
+import dev.gavin.customer_service.entity.CustomerAccountCounter;
+import dev.gavin.customer_service.entity.EventOffset;
+import dev.gavin.customer_service.repository.CustomerAccountCounterRepository;
+import dev.gavin.customer_service.repository.CustomerRepository;
+import dev.gavin.customer_service.repository.EventOffsetRepository;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountCounterServiceTest {
+
+    private static final String EVENTS_URL = "http://account-service/api/accounts/events";
+
+    @Mock
+    private CustomerAccountCounterRepository counterRepository;
+
+    @Mock
+    private EventOffsetRepository offsetRepository;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private AccountCounterService accountCounterService;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        accountCounterService = new AccountCounterService(counterRepository, offsetRepository, customerRepository,
+                restTemplate, transactionTemplate);
+        ReflectionTestUtils.setField(accountCounterService, "accountServiceUrl", "http://account-service");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_AppliesAccountEventsToCustomerCounters() {
+        // Given
+        when(offsetRepository.findById(AccountCounterService.CONSUMER))
+                .thenReturn(Optional.of(new EventOffset(AccountCounterService.CONSUMER, 5L, LocalDateTime.now())));
+        when(offsetRepository.lockByConsumer(AccountCounterService.CONSUMER))
+                .thenReturn(Optional.of(new EventOffset(AccountCounterService.CONSUMER, 5L, LocalDateTime.now())));
+        when(counterRepository.findAllById(anyCollection()))
+                .thenReturn(List.of(new CustomerAccountCounter(1L, 1L, LocalDateTime.now())));
+        when(restTemplate.getForObject(EVENTS_URL + "?after=5&limit=1000", ReferenceEventDTO[].class))
+                .thenReturn(new ReferenceEventDTO[]{
+                        event(5L, ReferenceEventType.CREATED, 1L),
+                        event(6L, ReferenceEventType.CREATED, 1L),
+                        event(7L, ReferenceEventType.CREATED, 2L),
+                        event(8L, ReferenceEventType.DELETED, 2L),
+                        event(9L, ReferenceEventType.CREATED, 2L),
+                        event(10L, ReferenceEventType.UPDATED, 2L)});
+
+        // When
+        accountCounterService.pollEvents();
+
+        // Then
+        ArgumentCaptor<List<CustomerAccountCounter>> saved = ArgumentCaptor.forClass(List.class);
+        verify(counterRepository).saveAll(saved.capture());
+        Map<Long, Long> counts = saved.getValue().stream()
+                .collect(Collectors.toMap(CustomerAccountCounter::getCustomerId, CustomerAccountCounter::getAccountCount));
+        assertEquals(2L, counts.get(1L));
+        assertEquals(1L, counts.get(2L));
+
+        ArgumentCaptor<EventOffset> offset = ArgumentCaptor.forClass(EventOffset.class);
+        verify(offsetRepository).save(offset.capture());
+        assertEquals(10L, offset.getValue().getLastOffset());
+    }
+
+    @Test
+    void countAccounts_WithoutCounter_ReturnsZero() {
+        when(counterRepository.findById(3L)).thenReturn(Optional.empty());
+
+        assertEquals(0L, accountCounterService.countAccounts(3L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_WithoutOffset_SeedsCountersFromAccountService() {
+        // Given
+        when(offsetRepository.findById(AccountCounterService.CONSUMER)).thenReturn(Optional.empty());
+        when(restTemplate.getForObject(EVENTS_URL + "/head", Long.class)).thenReturn(42L);
+        when(customerRepository.findIdsAfter(eq(0L), any(Pageable.class))).thenReturn(List.of(1L, 2L));
+        when(customerRepository.findIdsAfter(eq(2L), any(Pageable.class))).thenReturn(List.of());
+        when(restTemplate.exchange(eq("http://account-service/api/accounts/count/customers"), eq(HttpMethod.POST),
+                any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, 2L, 2L, 0L)));
+        when(counterRepository.findAllById(anyCollection())).thenReturn(List.of());
+
+        // When
+        accountCounterService.pollEvents();
+
+        // Then
+        ArgumentCaptor<List<CustomerAccountCounter>> saved = ArgumentCaptor.forClass(List.class);
+        verify(counterRepository).saveAll(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        assertEquals(2L, saved.getValue().get(0).getAccountCount());
+
+        ArgumentCaptor<EventOffset> offset = ArgumentCaptor.forClass(EventOffset.class);
+        verify(offsetRepository).save(offset.capture());
+        assertEquals(42L, offset.getValue().getLastOffset());
+    }
+
+    private ReferenceEventDTO event(long offset, ReferenceEventType type, long customerId) {
+        return new ReferenceEventDTO(offset, type, customerId, offset * 10, LocalDateTime.now());
+    }
+}
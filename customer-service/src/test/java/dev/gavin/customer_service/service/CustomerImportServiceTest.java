@@ -0,0 +1,134 @@
+package dev.gavin.customer_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.common.exception.BadRequestException;
+import dev.gavin.customer_service.dto.ImportFormat;
+import dev.gavin.customer_service.dto.ImportSummaryDTO;
+import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.repository.CustomerBatchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerImportServiceTest {
+
+    @Mock
+    private CustomerBatchRepository customerBatchRepository;
+
+    private CustomerImportService customerImportService;
+
+    @BeforeEach
+    void setUp() {
+        customerImportService = new CustomerImportService(customerBatchRepository,
+                new ObjectMapper().findAndRegisterModules(), 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importCustomers_Csv_InsertsValidRowsAndReportsRejectedOnes() throws IOException {
+        // Given
+        String csv = """
+                firstName,lastName,otherName
+                John,Doe,
+                Jane,,Mary
+                "Smith, Jr",O'Brien,"Pat ""PJ""\"
+                "Unterminated,Row
+                """;
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+
+        // When
+        ImportSummaryDTO summary = customerImportService.importCustomers(ImportFormat.CSV, false, stream(csv), report);
+
+        // Then
+        assertEquals(4, summary.getRows());
+        assertEquals(2, summary.getImported());
+        assertEquals(2, summary.getRejected());
+
+        ArgumentCaptor<List<Customer>> customers = ArgumentCaptor.forClass(List.class);
+        verify(customerBatchRepository, times(1)).insertAll(customers.capture());
+        assertEquals("John", customers.getValue().get(0).getFirstName());
+        assertNull(customers.getValue().get(0).getOtherName());
+        assertEquals("Smith, Jr", customers.getValue().get(1).getFirstName());
+        assertEquals("Pat \"PJ\"", customers.getValue().get(1).getOtherName());
+
+        List<String> lines = report.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"row\":3") && lines.get(0).contains("Last name is required"));
+        assertTrue(lines.get(1).contains("\"row\":5") && lines.get(1).contains("Unterminated quoted field"));
+        assertTrue(lines.get(2).contains("\"imported\":2"));
+    }
+
+    @Test
+    void importCustomers_Ndjson_InsertsOneBatchPerChunk() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(customerImportService, "batchSize", 2);
+        String ndjson = """
+                {"firstName":"John","lastName":"Doe"}
+                {"firstName":"Jane","lastName":"Doe"}
+
+                {"firstName":"Jim",
+                {"firstName":"Joan","lastName":"Doe"}
+                """;
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+
+        // When
+        ImportSummaryDTO summary = customerImportService.importCustomers(ImportFormat.NDJSON, false, stream(ndjson), report);
+
+        // Then
+        assertEquals(4, summary.getRows());
+        assertEquals(3, summary.getImported());
+        verify(customerBatchRepository, times(2)).insertAll(anyList());
+        assertTrue(report.toString(StandardCharsets.UTF_8).contains("\"row\":4"));
+    }
+
+    @Test
+    void importCustomers_WhenBatchFails_RejectsEveryRowOfIt() throws IOException {
+        // Given
+        doThrow(new DataIntegrityViolationException("value too long")).when(customerBatchRepository).insertAll(anyList());
+        String ndjson = """
+                {"firstName":"John","lastName":"Doe"}
+                {"firstName":"Jane","lastName":"Doe"}
+                """;
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+
+        // When
+        ImportSummaryDTO summary = customerImportService.importCustomers(ImportFormat.NDJSON, false, stream(ndjson), report);
+
+        // Then
+        assertEquals(0, summary.getImported());
+        assertEquals(2, summary.getRejected());
+        assertEquals(3, report.toString(StandardCharsets.UTF_8).lines().count());
+    }
+
+    @Test
+    void importCustomers_CsvWithoutNameColumns_ThrowsBadRequest() {
+        // Given
+        String csv = "name,surname\nJohn,Doe\n";
+
+        // When / Then
+        assertThrows(BadRequestException.class, () ->
+                customerImportService.importCustomers(ImportFormat.CSV, false, stream(csv), new ByteArrayOutputStream()));
+        verifyNoInteractions(customerBatchRepository);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,244 @@
+package dev.gavin.customer_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gavin.common.concurrency.BackgroundTasks;
+import dev.gavin.common.dto.AccountDTO;
+import dev.gavin.common.dto.CardDTO;
+import dev.gavin.common.dto.CustomerDTO;
+import dev.gavin.common.dto.ReferenceEventDTO;
+import dev.gavin.common.enums.ReferenceEventType;
+import dev.gavin.common.exception.ConflictException;
+import dev.gavin.common.exception.ResourceNotFoundException;
+import dev.gavin.customer_service.entity.Customer;
+import dev.gavin.customer_service.entity.CustomerProfile;
+import dev.gavin.customer_service.entity.CustomerProfileAccount;
+import dev.gavin.customer_service.entity.EventOffset;
+import dev.gavin.customer_service.repository.CustomerProfileAccountRepository;
+import dev.gavin.customer_service.repository.CustomerProfileRepository;
+import dev.gavin.customer_service.repository.CustomerRepository;
+import dev.gavin.customer_service.repository.EventOffsetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerProfileServiceTest {
+
+    @Mock
+    private CustomerProfileRepository profileRepository;
+
+    @Mock
+    private CustomerProfileAccountRepository profileAccountRepository;
+
+    @Mock
+    private EventOffsetRepository offsetRepository;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CustomerProfileService customerProfileService;
+
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        customerProfileService = profileService(Runnable::run);
+
+        customer = new Customer();
+        customer.setId(1L);
+        customer.setFirstName("John");
+        customer.setLastName("Doe");
+    }
+
+    @Test
+    void getProfile_Stored_ReturnsStoredJsonWithoutCallingPeers() {
+        // Given
+        when(profileRepository.findById(1L)).thenReturn(Optional.of(
+                new CustomerProfile(1L, "{\"id\":1}", LocalDateTime.now())));
+
+        // When
+        String profile = customerProfileService.getProfile(1L);
+
+        // Then
+        assertEquals("{\"id\":1}", profile);
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getProfile_UnknownCustomer_ThrowsResourceNotFound() {
+        // Given
+        when(profileRepository.findById(2L)).thenReturn(Optional.empty());
+        when(customerRepository.findAllById(List.of(2L))).thenReturn(List.of());
+
+        // When & Then
+        assertThrows(ResourceNotFoundException.class, () -> customerProfileService.getProfile(2L));
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_CardEvent_ReloadsOwningCustomerAndAdvancesOffset() throws Exception {
+        // Given
+        when(offsetRepository.findById(CustomerProfileService.ACCOUNT_CONSUMER)).thenReturn(Optional.of(
+                new EventOffset(CustomerProfileService.ACCOUNT_CONSUMER, 10L, LocalDateTime.now())));
+        when(offsetRepository.findById(CustomerProfileService.CARD_CONSUMER)).thenReturn(Optional.of(
+                new EventOffset(CustomerProfileService.CARD_CONSUMER, 3L, LocalDateTime.now())));
+        when(restTemplate.getForObject(startsWith("http://account-service/api/accounts/events"), eq(ReferenceEventDTO[].class)))
+                .thenReturn(new ReferenceEventDTO[0]);
+        when(restTemplate.getForObject(startsWith("http://card-service/api/cards/events"), eq(ReferenceEventDTO[].class)))
+                .thenReturn(new ReferenceEventDTO[]{
+                        new ReferenceEventDTO(4L, ReferenceEventType.UPDATED, 7L, 70L, LocalDateTime.now())});
+        when(profileAccountRepository.findAllById(anyIterable())).thenReturn(List.of(new CustomerProfileAccount(7L, 1L)));
+        when(customerRepository.findAllById(List.of(1L))).thenReturn(List.of(customer));
+
+        AccountDTO account = new AccountDTO();
+        account.setId(7L);
+        when(restTemplate.exchange(eq("http://account-service/api/accounts/by-customers"), eq(HttpMethod.POST),
+                any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(1L, new ArrayList<>(List.of(account)))));
+
+        CardDTO card = new CardDTO();
+        card.setId(70L);
+        card.setCardAlias("Travel");
+        when(restTemplate.exchange(eq("http://card-service/api/cards/by-accounts"), eq(HttpMethod.POST),
+                any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok(Map.of(7L, List.of(card))));
+
+        EventOffset cardOffset = new EventOffset(CustomerProfileService.CARD_CONSUMER, 3L, LocalDateTime.now());
+        when(offsetRepository.lockByConsumer(CustomerProfileService.CARD_CONSUMER)).thenReturn(Optional.of(cardOffset));
+
+        // When
+        customerProfileService.pollEvents();
+
+        // Then
+        ArgumentCaptor<List<CustomerProfile>> saved = ArgumentCaptor.forClass(List.class);
+        verify(profileRepository).saveAll(saved.capture());
+        CustomerDTO profile = objectMapper.readValue(saved.getValue().get(0).getProfile(), CustomerDTO.class);
+        assertEquals("John", profile.getFirstName());
+        assertEquals("Travel", profile.getAccounts().get(0).getCards().get(0).getCardAlias());
+
+        verify(profileAccountRepository).deleteByCustomerIds(List.of(1L));
+        assertEquals(4L, cardOffset.getLastOffset());
+        assertEquals(1L, meterRegistry.get(CustomerProfileService.LAG_METRIC).tag("source", "cards").timer().count());
+    }
+
+    @Test
+    void customerUpdated_KeepsAccountsAndReplacesNames() throws Exception {
+        // Given
+        AccountDTO account = new AccountDTO();
+        account.setId(7L);
+        CustomerDTO stored = new CustomerDTO();
+        stored.setId(1L);
+        stored.setFirstName("Jon");
+        stored.setAccounts(List.of(account));
+        CustomerProfile profile = new CustomerProfile(1L, objectMapper.writeValueAsString(stored), LocalDateTime.now());
+        when(profileRepository.findById(1L)).thenReturn(Optional.of(profile));
+
+        // When
+        customerProfileService.customerUpdated(customer);
+
+        // Then
+        CustomerDTO updated = objectMapper.readValue(profile.getProfile(), CustomerDTO.class);
+        assertEquals("John", updated.getFirstName());
+        assertEquals(7L, updated.getAccounts().get(0).getId());
+        verify(profileRepository).save(profile);
+    }
+
+    @Test
+    void startRebuild_WhileRunning_ThrowsConflict() {
+        // Given a rebuild that has been handed to the executor but not finished
+        customerProfileService = profileService(task -> {
+        });
+        when(offsetRepository.claimRebuild(anyString(), any(), any(), eq(true))).thenReturn(1);
+        customerProfileService.startRebuild();
+
+        // When & Then
+        assertThrows(ConflictException.class, () -> customerProfileService.startRebuild());
+    }
+
+    @Test
+    void startRebuild_RunningOnAnotherInstance_ThrowsConflict() {
+        // Given
+        when(offsetRepository.claimRebuild(eq(CustomerProfileService.ACCOUNT_CONSUMER), any(), any(), eq(true)))
+                .thenReturn(0);
+
+        // When & Then
+        assertThrows(ConflictException.class, () -> customerProfileService.startRebuild());
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollEvents_NotBuilt_RebuildsOnceClaimedAndStoresHeads() {
+        // Given
+        when(offsetRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(offsetRepository.claimRebuild(anyString(), any(), any(), eq(false))).thenReturn(1);
+        when(restTemplate.getForObject("http://account-service/api/accounts/events/head", Long.class)).thenReturn(12L);
+        when(restTemplate.getForObject("http://card-service/api/cards/events/head", Long.class)).thenReturn(5L);
+        when(customerRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of());
+
+        // When
+        customerProfileService.pollEvents();
+
+        // Then
+        ArgumentCaptor<List<EventOffset>> offsets = ArgumentCaptor.forClass(List.class);
+        verify(offsetRepository).saveAll(offsets.capture());
+        assertEquals(List.of(12L, 5L), offsets.getValue().stream().map(EventOffset::getLastOffset).toList());
+    }
+
+    @Test
+    void pollEvents_RebuildingElsewhere_LeavesProfilesAlone() {
+        // Given offsets claimed by a rebuild on another instance that is still renewing its claim
+        when(offsetRepository.findById(anyString())).thenAnswer(invocation -> Optional.of(new EventOffset(
+                invocation.getArgument(0), CustomerProfileService.REBUILDING, LocalDateTime.now())));
+        when(offsetRepository.claimRebuild(eq(CustomerProfileService.ACCOUNT_CONSUMER), any(), any(), eq(false)))
+                .thenReturn(0);
+
+        // When
+        customerProfileService.pollEvents();
+
+        // Then
+        verifyNoInteractions(restTemplate);
+        verify(profileRepository, never()).deleteAllInBatch();
+    }
+
+    private CustomerProfileService profileService(Executor executor) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        CustomerProfileService service = new CustomerProfileService(profileRepository, profileAccountRepository,
+                offsetRepository, customerRepository, restTemplate, transactionTemplate, objectMapper, meterRegistry,
+                new BackgroundTasks(executor));
+        ReflectionTestUtils.setField(service, "accountServiceUrl", "http://account-service");
+        ReflectionTestUtils.setField(service, "cardServiceUrl", "http://card-service");
+        return service;
+    }
+}